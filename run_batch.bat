@@ -0,0 +1 @@
+java -Djava.awt.headless=true -cp bin simulator.BatchRunner %*
\ No newline at end of file
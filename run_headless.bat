@@ -0,0 +1 @@
+java -Djava.awt.headless=true -cp bin simulator.Headless %*
\ No newline at end of file
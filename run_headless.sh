@@ -0,0 +1,2 @@
+#!/bin/sh
+java -Djava.awt.headless=true -cp bin simulator.Headless "$@"
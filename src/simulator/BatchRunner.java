@@ -0,0 +1,307 @@
+package simulator;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import simulator.gui.Logger;
+import simulator.interfaces.Navigator;
+
+/** Runs every combination of a set of vehicle profiles, environment profiles and navigators, a number
+ * of times each, and writes one CSV row per run. Runs are headless and use a VirtualClock, and are
+ * spread over a fixed pool of worker threads. Every run builds its own maps, clock and navigator, so
+ * runs do not share any state other than the (read only) profiles.
+ * Usage: BatchRunner [-v vehicles] [-e environments] [-n navigators] [-r repeats] [-t threads] [-o file]
+ *                    [-s sim time limit] [-w wall time limit] [-k stuck time] [-b planning budget] [-g on|off]
+ *                    [-a on|off] [-p keep|drop] [-q on|off] [-seed n]
+ * Lists are comma separated, and default to every profile or navigator available. Limits are in
+ * seconds, 0 for none, and end a run as TIMEOUT or STUCK. The planning budget is the real time an
+ * anytime navigator may plan for each loop, which makes its rows depend on the machine. -g off plans
+ * every loop, rather than only when the path has been invalidated. -a off plans in the sensing loop
+ * rather than on a planner thread, and -p says whether the planner thread publishes a path whose
+ * snapshot was replaced while it was planned. -q off keeps what the simulations and navigators print,
+ * which is discarded by default as it only serialises the worker threads on System.out; errors that end
+ * a run are reported with the progress either way. The plan latency is the mean real time from asking for a
+ * path to publishing it, and the stale versions how many grid versions behind its snapshot was. For a
+ * NavigatorPortfolio, wins lists how many of its paths each member found, as name:count;name:count.
+ * Each repeat gets its own seed, derived from the -seed value, and every combination in that repeat
+ * uses it, so navigators are compared on the same sensor noise. The same -seed gives the same rows,
+ * apart from the wall and planning times. */
+public class BatchRunner {
+    private static final String HEADER = "vehicle,environment,navigator,repeat,outcome,success,"
+            + "simTime,wallTime,pathLength,planningTime,replans,loops,planLatency,staleVersions,droppedPlans,wins,seed";
+
+    private List<String> vehicles;          // Names of the vehicle profiles to run
+    private List<String> environments;      // Names of the environment profiles to run
+    private List<String> navigators;        // Names of the navigators to run
+    private int repeats;                    // How many times to run each combination
+    private int threads;                    // How many runs to perform at once
+    private double simTimeLimit;            // Sim time each run may take, in s
+    private double wallTimeLimit;           // Real time each run may take, in s
+    private double stuckTime;               // Sim time each run may go without progress, in s
+    private double planningBudget;          // Real time an anytime navigator may plan each loop, in s
+    private boolean gatedReplanning;        // Whether runs only plan when the path has been invalidated
+    private boolean asyncPlanning;          // Whether runs plan on their own planner thread
+    private PlannerExecutor.StalePolicy stalePolicy;   // What the planner thread does with stale paths
+    private long seed;                      // The seeds of the repeats are derived from this
+    private PrintWriter out;                // Where the rows are written
+    private PrintStream progress;           // Where progress is reported
+    private int finished;                   // How many runs have finished
+
+    /* Constructor. */
+    public BatchRunner(List<String> vehicles, List<String> environments, List<String> navigators,
+                       int repeats, int threads, PrintWriter out, PrintStream progress){
+        this.vehicles = vehicles;
+        this.environments = environments;
+        this.navigators = navigators;
+        this.repeats = repeats;
+        this.threads = threads;
+        this.out = out;
+        this.progress = progress;
+        this.finished = 0;
+        this.simTimeLimit = 0;
+        this.wallTimeLimit = 0;
+        this.stuckTime = 0;
+        this.planningBudget = 0;
+        this.gatedReplanning = true;
+        this.asyncPlanning = true;
+        this.stalePolicy = PlannerExecutor.StalePolicy.KEEP;
+        this.seed = new SplittableRandom().nextLong();
+    }
+
+    /* Sets the seed the seeds of the repeats are derived from. */
+    public void setSeed(long seed){
+        this.seed = seed;
+    }
+
+    /* Sets the limits applied to every run, in s, 0 for none. */
+    public void setLimits(double simTimeLimit, double wallTimeLimit, double stuckTime){
+        this.simTimeLimit = simTimeLimit;
+        this.wallTimeLimit = wallTimeLimit;
+        this.stuckTime = stuckTime;
+    }
+
+    /* Sets the real time an anytime navigator may plan for each loop, in s, 0 for no limit. */
+    public void setPlanningBudget(double planningBudget){
+        this.planningBudget = planningBudget;
+    }
+
+    /* Sets whether runs only plan when the path has been invalidated, rather than every loop. */
+    public void setGatedReplanning(boolean gatedReplanning){
+        this.gatedReplanning = gatedReplanning;
+    }
+
+    /* Sets whether runs plan on their own planner thread, and what it does with paths whose snapshot
+     * was replaced while they were planned. */
+    public void setAsyncPlanning(boolean asyncPlanning, PlannerExecutor.StalePolicy stalePolicy){
+        this.asyncPlanning = asyncPlanning;
+        this.stalePolicy = stalePolicy;
+    }
+
+    /* Runs every combination and waits for them all to finish. */
+    public void runAll() throws InterruptedException {
+        int total = vehicles.size() * environments.size() * navigators.size() * repeats;
+        progress.println("Running " + total + " simulations on " + threads + " threads, seed " + seed);
+        out.println(HEADER);
+        out.flush();
+
+        SplittableRandom seeds = new SplittableRandom(seed);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int r = 0; r < repeats; r++){
+            final int repeat = r;
+            final long repeatSeed = seeds.nextLong();
+            for (String v : vehicles){
+                for (String e : environments){
+                    for (String n : navigators){
+                        executor.execute(() -> runOne(v, e, n, repeat, repeatSeed, total));
+                    }
+                }
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /* Performs a single run and writes its row. */
+    private void runOne(String vehicleName, String environmentName, String navigatorName, int repeat,
+                        long runSeed, int total){
+        Vehicle veh = VehicleProfile.getVehicleProfile(vehicleName).getVehicle();
+        Environment env = EnvironmentProfile.getEnvironmentProfile(environmentName).getEnvironment();
+        Navigator nav = Navigators.createNavigator(navigatorName);
+
+        Simulator sim = new Simulator(veh, env, false, false, false);
+        sim.setClock(new VirtualClock());
+        sim.setNavigator(nav);
+        sim.setSeed(runSeed);
+        sim.setSimTimeLimit(simTimeLimit);
+        sim.setWallTimeLimit(wallTimeLimit);
+        sim.setStuckTime(stuckTime);
+        sim.setPlanningBudget(planningBudget);
+        sim.setGatedReplanning(gatedReplanning);
+        sim.setAsyncPlanning(asyncPlanning);
+        sim.setStalePolicy(stalePolicy);
+        try {
+            sim.simulate();
+        } catch (RuntimeException | Error ex){
+            progress.println("ERROR " + vehicleName + " " + environmentName + " " + navigatorName + " " + ex);
+        }
+        SimulationResult result = sim.getResult();
+
+        String row = csv(vehicleName) + "," + csv(environmentName) + "," + csv(navigatorName) + "," + repeat
+                + "," + result.getOutcome()
+                + "," + (result.getOutcome() == SimulationResult.Outcome.SUCCESS)
+                + "," + String.format("%.3f", result.getSimTimeNanos()/1e9)
+                + "," + String.format("%.3f", result.getWallTimeNanos()/1e9)
+                + "," + String.format("%.3f", result.getPathLength())
+                + "," + String.format("%.6f", result.getPlanningNanos()/1e9)
+                + "," + result.getReplans()
+                + "," + result.getLoops()
+                + "," + String.format("%.6f", result.getMeanPlanLatencyNanos()/1e9)
+                + "," + String.format("%.3f", result.getMeanStaleVersions())
+                + "," + result.getDroppedPlans()
+                + "," + csv(wins(result))
+                + "," + result.getSeed();
+        synchronized (this){
+            out.println(row);
+            out.flush();
+            finished++;
+            progress.println("[" + finished + "/" + total + "] " + vehicleName + " " + environmentName
+                    + " " + navigatorName + " " + result);
+        }
+    }
+
+    /* Quotes a value if it would break the CSV row. */
+    private static String csv(String value){
+        if (value.contains(",") || value.contains("\"")){
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /* The wins of a portfolio's members, as name:count;name:count, empty for other navigators. */
+    private static String wins(SimulationResult result){
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> e : result.getPlannerWins().entrySet()){
+            if (sb.length() > 0){
+                sb.append(';');
+            }
+            sb.append(e.getKey()).append(':').append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    /* Main. */
+    public static void main(String args[]){
+        // Make sure nothing tries to open a window
+        System.setProperty("java.awt.headless", "true");
+
+        // Load Vehicle and Environment profiles
+        Logger.readAll();
+
+        List<String> vehicles = VehicleProfile.getNames();
+        List<String> environments = EnvironmentProfile.getNames();
+        List<String> navigators = Arrays.asList(Navigators.getNames());
+        int repeats = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String file = "results.csv";
+        double simTimeLimit = 600;
+        double wallTimeLimit = 120;
+        double stuckTime = 120;
+        double planningBudget = 0;
+        String gated = "on";
+        String async = "on";
+        String stale = "keep";
+        String quiet = "on";
+        Long seed = null;
+
+        for (int i = 0; i < args.length; i++){
+            if (i + 1 >= args.length){
+                usage();
+            }
+            String value = args[++i];
+            switch (args[i-1]){
+                case "-v": vehicles = Arrays.asList(value.split(",")); break;
+                case "-e": environments = Arrays.asList(value.split(",")); break;
+                case "-n": navigators = Arrays.asList(value.split(",")); break;
+                case "-r": repeats = Integer.parseInt(value); break;
+                case "-t": threads = Integer.parseInt(value); break;
+                case "-o": file = value; break;
+                case "-s": simTimeLimit = Double.parseDouble(value); break;
+                case "-w": wallTimeLimit = Double.parseDouble(value); break;
+                case "-k": stuckTime = Double.parseDouble(value); break;
+                case "-b": planningBudget = Double.parseDouble(value); break;
+                case "-g": gated = value; break;
+                case "-a": async = value; break;
+                case "-p": stale = value; break;
+                case "-q": quiet = value; break;
+                case "-seed": seed = Long.parseLong(value); break;
+                default: usage();
+            }
+        }
+        for (String v : vehicles){
+            if (VehicleProfile.getVehicleProfile(v) == null) unknown("vehicle profile", v);
+        }
+        for (String e : environments){
+            if (EnvironmentProfile.getEnvironmentProfile(e) == null) unknown("environment profile", e);
+        }
+        for (String n : navigators){
+            if (Navigators.getNavigator(n) == null) unknown("navigator", n);
+        }
+        if (repeats < 1 || threads < 1 || simTimeLimit < 0 || wallTimeLimit < 0 || stuckTime < 0 || planningBudget < 0
+                || !(gated.equals("on") || gated.equals("off")) || !(async.equals("on") || async.equals("off"))
+                || !(stale.equals("keep") || stale.equals("drop")) || !(quiet.equals("on") || quiet.equals("off"))){
+            usage();
+        }
+
+        // The simulations print a lot of progress on their own, which would only serialise the
+        // worker threads on System.out, so unless asked for it is discarded while the batch runs
+        PrintStream console = System.out;
+        if (quiet.equals("on")){
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))){
+            BatchRunner runner = new BatchRunner(new ArrayList<String>(vehicles), new ArrayList<String>(environments),
+                    new ArrayList<String>(navigators), repeats, threads, out, console);
+            runner.setLimits(simTimeLimit, wallTimeLimit, stuckTime);
+            runner.setPlanningBudget(planningBudget);
+            runner.setGatedReplanning(gated.equals("on"));
+            runner.setAsyncPlanning(async.equals("on"),
+                    stale.equals("drop") ? PlannerExecutor.StalePolicy.DROP : PlannerExecutor.StalePolicy.KEEP);
+            if (seed != null){
+                runner.setSeed(seed);
+            }
+            runner.runAll();
+        } catch (IOException | InterruptedException ex){
+            console.println("ERROR " + ex);
+            System.exit(1);
+        }
+        console.println("Results written to " + file);
+    }
+
+    /* Prints how to use the runner and exits. */
+    private static void usage(){
+        System.out.println("Usage: BatchRunner [-v vehicles] [-e environments] [-n navigators] [-r repeats] [-t threads] [-o file]");
+        System.out.println("                   [-s sim time limit] [-w wall time limit] [-k stuck time] [-b planning budget] [-g on|off]");
+        System.out.println("                   [-a on|off] [-p keep|drop] [-q on|off] [-seed n]");
+        System.out.println("Vehicle profiles: " + VehicleProfile.getNames());
+        System.out.println("Environment profiles: " + EnvironmentProfile.getNames());
+        System.out.println("Navigators: " + Arrays.toString(Navigators.getNames()));
+        System.exit(1);
+    }
+
+    /* Reports an unknown name and exits. */
+    private static void unknown(String type, String name){
+        System.out.println("ERROR Unknown " + type + ": " + name);
+        usage();
+    }
+}
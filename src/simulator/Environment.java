@@ -4,22 +4,31 @@ package simulator;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.awt.geom.Ellipse2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /** Contains all values needed to describe an environment for a vehicle to
  * drive on.
  * Assumes:
  *  Ground is flat.
- *  All objects and lines are made up of ellipses. */
+ *  All objects and lines are made up of ellipses.
+ * The map is width x height metres, and is split into square tiles of
+ * tileSize metres for the discrete map the navigators plan on. */
 public class Environment implements Serializable{
 
     private static final long serialVersionUID = 42L;
+    private static final double DEFAULT_SIZE = 2.8;         // Map width and height in m
+    private static final double DEFAULT_TILE_SIZE = 0.056;  // Gives a 50x50 grid
     private LinkedList<Ellipse2D.Double> obstacles;
     private LinkedList<Ellipse2D.Double> lines;
     private double startX;
     private double startY;
     private double goalX;
     private double goalY;
+    private double width;       // Size of the map in m
+    private double height;
+    private double tileSize;    // Width and height of a discrete map tile in m
     
     /* Constructor. */
     public Environment(){
@@ -29,6 +38,22 @@ public class Environment implements Serializable{
         startY = 0.1;
         goalX = 2.0;
         goalY = 2.0;
+        width = DEFAULT_SIZE;
+        height = DEFAULT_SIZE;
+        tileSize = DEFAULT_TILE_SIZE;
+    }
+
+    /* Environments saved before the map size was configurable read it as 0,
+     * so they are given the size every map used to have. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (width <= 0 || height <= 0){
+            width = DEFAULT_SIZE;
+            height = DEFAULT_SIZE;
+        }
+        if (tileSize <= 0){
+            tileSize = DEFAULT_TILE_SIZE;
+        }
     }
 
     /* Getters. */
@@ -50,6 +75,22 @@ public class Environment implements Serializable{
     public double getGoalY(){
         return goalY;
     }
+    public double getWidth(){
+        return width;
+    }
+    public double getHeight(){
+        return height;
+    }
+    public double getTileSize(){
+        return tileSize;
+    }
+    /* The grid size of the discrete map, at least one tile. */
+    public int getNumTilesX(){
+        return Math.max(1, (int)Math.round(width / tileSize));
+    }
+    public int getNumTilesY(){
+        return Math.max(1, (int)Math.round(height / tileSize));
+    }
     
     /* Setters. If a value is not acceptable, returns false.*/
 
@@ -77,4 +118,16 @@ public class Environment implements Serializable{
         this.goalY = goalY;
         return true;
     }
+    public boolean setSize(double width, double height){
+        if (width <= 0) return false;
+        if (height <= 0) return false;
+        this.width = width;
+        this.height = height;
+        return true;
+    }
+    public boolean setTileSize(double tileSize){
+        if (tileSize <= 0) return false;
+        this.tileSize = tileSize;
+        return true;
+    }
 }
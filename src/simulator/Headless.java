@@ -0,0 +1,66 @@
+package simulator;
+
+import java.util.Arrays;
+
+import simulator.gui.Logger;
+
+/** Runs a single simulation without any display, for use on machines without a screen. The vehicle
+ * and environment profiles are read from the log files the same way the user interface does, and
+ * the outcome and timing are printed when the run finishes.
+ * Runs use a VirtualClock, so they finish as fast as possible, unless --realtime is given. A run
+ * that takes more than 10 minutes of sim time, or 2 minutes without getting closer to the goal, is
+ * ended and reported as TIMEOUT or STUCK. Giving the seed printed with a result repeats that run
+ * exactly.
+ * Usage: Headless [--realtime] [--seed n] <vehicle profile> <environment profile> */
+public class Headless {
+
+    /* Main. */
+    public static void main(String args[]){
+        // Make sure nothing tries to open a window
+        System.setProperty("java.awt.headless", "true");
+
+        // Load Vehicle and Environment profiles
+        Logger.readAll();
+        boolean realTime = false;
+        Long seed = null;
+        while (args.length > 0 && args[0].startsWith("--")){
+            if (args[0].equals("--realtime")){
+                realTime = true;
+                args = Arrays.copyOfRange(args, 1, args.length);
+            } else if (args[0].equals("--seed") && args.length > 1){
+                seed = Long.parseLong(args[1]);
+                args = Arrays.copyOfRange(args, 2, args.length);
+            } else {
+                break;
+            }
+        }
+        if (args.length != 2){
+            System.out.println("Usage: Headless [--realtime] [--seed n] <vehicle profile> <environment profile>");
+            System.out.println("Vehicle profiles: " + VehicleProfile.getNames());
+            System.out.println("Environment profiles: " + EnvironmentProfile.getNames());
+            System.exit(1);
+        }
+        VehicleProfile vp = VehicleProfile.getVehicleProfile(args[0]);
+        EnvironmentProfile ep = EnvironmentProfile.getEnvironmentProfile(args[1]);
+        if (vp == null || ep == null){
+            System.out.println("ERROR Unknown profile: " + (vp == null ? args[0] : args[1]));
+            System.exit(1);
+        }
+
+        // Run the simulation on this thread
+        Simulator sim = new Simulator(vp.getVehicle(), ep.getEnvironment(), false, false, false);
+        if (realTime){
+            sim.setClock(new RealTimeClock());
+        } else {
+            sim.setClock(new VirtualClock());
+        }
+        if (seed != null){
+            sim.setSeed(seed);
+        }
+        sim.setSimTimeLimit(600);
+        sim.setStuckTime(120);
+        sim.simulate();
+        System.out.println("RESULT " + vp.getName() + " " + ep.getName() + " "
+                + vp.getVehicle().getNavigatorName() + " " + sim.getResult());
+    }
+}
@@ -5,45 +5,46 @@ Written by Nick Sullivan, Adelaide Uni.
 package simulator;
 
 import java.lang.Runnable;
-import java.util.List;
 import java.lang.Math;
 
 import simulator.maps.DiscreteMap;
-import simulator.interfaces.MapListener;
-import simulator.interfaces.NavigatorNode;
+import simulator.maps.PlannedPath;
+import simulator.maps.Pose;
+import simulator.interfaces.SimulationClock;
 
-/* This class moves the vehicle. It observes the discrete map to find our estimated position and our
-path, then alters our real position.
+/* This class moves the vehicle. It reads the discrete map before each step to find our estimated
+position and our path, then alters our real position.
 To Improve: Only move when a region has been looked at and a new path has been found. */
-public class MotorMover implements Runnable, MapListener {
+public class MotorMover implements Runnable {
 	private double DEST_ACCEPT_DIST = 0.3;	//How close the vehicle needs to be to a destination, in m
 	private double DEST_ACCEPT_ANG = 2.0;	//How close the angle needs to be to go in a desired direction, in deg
 	private long WAIT_TIME = 5;			//How many milliseconds wait between movements
+	private int SPLICE_WINDOW = 8;		//How many nodes at the start of a new path to look for where we are
 	
 	private DiscreteMap dMap;			//Link to the map with the path we're tracking
 	private PositionEstimator posEst;	//Link to the class that records the real position
+	private SimulationClock clock;		//The clock used to pace movements
 	
 	private double linVelocity;			//The velocity of the vehicle in a straight line, in m/cycle
 	private double rotVelocity;			//The velocity of the vehicle rotating on the spot, in rad/cycle
 	
-	//These variables are altered by another thread, so all access to them must be done by
-	// the thread safe getter and setter functions
-	private int vehicleTileX;			//The position of the vehicle in the grid
-	private int vehicleTileY;
-	private double vehicleAng;			//The orientation of the vehicle, in degrees (CCW from East)
-	private List<NavigatorNode> path;	//The order of nodes to go through to reach the destination (set by calculatePath())
-										//Each node contains the x,y position of grid
-	private Object mutexLock;			//The mutex lock to prevent thread clashes	
+	private volatile Pose pose;			//Where the vehicle is estimated to be, read from the map each step
+	
+	private PlannedPath path;			//The path we're following, read from the map each step
+	private int cursor;					//The index in the path of the node we're heading to
+	private volatile boolean running;	//Cleared to make the mover thread finish
 	
 	/* Constructor, set variables. */
-	public MotorMover(DiscreteMap dMap, PositionEstimator posEst, double linVelocity, double rotVelocity){
+	public MotorMover(DiscreteMap dMap, PositionEstimator posEst, SimulationClock clock, double linVelocity, double rotVelocity){
 		this.dMap = dMap;
 		this.posEst = posEst;
+		this.clock = clock;
 		this.linVelocity = linVelocity * (double)WAIT_TIME / 1000.0; //convert from m/s to m/cycle
 		this.rotVelocity = rotVelocity * (double)WAIT_TIME / 1000.0; //convert from rad/s to rad/cycle
-		mutexLock = new Object();
-		
-		dMap.addListener(this);
+		pose = dMap.getVehiclePose();
+		path = PlannedPath.EMPTY;
+		cursor = 0;
+		running = true;
 	}
 	
 	/********************************************
@@ -56,25 +57,26 @@ public class MotorMover implements Runnable, MapListener {
 	 This could be the case if the robot appears to turn on the spot for no reason. */
 	@Override
 	public void run(){
-		while (true){
-			if (path != null && !path.isEmpty()){
+		while (running){
+			update();
+			if (cursor < path.size()){
 				boolean gotANode = false;
 				
 				//Get the destination node
-				NavigatorNode node = path.get(0);
-				int destX = node.getX();
-				int destY = node.getY();
+				int destX = path.getX(cursor);
+				int destY = path.getY(cursor);
 				
 				//Get our position
-				int x = getVehicleTileX();
-				int y = getVehicleTileY();
-				double ang = getVehicleAng();
+				Pose p = pose;
+				int x = dMap.getTileX(p);
+				int y = dMap.getTileY(p);
+				double ang = p.getAng();
 				
-				//If we are close enough to the dest node, remove it from the list
+				//If we are close enough to the dest node, move on to the next one
 				int distX = Math.abs(destX-x);
 				int distY = Math.abs(destY-y);
 				if ( distX*distX + distY*distY < DEST_ACCEPT_DIST*DEST_ACCEPT_DIST ){
-					path.remove(0);
+					cursor++;
 					gotANode=false;
 				} else {
 					gotANode=true;
@@ -106,24 +108,31 @@ public class MotorMover implements Runnable, MapListener {
 			
 			//Wait for a bit
 			try {
-				Thread.sleep(WAIT_TIME);
+				clock.sleep(WAIT_TIME);
 			} catch (InterruptedException e){
+				if (!running) break;
 				System.out.println(e);
 			}
 		}
+		clock.unregister(Thread.currentThread());
 	}
 	
-	/********************************************
-	* Listener methods 							*
-	*********************************************/
+	/* Makes the mover thread finish after its current step. */
+	public void stop(){
+		running = false;
+	}
 	
-	/*Updates our snapshot of where the vehicle is, and the path we need to track. */
-	@Override
-	public void mapHasChanged(){
-		setVehicleTileX(dMap.getVehicleTileX());
-		setVehicleTileY(dMap.getVehicleTileY());
-		setVehicleAng(dMap.getVehicleAng());
-		setPath(dMap.getPath());
+	/*Updates our snapshot of where the vehicle is, and the path we need to track. Done before each
+	step rather than on every change to the map, which happens far more often than we move. A new path
+	is joined at the node nearest to us among its first few, as we may have moved on from where it was
+	planned, rather than going back to its start. */
+	private void update(){
+		pose = dMap.getVehiclePose();
+		PlannedPath p = dMap.getPath();
+		if (p.getVersion() != path.getVersion()){
+			path = p;
+			cursor = p.indexNearest(dMap.getTileX(pose), dMap.getTileY(pose), SPLICE_WINDOW);
+		}
 	}
 		
 	/********************************************
@@ -131,48 +140,12 @@ public class MotorMover implements Runnable, MapListener {
 	*********************************************/
 	
 	public int getVehicleTileX(){
-		int x;
-		synchronized (mutexLock){
-			x = vehicleTileX;
-		}
-		return x;
+		return dMap.getTileX(pose);
 	}
-	
 	public int getVehicleTileY(){
-		int y;
-		synchronized (mutexLock){
-			y = vehicleTileY;
-		}
-		return y;
+		return dMap.getTileY(pose);
 	}
-	
 	public double getVehicleAng(){
-		double ang;
-		synchronized (mutexLock){
-			ang = vehicleAng;
-		}
-		return ang;
-	}
-	public void setVehicleTileX(int x){
-		synchronized (mutexLock){
-			vehicleTileX = x;
-		}
-	}
-	public void setVehicleTileY(int y){
-		synchronized (mutexLock){
-			vehicleTileY = y;
-		}
-	}
-	public void setVehicleAng(double ang){
-		synchronized (mutexLock){
-			vehicleAng = ang;
-		}
-	}
-		
-	//fix this!!!
-	public void setPath(List<NavigatorNode> path){
-		synchronized (mutexLock){
-			this.path = path;
-		}
+		return pose.getAng();
 	}
 }
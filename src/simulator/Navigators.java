@@ -4,8 +4,10 @@ package simulator;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.lang.Class;
+import java.lang.reflect.Modifier;
 import java.io.File;
 
+import simulator.interfaces.GridView;
 import simulator.interfaces.Navigator;
 
 /** Purely static, should not be instanciated. Contains a list of all navigators,
@@ -37,6 +39,18 @@ public class Navigators{
 					// Convert to a Navigator object
 					try {
 						Class<? extends Object> c = Class.forName(fileName);
+						// Skip the helper classes that share the package (searches, heaps, interfaces)
+						if ( !Navigator.class.isAssignableFrom(c) || c.isInterface()
+								|| Modifier.isAbstract(c.getModifiers()) ){
+							continue;
+						}
+						// Skip classes compiled against an older Navigator interface, whose
+						// calculatePath(GridView, ...) would throw AbstractMethodError
+						if ( Modifier.isAbstract(c.getMethod("calculatePath", GridView.class, int.class, int.class,
+								int.class, int.class, double.class).getModifiers()) ){
+							System.out.println("Skipping " + fileName + ", it does not implement the current Navigator interface");
+							continue;
+						}
 						Navigator nav = (Navigator) c.newInstance();
 						navigators.add(nav);
 						
@@ -77,6 +91,21 @@ public class Navigators{
         return null;
     }
 
+    /* Creates a new instance of the Navigator with the given name, so that a run has its own
+     * navigator state. Returns null if no navigator has that name. */
+    public static Navigator createNavigator(String name){
+        Navigator nav = getNavigator(name);
+        if (nav == null){
+            return null;
+        }
+        try {
+            return nav.getClass().getDeclaredConstructor().newInstance();
+        } catch (Exception ex){
+            System.out.println("Exception "+ex);
+            return null;
+        }
+    }
+
     /* Returns the first navigator for use by default. */
     public static Navigator getFirstNavigator(){
         if (navigators.size() > 0){
@@ -0,0 +1,193 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator;
+
+import java.util.List;
+
+import simulator.interfaces.GridView;
+import simulator.interfaces.Navigator;
+import simulator.interfaces.NavigatorNode;
+import simulator.interfaces.SimulationClock;
+import simulator.maps.DiscreteMap;
+import simulator.maps.Pose;
+import simulator.maps.ReplanPolicy;
+
+/* Plans paths on its own thread, so the sensing loop keeps sweeping at the sensors' rate while a slow
+navigator plans, and a slow sweep does not hold up the next path.
+The sensing loop submits a request, which takes the newest snapshot of the grid and the vehicle's pose
+at that moment. Only the newest request is kept, so if several arrive while a path is being planned the
+older ones are skipped. If a request arrives while a path is being planned, the path is based on an old
+snapshot, and the StalePolicy says whether to publish it anyway (KEEP) or throw it away and plan the
+newer one (DROP). If paths take longer to plan than requests take to arrive every path would be thrown
+away, so after MAX_DROPPED in a row the next one is published whatever its age.
+A submitted request holds simulation time until it has been planned, by registering the planner thread
+with the clock, which unregisters once it has nothing left to do. With a VirtualClock planning therefore
+takes no simulation time, as it did on the sensing thread, and runs are still repeatable.
+If the navigator throws, the failure is recorded in the result, an empty path is published so the
+vehicle stops, and the planner thread finishes. Later requests are ignored, see getFailure(). */
+public class PlannerExecutor implements Runnable {
+	private static final int MAX_DROPPED = 2;	//How many paths in a row may be thrown away
+
+	/* What to do with a path whose snapshot has been replaced by a newer request while planning. */
+	public static enum StalePolicy {
+		KEEP, DROP
+	}
+
+	private DiscreteMap dMap;			//The map to plan on and publish to
+	private Navigator nav;				//The navigator to plan with, only used on the planner thread
+	private SimulationClock clock;		//Held while there is a request to plan
+	private ReplanPolicy replanPolicy;	//Told about each path published, null for none
+	private long budget;				//Real time an AnytimeNavigator may plan for, in ns, 0 for no limit
+	private StalePolicy stalePolicy;	//What to do with a path planned on an old snapshot
+	private SimulationResult result;	//Where planning is recorded
+
+	private Thread thread;				//The planner thread, once started
+	private Object lock;				//Guards the request and the counters below
+	private Request pending;			//The newest request not yet being planned, or null
+	private long newestVersion;			//The grid version of the newest request submitted
+	private int dropped;				//How many paths in a row have been thrown away, planner thread only
+	private volatile boolean running;	//Cleared to make the planner thread finish
+	private volatile Throwable failure;	//What the navigator threw, or null
+
+	/* Constructor. Nothing is planned until start() is called. */
+	public PlannerExecutor(DiscreteMap dMap, Navigator nav, SimulationClock clock, ReplanPolicy replanPolicy,
+							long budget, StalePolicy stalePolicy, SimulationResult result){
+		this.dMap = dMap;
+		this.nav = nav;
+		this.clock = clock;
+		this.replanPolicy = replanPolicy;
+		this.budget = budget;
+		this.stalePolicy = stalePolicy;
+		this.result = result;
+		lock = new Object();
+		pending = null;
+		newestVersion = 0;
+		dropped = 0;
+		running = true;
+		failure = null;
+	}
+
+	/********************************************
+	* Threading methods 						*
+	*********************************************/
+
+	/* Starts the planner thread. */
+	public void start(){
+		thread = new Thread(this, "Planner");
+		thread.start();
+	}
+
+	/* Asks for a path to be planned on the grid as it is now, from where the vehicle is now. Returns
+	straight away. */
+	public void submit(){
+		Request request = new Request(dMap.getSnapshot(), dMap.getVehiclePose(), dMap.getDestinationTileX(),
+									dMap.getDestinationTileY(), System.nanoTime());
+		synchronized (lock){
+			if (!running || thread == null || !thread.isAlive()) return;	//a dead thread would hold the clock for ever
+			pending = request;
+			result.addPlanRequest();
+			newestVersion = request.grid.getVersion();
+			clock.register(thread);		//time waits for the request, the planner unregisters when idle
+			lock.notifyAll();
+		}
+	}
+
+	/* Makes the planner thread finish, abandoning any path being planned, and waits for it. */
+	public void stop(){
+		synchronized (lock){
+			running = false;
+			pending = null;
+			lock.notifyAll();
+		}
+		if (thread == null) return;
+		thread.interrupt();			//navigators check for this and give up
+		try {
+			thread.join();
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* Plans each request as it arrives, until stopped. */
+	@Override
+	public void run(){
+		try {
+			while (running){
+				//Wait for a request, letting time move on while there is none
+				Request request;
+				synchronized (lock){
+					while (running && pending == null){
+						clock.unregister(thread);
+						lock.wait();
+					}
+					if (!running) break;
+					request = pending;
+					pending = null;
+				}
+
+				//Plan it
+				long planStart = System.nanoTime();
+				List<NavigatorNode> p;
+				try {
+					p = dMap.planPath(nav, request.grid, request.pose, budget);
+				} catch (Throwable e){
+					synchronized (lock){
+						failure = e;
+						running = false;
+						pending = null;
+						result.setError(e.toString());
+					}
+					System.out.println("Planner failed: " + e);
+					dMap.publishPath(null);
+					break;
+				}
+				long planEnd = System.nanoTime();
+
+				//Publish it, unless it's been replaced and is not wanted
+				synchronized (lock){
+					if (!running) break;
+					result.addPlanningTime(planEnd - planStart);
+					if (pending != null && stalePolicy == StalePolicy.DROP && dropped < MAX_DROPPED){
+						dropped++;
+						result.addDroppedPlan();
+						continue;
+					}
+					dropped = 0;
+					dMap.publishPath(p);
+					if (replanPolicy != null){
+						replanPolicy.pathPublished(request.grid.getVersion(), request.pose, request.destTileX, request.destTileY);
+					}
+					result.addPublishedPlan(System.nanoTime() - request.submitTime, newestVersion - request.grid.getVersion());
+				}
+			}
+		} catch (InterruptedException e){
+			//Stopped while waiting
+		} finally {
+			clock.unregister(thread);
+		}
+	}
+
+	/* What the navigator threw, which ended planning, or null if it has not failed. */
+	public Throwable getFailure(){
+		return failure;
+	}
+
+	/* A snapshot of what to plan from, taken when the request was submitted. */
+	private static class Request{
+		private GridView grid;			//The grid to plan on
+		private Pose pose;				//Where the vehicle was
+		private int destTileX;			//Where it was going
+		private int destTileY;
+		private long submitTime;		//Real time it was submitted, in ns
+
+		public Request(GridView grid, Pose pose, int destTileX, int destTileY, long submitTime){
+			this.grid = grid;
+			this.pose = pose;
+			this.destTileX = destTileX;
+			this.destTileY = destTileY;
+			this.submitTime = submitTime;
+		}
+	}
+}
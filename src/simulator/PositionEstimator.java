@@ -5,9 +5,10 @@ Written by Nick Sullivan, Adelaide Uni.
 package simulator;
 
 import java.lang.Math;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import simulator.maps.*;
+import simulator.interfaces.SimulationClock;
 
 /** Records the real position and angle of the vehicle, then tells the RealMap the actual values, and the
 ObservedMap and DiscreteMap the value with slight errors according to VehicleStats.
@@ -21,6 +22,7 @@ public class PositionEstimator{
 	private double fakePosX;			//The fake X position of the vehicle, in m (pixel coordinates)
 	private double fakePosY;			//The fake Y position of the vehicle, in m (pixel coordinates)
 	private double fakeAng;				//The orientation of the vehicle, in degrees (CCW from East)
+	private double distanceTravelled;	//How far the vehicle has moved forward in total, in m
 	
 	private double distError;			//How much error (in m) can occur for vehicle position
 	private double angError;			//How much error (in deg) can occur for vehicle angle
@@ -31,16 +33,18 @@ public class PositionEstimator{
 	private boolean updateMap;			//Whether to periodically update the Observed/Discrete Maps, 
 										// or to simply hold the information to be obtained via 
 										// getter functions
-	private Random rand;					//Random number generator, can do Gaussian.
+	private SplittableRandom rand;		//Random number generator for the position noise, belongs to this run
+	private SimulationClock clock;		//The clock used to time GPS and IMU updates
 	
 	private RealMap rm;					//Links to the maps
 	private ObservedMap om;
 	private DiscreteMap dm;
 	
 	/* Constructor, set variables. */
-	public PositionEstimator(RealMap rm, ObservedMap om, DiscreteMap dm, double distError, double angError,
-						long gpsUpdatePeriod, long imuUpdatePeriod, boolean updateMap){
+	public PositionEstimator(RealMap rm, ObservedMap om, DiscreteMap dm, SimulationClock clock, SplittableRandom rand,
+						double distError, double angError, long gpsUpdatePeriod, long imuUpdatePeriod, boolean updateMap){
 		this.rm = rm;
+		this.clock = clock;
 		this.om = om;
 		this.dm = dm;
 		vehiclePosX = 0;
@@ -49,13 +53,14 @@ public class PositionEstimator{
 		fakePosX = 0;
 		fakePosY = 0;
 		fakeAng = 0;
-		rand = new Random();
+		distanceTravelled = 0;
+		this.rand = rand;
 		this.distError = distError;
 		this.angError = angError;
 		this.gpsUpdatePeriod = gpsUpdatePeriod;
 		this.imuUpdatePeriod = imuUpdatePeriod;
-		lastGpsUpdatePeriod = 0;
-		lastImuUpdatePeriod = 0;
+		lastGpsUpdatePeriod = Long.MIN_VALUE/2;	//long enough ago that the first alert updates both
+		lastImuUpdatePeriod = Long.MIN_VALUE/2;
 		this.updateMap = updateMap;
 	}
 	
@@ -65,6 +70,7 @@ public class PositionEstimator{
 		double y = dist * Math.sin(vehicleAng*Math.PI/180.0);
 		vehiclePosX+= x;
 		vehiclePosY-= y;			//flip to pixel coord
+		distanceTravelled += Math.abs(dist);
 		alertMaps();
 	}
 	
@@ -87,7 +93,7 @@ public class PositionEstimator{
 		boolean alertAng = false;
 		
 		//If enough time has passed, create new fake angle
-		long timeNow = System.nanoTime();
+		long timeNow = clock.nanoTime();
 		if ( (timeNow-lastImuUpdatePeriod)/1e6 >= imuUpdatePeriod){
 			fakeAng = vehicleAng + (rand.nextGaussian())*angError/3.0;
 			lastImuUpdatePeriod = timeNow;
@@ -102,19 +108,14 @@ public class PositionEstimator{
 		}
 		
 		//Real Map gets the real position all the time
-		rm.setVehiclePos(vehiclePosX,vehiclePosY,vehicleAng);
+		rm.setVehiclePose(new Pose(vehiclePosX, vehiclePosY, vehicleAng, timeNow));
 		
 		//Give ObservedMap and DiscreteMap error-filled values if enough time has passed and the 
-		// updateMap flag is true.
-		if (updateMap){
-			if (alertPos){
-				om.setVehiclePos(fakePosX, fakePosY);
-				dm.setVehiclePos(fakePosX, fakePosY);
-			}
-			if (alertAng){
-				om.setVehicleAng(fakeAng);
-				dm.setVehicleAng(fakeAng);
-			}
+		// updateMap flag is true. Position and angle are given together, so they are never seen apart.
+		if (updateMap && (alertPos || alertAng)){
+			Pose fake = new Pose(fakePosX, fakePosY, fakeAng, timeNow);
+			om.setVehiclePose(fake);
+			dm.setVehiclePose(fake);
 		}
 		
 	}
@@ -124,6 +125,11 @@ public class PositionEstimator{
 	* Getters and Setters						*
 	*********************************************/
 	
+	/* The total distance moved forward, in m. */
+	public double getDistanceTravelled(){
+		return distanceTravelled;
+	}
+	
 	/* Called by Main initially */
 	public void setVehiclePos(double x, double y, double ang){
 		vehiclePosX = x;
@@ -0,0 +1,35 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator;
+
+import simulator.interfaces.SimulationClock;
+
+/** A clock that follows the wall clock, so the simulation runs at the speed it would in reality. This
+is what the displayed simulations use. Registration is not needed and is ignored. **/
+public class RealTimeClock implements SimulationClock{
+	private long startTime;		//System time when the clock was created, in ns
+
+	/* Constructor, time starts at 0. */
+	public RealTimeClock(){
+		startTime = System.nanoTime();
+	}
+
+	@Override
+	public long nanoTime(){
+		return System.nanoTime() - startTime;
+	}
+
+	@Override
+	public void sleep(long millis) throws InterruptedException{
+		if (millis <= 0) return;
+		Thread.sleep(millis);
+	}
+
+	@Override
+	public void register(Thread thread){}
+
+	@Override
+	public void unregister(Thread thread){}
+}
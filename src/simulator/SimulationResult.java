@@ -0,0 +1,181 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The outcome and measurements of a single simulation run. Filled in by the Simulator as the run
+progresses, and complete once the run has finished. **/
+public class SimulationResult{
+
+	/* How a run ended. RUNNING until the run is finished. TIMEOUT if it ran out of sim or wall time,
+	STUCK if the vehicle stopped getting closer to the goal, STOPPED if it was ended by the user and 
+	ERROR if it or its navigator threw an exception, see getError(). */
+	public static enum Outcome {
+		RUNNING, SUCCESS, TIMEOUT, STUCK, STOPPED, ERROR
+	}
+
+	private Outcome outcome;		//How the run ended
+	private long seed;				//The seed all of the run's random numbers came from
+	private long wallTimeNanos;		//Real time taken by the run
+	private long simTimeNanos;		//Simulation time taken by the run
+	private long planningNanos;		//Real time spent calculating paths
+	private int loops;				//How many sense-plan iterations were performed
+	private int replans;			//How many times a path was calculated, or asked of the planner thread
+	private int publishedPlans;		//How many paths planned on the planner thread were published
+	private int droppedPlans;		//How many were thrown away as their snapshot had been replaced
+	private long planLatencyNanos;	//Real time from asking for each published path to publishing it
+	private long staleVersions;		//Summed over published paths, how many grid versions older their
+									// snapshot was than the newest one asked for
+	private double pathLength;		//How far the vehicle drove, in m
+	private Map<String, Integer> plannerWins;	//For a NavigatorPortfolio, how many paths each member won
+	private String error;			//What ended the run as ERROR, or null
+
+	/* Constructor, set defaults. */
+	public SimulationResult(){
+		outcome = Outcome.RUNNING;
+		seed = 0;
+		wallTimeNanos = 0;
+		simTimeNanos = 0;
+		planningNanos = 0;
+		loops = 0;
+		replans = 0;
+		publishedPlans = 0;
+		droppedPlans = 0;
+		planLatencyNanos = 0;
+		staleVersions = 0;
+		pathLength = 0;
+		plannerWins = new LinkedHashMap<String, Integer>();
+		error = null;
+	}
+
+	/* Records one loop of the sense-plan cycle. */
+	public void addLoop(){
+		loops++;
+	}
+
+	/* Records one path calculation and how long it took. */
+	public void addReplan(long nanos){
+		replans++;
+		planningNanos += nanos;
+	}
+
+	/* Records a path being asked of the planner thread. Counted when asked for rather than when
+	planned, so the count does not depend on whether the last one finished before the run ended. */
+	public void addPlanRequest(){
+		replans++;
+	}
+	
+	/* Records real time spent calculating a path on the planner thread. */
+	public void addPlanningTime(long nanos){
+		planningNanos += nanos;
+	}
+	
+	/* Records a path planned on the planner thread being published, how long after it was asked for,
+	and how many grid versions older its snapshot was than the newest one asked for. */
+	public void addPublishedPlan(long latencyNanos, long versionsBehind){
+		publishedPlans++;
+		planLatencyNanos += latencyNanos;
+		staleVersions += versionsBehind;
+	}
+	
+	/* Records a path planned on the planner thread being thrown away, as a newer snapshot was asked for
+	while it was planned. */
+	public void addDroppedPlan(){
+		droppedPlans++;
+	}
+	
+	/* The mean real time from asking for a path on the planner thread to publishing it, in ns, 0 if none
+	were published. */
+	public long getMeanPlanLatencyNanos(){
+		return (publishedPlans == 0) ? 0 : planLatencyNanos / publishedPlans;
+	}
+	
+	/* The mean number of grid versions a published path's snapshot was behind the newest one asked for,
+	0 if none were published. */
+	public double getMeanStaleVersions(){
+		return (publishedPlans == 0) ? 0 : (double)staleVersions / publishedPlans;
+	}
+	
+	/* Printout, a single line summary of the run. */
+	@Override
+	public String toString(){
+		return outcome + " sim:" + String.format("%.3f", simTimeNanos/1e9) + "s"
+				+ " wall:" + String.format("%.3f", wallTimeNanos/1e9) + "s"
+				+ " path:" + String.format("%.2f", pathLength) + "m"
+				+ " loops:" + loops
+				+ " replans:" + replans
+				+ " planning:" + String.format("%.3f", planningNanos/1e9) + "s"
+				+ " latency:" + String.format("%.3f", getMeanPlanLatencyNanos()/1e6) + "ms"
+				+ " stale:" + String.format("%.2f", getMeanStaleVersions())
+				+ " dropped:" + droppedPlans
+				+ (plannerWins.isEmpty() ? "" : " wins:" + plannerWins)
+				+ " seed:" + seed
+				+ (error == null ? "" : " error:" + error);
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	public Outcome getOutcome(){
+		return outcome;
+	}
+	public long getSeed(){
+		return seed;
+	}
+	public long getWallTimeNanos(){
+		return wallTimeNanos;
+	}
+	public long getSimTimeNanos(){
+		return simTimeNanos;
+	}
+	public long getPlanningNanos(){
+		return planningNanos;
+	}
+	public int getLoops(){
+		return loops;
+	}
+	public int getReplans(){
+		return replans;
+	}
+	public int getPublishedPlans(){
+		return publishedPlans;
+	}
+	public int getDroppedPlans(){
+		return droppedPlans;
+	}
+	public double getPathLength(){
+		return pathLength;
+	}
+	public Map<String, Integer> getPlannerWins(){
+		return plannerWins;
+	}
+	public String getError(){
+		return error;
+	}
+	public void setOutcome(Outcome outcome){
+		this.outcome = outcome;
+	}
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+	public void setWallTimeNanos(long wallTimeNanos){
+		this.wallTimeNanos = wallTimeNanos;
+	}
+	public void setSimTimeNanos(long simTimeNanos){
+		this.simTimeNanos = simTimeNanos;
+	}
+	public void setPathLength(double pathLength){
+		this.pathLength = pathLength;
+	}
+	public void setPlannerWins(Map<String, Integer> plannerWins){
+		this.plannerWins = new LinkedHashMap<String, Integer>(plannerWins);
+	}
+	public void setError(String error){
+		this.error = error;
+	}
+}
@@ -5,33 +5,145 @@ Written by Nick Sullivan, University of Adelaide.
 package simulator;
 
 import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import javax.swing.SwingUtilities;
 import javax.swing.*;
 import simulator.gui.*;
 import simulator.maps.*;
 import simulator.interfaces.Navigator;
+import simulator.interfaces.Seedable;
+import simulator.interfaces.SimulationClock;
 import simulator.interfaces.Slam;
 import simulator.navigators.*;
 
 /** Hitting 'simulator' on the GUI creates an instance of this class, handing over all required
-information. */
+information. The simulator can also run without a display (see Headless), in which case no GUI 
+classes are created. 
+A run either happens on the calling thread with simulate(), or on its own thread with start(), and 
+can be ended early with stop(). It also ends when a sim time or wall time limit is reached, or when the
+vehicle stops getting closer to the goal. Either way, the threads and listeners the run created are
+released before the run finishes. */
 public class Simulator implements Runnable{
+	private static final double PROGRESS_DISTANCE = 0.05;	//How much closer to the goal counts as progress, in m
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+		new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Simulator watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});		//Ends runs that go over their wall time limit, shared by all runs
+	
 	private Vehicle veh;
 	private Environment env;
 	private boolean trails;
 	private boolean timer;
+	private boolean display;		//Whether to show the map GUIs
+	private SimulationClock clock;	//Paces the sensors and the vehicle
+	private Navigator navigator;	//The navigator to use, or null to create the vehicle's own
+	private long seed;				//Every random number in the run is derived from this
+	private SimulationResult result;	//The outcome of the run, filled in as it progresses
+	private double simTimeLimit;	//Sim time allowed for the run in s, 0 for no limit
+	private double wallTimeLimit;	//Real time allowed for the run in s, 0 for no limit
+	private double stuckTime;		//Sim time allowed without progress towards the goal in s, 0 for no limit
+	private double planningBudget;	//Real time an AnytimeNavigator may plan for each loop in s, 0 for no limit
+	private boolean gatedReplanning;	//Whether to plan only when the path has been invalidated (see ReplanPolicy)
+	private boolean asyncPlanning;	//Whether to plan on a PlannerExecutor rather than in the sensing loop
+	private PlannerExecutor.StalePolicy stalePolicy;	//What the executor does with paths planned on old snapshots
+	private volatile SimulationResult.Outcome endRequest;	//Set by stop() or the wall time limit to end the run
+	private Thread runThread;		//The thread performing the run, while it is running
+	private Object runLock;			//Guards runThread and the outcome, used to wait for the run to end
+	private double[] sweepRanges;	//Buffers filled by each LIDAR/camera sweep, reused between sweeps
+	private double[] sweepXs;
+	private double[] sweepYs;
 	
 	public Simulator(Vehicle veh, Environment env, boolean trails, boolean timer){
+		this(veh, env, trails, timer, true);
+	}
+	
+	public Simulator(Vehicle veh, Environment env, boolean trails, boolean timer, boolean display){
 		this.veh = veh;
 		this.env = env;
 		this.trails = trails;
 		this.timer = timer;
+		this.display = display;
+		clock = new RealTimeClock();
+		result = new SimulationResult();
+		seed = new SplittableRandom().nextLong();
+		simTimeLimit = 0;
+		wallTimeLimit = 0;
+		stuckTime = 0;
+		planningBudget = 0;
+		gatedReplanning = true;
+		asyncPlanning = true;
+		stalePolicy = PlannerExecutor.StalePolicy.KEEP;
+		endRequest = null;
+		runLock = new Object();
 	}
 	
 	@Override
 	public void run() {
 		simulate();
 	}
+	
+	/********************************************
+	* Lifecycle methods 						*
+	*********************************************/
+	
+	/* Performs the run on a new thread and returns straight away. A Simulator performs one run only. */
+	public Thread start(){
+		Thread thread = new Thread(this, "Simulator");
+		thread.start();
+		return thread;
+	}
+	
+	/* Asks the run to end. The run finishes as STOPPED once the current sense-plan loop is done. Does
+	nothing if the run has already finished. */
+	public void stop(){
+		end(SimulationResult.Outcome.STOPPED);
+	}
+	
+	/* Asks the run to end with the given outcome. The run thread is interrupted, which wakes it if it
+	is waiting on the clock, and lets navigators that check for interrupts give up early. */
+	private void end(SimulationResult.Outcome outcome){
+		synchronized (runLock){
+			if (endRequest == null){
+				endRequest = outcome;
+			}
+			if (runThread != null){
+				runThread.interrupt();
+			}
+		}
+	}
+	
+	/* Waits for a run started with start() to finish, and returns its result. */
+	public SimulationResult await() throws InterruptedException{
+		synchronized (runLock){
+			while (result.getOutcome() == SimulationResult.Outcome.RUNNING){
+				runLock.wait();
+			}
+		}
+		return result;
+	}
+	
+	/* Waits up to the given number of milliseconds for the run to finish. Returns the result, which is
+	still RUNNING if the run has not finished. */
+	public SimulationResult await(long millis) throws InterruptedException{
+		long end = System.currentTimeMillis() + millis;
+		synchronized (runLock){
+			long left = millis;
+			while (result.getOutcome() == SimulationResult.Outcome.RUNNING && left > 0){
+				runLock.wait(left);
+				left = end - System.currentTimeMillis();
+			}
+		}
+		return result;
+	}
 	public void simulate(){
 		double[] lidarData;			//Array of distances, simulates real LIDAR data
 		double width;				//Width of the map in metres
@@ -43,37 +155,69 @@ public class Simulator implements Runnable{
 		double destY;
 		int numTilesX;				//The grid size of the discrete map
 		int numTilesY;
+		long startTime = System.nanoTime();
+		long simStartTime = clock.nanoTime();
+		synchronized (runLock){
+			runThread = Thread.currentThread();
+		}
+		ScheduledFuture<?> watchdog = null;
+		if (wallTimeLimit > 0){
+			watchdog = WATCHDOG.schedule(new Runnable() {
+				public void run() {
+					end(SimulationResult.Outcome.TIMEOUT);
+				}
+			}, (long)(wallTimeLimit*1e9), TimeUnit.NANOSECONDS);
+		}
 		
 		//Set the map in metres
-		width = 2.8;
-		height = 2.8;
+		width = env.getWidth();
+		height = env.getHeight();
 		vehiclePosX = env.getStartX();
 		vehiclePosY = env.getStartY();
 		vehicleAng = 0.0;
 		destX = env.getGoalX();
 		destY = env.getGoalY();
-		numTilesX = 50;
-		numTilesY = 50;
+		numTilesX = env.getNumTilesX();
+		numTilesY = env.getNumTilesY();
+		
+		//Derive a separate random stream for each part of the run. New streams must be split off after
+		// the existing ones, so that old seeds still reproduce the same runs
+		SplittableRandom seedRandom = new SplittableRandom(seed);
+		SplittableRandom positionRandom = seedRandom.split();	//GPS and IMU noise
+		SplittableRandom plannerRandom = seedRandom.split();	//Navigator sampling
+		result.setSeed(seed);
 		
 		//Create objects
 		RealMap rm = new RealMap(width, height, env.getObstacles(), env.getLines());
 		ObservedMap om = new ObservedMap(width, height);
 		DiscreteMap dm = new DiscreteMap(width, height, numTilesX, numTilesY);
-		PositionEstimator posEst = new PositionEstimator(rm, om, dm, veh.getGpsError(), veh.getImuError(), (long)(1000*veh.getGpsUpdatePeriod()), (long)(1000*veh.getImuUpdatePeriod()), true);
-		(new Thread(new MotorMover(dm, posEst, veh.getLinearVelocity(), veh.getRotationalVelocity()))).start();
-		final RealMapGUI rmgui = new RealMapGUI(rm, trails);
-		final ObservedMapGUI omgui = new ObservedMapGUI(om);
-		final DiscreteMapGUI dmgui = new DiscreteMapGUI(dm);
-		SwingUtilities.invokeLater(new Runnable() {
-			public void run() {
-				rmgui.display();
-				omgui.display();
-				dmgui.display();
-			}
-		 });
+		ReplanPolicy replanPolicy = new ReplanPolicy(dm);
+		PositionEstimator posEst = new PositionEstimator(rm, om, dm, clock, positionRandom, veh.getGpsError(), veh.getImuError(), (long)(1000*veh.getGpsUpdatePeriod()), (long)(1000*veh.getImuUpdatePeriod()), true);
+		MotorMover motorMover = new MotorMover(dm, posEst, clock, veh.getLinearVelocity(), veh.getRotationalVelocity());
+		Thread mover = new Thread(motorMover);
+		clock.register(Thread.currentThread());
+		clock.register(mover);
+		mover.start();
+		MapDisplays displays = null;
+		if (display){
+			displays = new MapDisplays(rm, om, dm);
+		} else {
+			rm.setLasersEnabled(false);
+		}
 		
-		Navigator nav = Navigators.getNavigator(veh.getNavigatorName() ); //new AStarRRSSW();
-		//Navigator nav = new AStar();
+		//Each run gets its own navigator, so no state is carried over from other runs
+		Navigator nav = navigator;
+		if (nav == null){
+			nav = Navigators.createNavigator(veh.getNavigatorName() ); //new AStarRRSSW();
+		}
+		if (nav instanceof Seedable){
+			((Seedable)nav).setRandom(plannerRandom);
+		}
+		PlannerExecutor planner = null;
+		if (asyncPlanning){
+			planner = new PlannerExecutor(dm, nav, clock, replanPolicy, (long)(planningBudget*1e9), stalePolicy, result);
+			planner.start();
+		}
 		
 		//Set vehicle position
 		posEst.setVehiclePos(vehiclePosX, vehiclePosY, vehicleAng);
@@ -84,30 +228,213 @@ public class Simulator implements Runnable{
 		dm.setDestinationPos(destX, destY);
 		//waitFor(-1);
 		
-		//Loop until complete
-		boolean found = false;
-		while(!found){
-			//Perform a LIDAR sweep
-			performLidarSweep(veh, rm, om, dm);
-			om.refreshObsPoints();
-			
-			//Perform a camera sweep
-			performCameraSweep(veh, rm, om, dm);
-			om.refreshLinePoints();
+		//Loop until complete, or until the run has to be ended
+		double bestDist = Double.POSITIVE_INFINITY;		//Closest the vehicle has been to the goal
+		long progressTime = simStartTime;				//When the vehicle last got closer
+		SimulationResult.Outcome outcome = SimulationResult.Outcome.RUNNING;
+		try {
+			while(outcome == SimulationResult.Outcome.RUNNING){
+				//Perform a LIDAR sweep
+				performLidarSweep(veh, rm, om, dm);
+				om.refreshObsPoints();
+				if (endRequest != null){
+					outcome = endRequest;
+					break;
+				}
+				
+				//Perform a camera sweep
+				performCameraSweep(veh, rm, om, dm);
+				om.refreshLinePoints();
+				
+				//Perform a SLAM iteration
+				//performSlam();
+				
+				//Perform navigation on the DiscreteMap, if the path has been invalidated
+				if (planner != null && planner.getFailure() != null){
+					outcome = SimulationResult.Outcome.ERROR;	//the navigator threw, see the result's error
+					break;
+				}
+				if (!gatedReplanning || replanPolicy.needsReplan()){
+					if (planner != null){
+						planner.submit();
+					} else {
+						long planStart = System.nanoTime();
+						replanPolicy.calculatePath(nav, (long)(planningBudget*1e9));
+						result.addReplan(System.nanoTime() - planStart);
+					}
+				}
+				result.addLoop();
+				
+				//Show the tick's changes, rather than waiting for the notifiers' interval
+				flushListeners(rm, om, dm);
+							
+				//Check if we're at the end
+				Pose pose = rm.getVehiclePose();
+				double dist = Math.abs(destX-pose.getX()) + Math.abs(destY-pose.getY());
+				long simTime = clock.nanoTime();
+				if (dist < bestDist - PROGRESS_DISTANCE){
+					bestDist = dist;
+					progressTime = simTime;
+				}
+				if (dist < 0.2){
+					outcome = SimulationResult.Outcome.SUCCESS;
+				} else if (endRequest != null){
+					outcome = endRequest;
+				} else if (simTimeLimit > 0 && simTime - simStartTime > simTimeLimit*1e9){
+					outcome = SimulationResult.Outcome.TIMEOUT;
+				} else if (stuckTime > 0 && simTime - progressTime > stuckTime*1e9){
+					outcome = SimulationResult.Outcome.STUCK;
+				}
+			}
+		} catch (RuntimeException | Error e){
+			outcome = SimulationResult.Outcome.ERROR;
+			result.setError(e.toString());
+			throw e;
+		} finally {
+			result.setWallTimeNanos(System.nanoTime() - startTime);
+			result.setSimTimeNanos(clock.nanoTime() - simStartTime);
+			result.setPathLength(posEst.getDistanceTravelled());
 			
-			//Perform a SLAM iteration
-			//performSlam();
+			//Release everything the run created
+			if (watchdog != null){
+				watchdog.cancel(false);
+			}
+			synchronized (runLock){
+				runThread = null;
+			}
+			Thread.interrupted();	//clear any interrupt left by end(), so the joins below wait
+			if (planner != null){
+				planner.stop();
+			}
+			if (nav instanceof NavigatorPortfolio){
+				result.setPlannerWins(((NavigatorPortfolio)nav).getWins());
+			}
+			motorMover.stop();
+			mover.interrupt();
+			clock.unregister(Thread.currentThread());
+			try {
+				mover.join();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			if (displays != null){
+				flushListeners(rm, om, dm);
+				displays.detach();
+			}
 			
-			//Perform navigation on the DiscreteMap
-			dm.calculatePath(nav);
-						
-			//Check if we're at the end
-			if (Math.abs(destX-rm.getVehiclePosX()) + Math.abs(destY-rm.getVehiclePosY()) < 0.2){
-				found = true;
+			//Report the outcome, waking anyone in await()
+			synchronized (runLock){
+				result.setOutcome(outcome);
+				runLock.notifyAll();
 			}
-
 		}
+	}
+	
+	/* Alerts each map's listeners of everything that has changed since they were last alerted. */
+	private static void flushListeners(RealMap rm, ObservedMap om, DiscreteMap dm){
+		rm.getNotifier().flush();
+		om.getNotifier().flush();
+		dm.getNotifier().flush();
+	}
+	
+	/* The GUIs of a displayed run. Kept apart from simulate() so that runs without a display never
+	touch the GUI classes. */
+	private class MapDisplays{
+		private RealMapGUI rmgui;
+		private ObservedMapGUI omgui;
+		private DiscreteMapGUI dmgui;
+		
+		/* Creates a GUI for each map and displays them on the EDT. Closing any of the windows stops
+		the run. */
+		public MapDisplays(RealMap rm, ObservedMap om, DiscreteMap dm){
+			rmgui = new RealMapGUI(rm, trails);
+			omgui = new ObservedMapGUI(om);
+			dmgui = new DiscreteMapGUI(dm);
+			final Runnable closeAction = new Runnable() {
+				public void run() {
+					stop();
+				}
+			};
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					rmgui.display(closeAction);
+					omgui.display(closeAction);
+					dmgui.display(closeAction);
+				}
+			 });
+		}
+		
+		/* Stops the GUIs following the maps. The windows stay open showing the end of the run, until
+		the user closes them. */
+		public void detach(){
+			rmgui.detach();
+			omgui.detach();
+			dmgui.detach();
+		}
+	}
+	
+	/* Sets the clock used by the run. Must be called before the run starts. */
+	public void setClock(SimulationClock clock){
+		this.clock = clock;
+	}
+	
+	/* Sets the seed for the run. Runs with the same seed, profiles and navigator on a VirtualClock 
+	follow the same path. By default the seed is random, and recorded in the result. Must be called 
+	before the run starts. */
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+	
+	/* Sets the navigator used by the run, instead of creating the vehicle's navigator. Must be called 
+	before the run starts. */
+	public void setNavigator(Navigator navigator){
+		this.navigator = navigator;
+	}
 	
+	/* Sets how much sim time the run may take, in s. The run ends as TIMEOUT after that. 0 for no limit. */
+	public void setSimTimeLimit(double simTimeLimit){
+		this.simTimeLimit = simTimeLimit;
+	}
+	
+	/* Sets how much real time the run may take, in s. The run ends as TIMEOUT after that. 0 for no limit.
+	A navigator that is planning at the time only stops early if it checks for interrupts. */
+	public void setWallTimeLimit(double wallTimeLimit){
+		this.wallTimeLimit = wallTimeLimit;
+	}
+	
+	/* Sets how much sim time the vehicle may spend without getting closer to the goal, in s. The run 
+	ends as STUCK after that. 0 for no limit. */
+	public void setStuckTime(double stuckTime){
+		this.stuckTime = stuckTime;
+	}
+	
+	/* Sets how much real time an AnytimeNavigator may spend planning each loop, in s, after which it
+	returns the best path found so far. Other navigators are not limited. 0 for no limit. */
+	public void setPlanningBudget(double planningBudget){
+		this.planningBudget = planningBudget;
+	}
+	
+	/* Sets whether the path is only planned again when the map or vehicle have invalidated it, rather
+	than every loop. On by default. */
+	public void setGatedReplanning(boolean gatedReplanning){
+		this.gatedReplanning = gatedReplanning;
+	}
+	
+	/* Sets whether paths are planned on their own thread, so sensing does not wait for them, rather than
+	in the sensing loop. On by default. */
+	public void setAsyncPlanning(boolean asyncPlanning){
+		this.asyncPlanning = asyncPlanning;
+	}
+	
+	/* Sets what the planner thread does with a path whose snapshot was replaced while it was planned.
+	KEEP by default. */
+	public void setStalePolicy(PlannerExecutor.StalePolicy stalePolicy){
+		this.stalePolicy = stalePolicy;
+	}
+	
+	/* The outcome of the run so far. */
+	public SimulationResult getResult(){
+		return result;
 	}
 	
 	/*public static void main(String args[]){
@@ -192,49 +519,51 @@ public class Simulator implements Runnable{
 
 	/* Performs a LIDAR sweep using a Vehicle inside a RealMap. The data is then added to 
 	the ObservedMap and DiscreteMap */
-	public static void performLidarSweep(Vehicle veh, RealMap rm, ObservedMap om, DiscreteMap dm){
+	public void performLidarSweep(Vehicle veh, RealMap rm, ObservedMap om, DiscreteMap dm){
 		double lidarRange = veh.getLidarRange();				//Get the angle the sweep spans
 		double lidarIncrement = veh.getLidarIncrement();		//Get sweep precision
 		double lidarDistance = veh.getLidarDistance();			//Get the acceptable distance
 		int iterations = (int)(lidarRange / lidarIncrement) + 1;//For 180deg sweep with 1.0deg inc, there are 181 values
-		int waitTime = (int)(veh.getLidarPeriod()*1000.0 / (double)iterations);
-		double angle;											//The angle that is iterated
-		double[] obsPos;										//The detected obstacle, in metres,metres - pixel coordinates
-		for (int i=0; i<iterations; i++){
-			angle = ((double)i)*lidarIncrement - lidarRange/2.0;	//The sweep goes CCW
-			obsPos = rm.calculateObstacleCollision(angle, lidarDistance);
-			if (obsPos != null){	//only continue if an obstacle was found
-				om.addObstaclePoint(obsPos[0], obsPos[1]);
-				dm.addPoint(obsPos[0], obsPos[1]);
-			}
-			waitFor(waitTime);
-			rm.clearLasers();
+		int waitTime = (int)(veh.getLidarPeriod()*1000.0);
+		
+		//Sweep CCW, and pass the detected obstacles (metres,metres - pixel coordinates) on to the maps
+		ensureSweepBuffers(iterations);
+		int hits = rm.sweepObstacles(-lidarRange/2.0, lidarIncrement, iterations, lidarDistance, sweepRanges, sweepXs, sweepYs);
+		if (hits > 0){	//only continue if an obstacle was found
+			om.addObstaclePoints(sweepXs, sweepYs, iterations);
+			dm.addPoints(sweepXs, sweepYs, iterations);
 		}
+		waitFor(waitTime);
+		rm.clearLasers();
 	}
 	
 	/* Performs a camera sweep using a Vehicle inside a RealMap. The data is then added to 
 	the ObservedMap and DiscreteMap */
-	public static void performCameraSweep(Vehicle veh, RealMap rm, ObservedMap om, DiscreteMap dm){
+	public void performCameraSweep(Vehicle veh, RealMap rm, ObservedMap om, DiscreteMap dm){
 		double cameraRange = veh.getCameraRange();				//Get the angle the sweep spans
 		double cameraIncrement = veh.getCameraIncrement();		//Get sweep precision
 		double cameraDistance = veh.getCameraDistance();		//Get the acceptable distance
 		int iterations = (int)(cameraRange / cameraIncrement) + 1;//For 180deg sweep with 1.0deg inc, there are 181 values
 		int waitTime = (int)(veh.getCameraPeriod()*1000.0);
-		double angle;											//The angle that is iterated
-		double[] linePos;										//The detected line, in metres,metres - pixel coordinates
-		for (int i=0; i<iterations; i++){
-			angle = (double)(i)*cameraIncrement - cameraRange/2.0;	//The sweep goes CCW
-			linePos = rm.calculateLineCollision(angle, cameraDistance);
-			if (linePos != null){	//only continue if an obstacle was found
-				om.addLinePoint(linePos[0], linePos[1]);
-				dm.addPoint(linePos[0], linePos[1]);
-			}
-			
+		
+		//Sweep CCW, and pass the detected lines (metres,metres - pixel coordinates) on to the maps
+		ensureSweepBuffers(iterations);
+		int hits = rm.sweepLines(-cameraRange/2.0, cameraIncrement, iterations, cameraDistance, sweepRanges, sweepXs, sweepYs);
+		if (hits > 0){	//only continue if a line was found
+			om.addLinePoints(sweepXs, sweepYs, iterations);
+			dm.addPoints(sweepXs, sweepYs, iterations);
 		}
 		waitFor(waitTime);
 		rm.clearLasers();
+	}
 	
-	
+	/* Makes sure the sweep buffers can hold the given number of rays. They are reused by every sweep. */
+	private void ensureSweepBuffers(int size){
+		if (sweepRanges == null || sweepRanges.length < size){
+			sweepRanges = new double[size];
+			sweepXs = new double[size];
+			sweepYs = new double[size];
+		}
 	}
 
 	/* Performs a localisation estimate using SLAM. The data is then added to 
@@ -253,15 +582,21 @@ public class Simulator implements Runnable{
 	/* Waits depending on the settings. 
 	time == 0: Do nothing
 	time == -1: Waits for user input
-	time > 0: Wait for this many milliseconds.*/
-	public static void waitFor(int time){
+	time > 0: Wait for this many milliseconds of simulation time.
+	Returns straight away once the run has been asked to end, as the clock may never get there.*/
+	public void waitFor(int time){
 		if (time == -1){
 			waitForInput();
 			return;
 		}
+		if (endRequest != null) return;
 		try {
-			Thread.sleep(time);
+			clock.sleep(time);
 		} catch (InterruptedException e){
+			if (endRequest != null){
+				Thread.currentThread().interrupt();	//woken by end(), keep it for navigators that check
+				return;
+			}
 			System.out.println(e);
 		}
 	}
@@ -0,0 +1,127 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+import simulator.interfaces.SimulationClock;
+
+/** A discrete event clock. Time only moves when every registered thread is sleeping on the clock, and
+then it jumps straight to the earliest wake up time. Computation therefore takes no simulation time,
+and a run finishes as fast as the processor allows while seeing the same sequence of timed events as
+it would in real time.
+
+Sleepers are woken one at a time, earliest first and in the order they went to sleep when the times
+are equal. Only one registered thread runs at any moment, so the interleaving of the simulation
+threads is the same on every run.
+
+A thread that sleeps without being registered is treated as registered for the length of the sleep. **/
+public class VirtualClock implements SimulationClock{
+	private long now;						//The current simulation time, in ns
+	private long sequence;					//Orders sleepers that wake at the same time
+	private int running;					//How many registered threads are not sleeping
+	private HashSet<Thread> registered;		//Threads taking part in the simulation
+	private PriorityQueue<Sleeper> sleepers;//Sleeping threads, earliest wake up first
+
+	/* Constructor, time starts at 0. */
+	public VirtualClock(){
+		now = 0;
+		sequence = 0;
+		running = 0;
+		registered = new HashSet<Thread>();
+		sleepers = new PriorityQueue<Sleeper>();
+	}
+
+	@Override
+	public synchronized long nanoTime(){
+		return now;
+	}
+
+	@Override
+	public void sleep(long millis) throws InterruptedException{
+		if (millis <= 0) return;
+
+		Thread thread = Thread.currentThread();
+		synchronized (this){
+			boolean temporary = registered.add(thread);
+			if (temporary){
+				running++;
+			}
+			Sleeper sleeper = new Sleeper(now + millis*1000000L, sequence++);
+			sleepers.add(sleeper);
+			running--;
+			try {
+				advance();
+				while (!sleeper.woken){
+					wait();
+				}
+			} catch (InterruptedException e){
+				//Woken early, we are running again
+				if (!sleeper.woken){
+					sleepers.remove(sleeper);
+					running++;
+				}
+				throw e;
+			} finally {
+				if (temporary){
+					registered.remove(thread);
+					running--;
+					advance();
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void register(Thread thread){
+		if (registered.add(thread)){
+			running++;
+		}
+	}
+
+	@Override
+	public synchronized void unregister(Thread thread){
+		if (registered.remove(thread)){
+			running--;
+			advance();
+		}
+	}
+
+	/* If no registered thread is running, moves time to the earliest sleeper and wakes it. Must be
+	called with the lock held. */
+	private void advance(){
+		if (running > 0 || sleepers.isEmpty()) return;
+
+		Sleeper next = sleepers.poll();
+		if (next.wakeTime > now){
+			now = next.wakeTime;
+		}
+		next.woken = true;
+		running++;
+		notifyAll();
+	}
+
+	/* A thread waiting for a point in time. */
+	private static class Sleeper implements Comparable<Sleeper>{
+		private long wakeTime;		//When to wake, in ns
+		private long order;			//Tie breaker, lower went to sleep first
+		private boolean woken;		//Set when time has reached wakeTime
+
+		public Sleeper(long wakeTime, long order){
+			this.wakeTime = wakeTime;
+			this.order = order;
+			woken = false;
+		}
+
+		@Override
+		public int compareTo(Sleeper b){
+			if (wakeTime != b.wakeTime){
+				return wakeTime < b.wakeTime ? -1 : 1;
+			}
+			return Long.compare(order, b.order);
+		}
+	}
+}
@@ -6,14 +6,17 @@ package simulator.gui;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ConcurrentModificationException;
 
 import simulator.maps.DiscreteMap;
+import simulator.maps.PlannedPath;
+import simulator.maps.Pose;
+import simulator.interfaces.GridView;
 import simulator.interfaces.MapListener;
-import simulator.interfaces.NavigatorNode;
 
 
 public class DiscreteMapGUI implements MapListener{
@@ -26,17 +29,23 @@ public class DiscreteMapGUI implements MapListener{
 	public DiscreteMapGUI(DiscreteMap map){
 		//Establish connections
 		this.map = map;
-		map.addListener(this);
+		map.addListener(this, MapListener.POSE | MapListener.GRID | MapListener.PATH | MapListener.DESTINATION);
 		grid = new Grid(map.getNumTilesY(), map.getNumTilesX());
-		grid.setMutexLock(map.getMutexLock());
-		grid.setGrid(map.getGrid());
 	}
 	
-	/*Displays the GUI. Should only be called once, after initialisation.*/
-	public void display(){
+	/*Displays the GUI. Should only be called once, after initialisation. closeAction is run when the
+	user closes the window, and may be null.*/
+	public void display(final Runnable closeAction){
 		//Create the window
 		window = new JFrame("Discrete Map");
-		window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		window.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		if (closeAction != null){
+			window.addWindowListener(new WindowAdapter() {
+				public void windowClosed(WindowEvent e) {
+					closeAction.run();
+				}
+			});
+		}
 		window.setLocation(1100, 50);
 		window.setResizable(true);
 		
@@ -54,12 +63,21 @@ public class DiscreteMapGUI implements MapListener{
 		window.setVisible(true);	
 	}
 	
+	/* Stops following the map. The window keeps showing the last state. */
+	public void detach(){
+		map.removeListener(this);
+	}
+	
 	/********************************************
 	* Listener methods 							*
 	*********************************************/
-	public void mapHasChanged(){
-		grid.setPath(map.getPath());
-		grid.setVehiclePosition(map.getVehicleTileX(), map.getVehicleTileY());
+	/* Update whatever changed and repaint. The grid itself is snapshotted when painting. */
+	public void mapHasChanged(int changes){
+		if ((changes & MapListener.PATH) != 0){
+			grid.setPath(map.getPath());
+		}
+		Pose pose = map.getVehiclePose();
+		grid.setVehiclePosition(map.getTileX(pose), map.getTileY(pose));
 		grid.setDestinationPosition(map.getDestinationTileX(), map.getDestinationTileY());
 		grid.repaint();
 	}
@@ -68,6 +86,7 @@ public class DiscreteMapGUI implements MapListener{
 	* Canvas to draw on							*
 	*********************************************/
 	private class Grid extends JComponent{
+		private static final int MIN_OUTLINED_TILE = 4;	//Smallest tile in pixels that gets an outline
 		
 		private int rows;					//The number of rows
 		private int cols;					//The number of columns
@@ -77,13 +96,10 @@ public class DiscreteMapGUI implements MapListener{
 		private int vehicleTileY;
 		private int destTileX;				//The position of the destination in the grid
 		private int destTileY;
+		private BufferedImage image;		//The grid drawn with one pixel per tile, reused between paints
+		private int[] pixels;				//The image's pixels, by row
 		
-		//These variables are altered by the map thread, so all reading of them must be done with
-		// the mutex lock.
-		private List<NavigatorNode> path;			//The order of nodes to go through to reach the destination (set by calculatePath())
-													//Each node contains the x,y position of grid
-		private int[][] grid;						//DiscreteMap's grid
-		private Object mutexLock;
+		private volatile PlannedPath path;	//The latest path, which is replaced rather than altered
 		
 		/* Constructor, set defaults. */
 		public Grid(int rows, int cols){
@@ -93,13 +109,14 @@ public class DiscreteMapGUI implements MapListener{
 			vehicleTileY = 0;
 			destTileX = 0;
 			destTileY = 0;
-			grid = new int[cols][rows];
-			path = new LinkedList<NavigatorNode>();
-			mutexLock = new Object();
+			path = PlannedPath.EMPTY;
 			setBackground(Color.BLACK);
 		}
 		
-		/* Paints the map. This should never be called directly. Use repaint(). */
+		/* Paints the map. This should never be called directly. Use repaint(). The grid is drawn into an
+		image with one pixel per tile, which is then scaled to the component, so large grids cost one
+		pass over the grid rather than a shape per tile. Tile outlines are only drawn when tiles are big
+		enough to see them. */
 		@Override
 		protected void paintComponent(Graphics g){
 			super.paintComponent(g);
@@ -107,75 +124,60 @@ public class DiscreteMapGUI implements MapListener{
 			Dimension size = getSize();
 			tileWidth = (int) (size.getWidth() / cols);
 			tileHeight = (int) (size.getHeight() / rows);
+			if (image == null){
+				image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+				pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			}
 			
-			Color[][] gridColors = new Color[cols][rows];
-			
-			//Calculate colors from grid
-			for (int i=0; i<rows; i++){
-				for (int j=0; j<cols; j++){
-					Color color = Color.WHITE;
-					
-					if (grid[j][i] == 0){
-						color = Color.WHITE;
-					}
-					if (grid[j][i] > 0){
-						color = Color.GRAY;
-					}
-					
-					gridColors[j][i] = color;
+			//Calculate colors from a snapshot of the grid
+			GridView grid = map.getSnapshot();
+			int white = Color.WHITE.getRGB();
+			int gray = Color.GRAY.getRGB();
+			for (int j=0; j<cols; j++){
+				for (int i=0; i<rows; i++){
+					pixels[i*cols + j] = (grid.get(j, i) > 0) ? gray : white;
 				}
 			}
 			//Calculate color from path
-			synchronized(mutexLock){
-				ListIterator<NavigatorNode> iterator = path.listIterator(0);
-				while (iterator.hasNext()){
-					NavigatorNode n = iterator.next();
-					int x = n.getX();
-					int y = n.getY();
-					gridColors[x][y] = Color.YELLOW;
-				}
+			int yellow = Color.YELLOW.getRGB();
+			PlannedPath p = path;
+			for (int k=0; k<p.size(); k++){
+				int x = p.getX(k);
+				int y = p.getY(k);
+				if (x < 0 || x >= cols || y < 0 || y >= rows) continue;
+				pixels[y*cols + x] = yellow;
 			}
 			
 			//Calculate color from destination
-			gridColors[destTileX][destTileY] = Color.GREEN;
+			pixels[destTileY*cols + destTileX] = Color.GREEN.getRGB();
 			
 			//Calculate color from vehicle
-			gridColors[vehicleTileX][vehicleTileY] = Color.BLUE;
+			pixels[vehicleTileY*cols + vehicleTileX] = Color.BLUE.getRGB();
 			
-			//Paint the grid
-			for (int i=0; i<rows; i++){
-				for (int j=0; j<cols; j++){
-					g2d.setColor(gridColors[j][i]);
-					int x = j*tileWidth;
-					int y = i*tileHeight;
-					Rectangle rect = new Rectangle(x, y, tileWidth, tileHeight);
-					g2d.fill(rect);
-					
-					//Draw the outline
-					g2d.setColor(Color.BLACK);
-					g2d.draw(rect);
-					
+			//Paint the grid, shrinking it to fit if there are more tiles than pixels
+			int drawWidth = (tileWidth > 0) ? cols*tileWidth : size.width;
+			int drawHeight = (tileHeight > 0) ? rows*tileHeight : size.height;
+			g2d.drawImage(image, 0, 0, drawWidth, drawHeight, null);
+			
+			//Draw the outlines
+			if (tileWidth >= MIN_OUTLINED_TILE && tileHeight >= MIN_OUTLINED_TILE){
+				g2d.setColor(Color.BLACK);
+				for (int j=0; j<=cols; j++){
+					g2d.drawLine(j*tileWidth, 0, j*tileWidth, rows*tileHeight);
+				}
+				for (int i=0; i<=rows; i++){
+					g2d.drawLine(0, i*tileHeight, cols*tileWidth, i*tileHeight);
 				}
-			}	
+			}
 		}
 		
 		/********************************************
 		* Getters and Setters						*
 		*********************************************/
-		/* These are called once to set the pointers. */
-		
-		public void setMutexLock(Object mutexLock){
-			this.mutexLock = mutexLock;
-		}
-		public void setGrid(int[][] grid){
-			this.grid = grid;
-		}
-		
-		
 		/* These are called every time map is changed. */
 		
 		/* A new path is generated each time, (not altered in place). */
-		public void setPath(List<NavigatorNode> path){
+		public void setPath(PlannedPath path){
 			this.path = path;
 		}
 		public void setVehiclePosition(int tileX, int tileY){
@@ -22,7 +22,7 @@ import simulator.*;
 @SuppressWarnings("serial")
 public class EnvironmentMaker extends JPanel{
 
-	private static final double METRES_TO_PIXELS = 200.0;	
+	private static final double CANVAS_SIZE = 560.0;	// Pixels across the longer side of the map
 	
     /* The Canvas must be in one of the following states. */
     private static enum State {
@@ -35,6 +35,9 @@ public class EnvironmentMaker extends JPanel{
     }
 
     /* Instance variables. */
+    private double metresToPixels;  // Scale of the canvas, so the map fills CANVAS_SIZE
+    private double mapWidth;        // Size of the map on the canvas, in pixels
+    private double mapHeight;
     private boolean locked;
     private Canvas canvas;
     private Palette palette;
@@ -49,6 +52,11 @@ public class EnvironmentMaker extends JPanel{
                 "[fill]");                      // Row constraints
         this.setLayout(layout);
         
+        // Scale the canvas to the map
+        metresToPixels = CANVAS_SIZE / Math.max(e.getWidth(), e.getHeight());
+        mapWidth = e.getWidth() * metresToPixels;
+        mapHeight = e.getHeight() * metresToPixels;
+        
         // Parse Environment variables
         LinkedList<MyEllipse> initList = new LinkedList<MyEllipse>();
         LinkedList<Ellipse2D.Double> toAdd = e.getObstacles();
@@ -63,8 +71,8 @@ public class EnvironmentMaker extends JPanel{
             Ellipse2D.Double next = iter.next();
             initList.add(new MyEllipse(ObjectType.LINE, next) );
         }
-        initList.add(new MyEllipse(ObjectType.START, e.getStartX()*METRES_TO_PIXELS-10.0, e.getStartY()*METRES_TO_PIXELS-10.0, 20.0, 20.0));
-        initList.add(new MyEllipse(ObjectType.GOAL, e.getGoalX()*METRES_TO_PIXELS-10.0, e.getGoalY()*METRES_TO_PIXELS-10.0, 20.0, 20.0));
+        initList.add(new MyEllipse(ObjectType.START, e.getStartX()*metresToPixels-10.0, e.getStartY()*metresToPixels-10.0, 20.0, 20.0));
+        initList.add(new MyEllipse(ObjectType.GOAL, e.getGoalX()*metresToPixels-10.0, e.getGoalY()*metresToPixels-10.0, 20.0, 20.0));
         
         // Initialise local variables
         locked = false;
@@ -89,10 +97,10 @@ public class EnvironmentMaker extends JPanel{
         ListIterator<MyEllipse> iter = objects.listIterator();
         while ( iter.hasNext() ){
             MyEllipse next = iter.next();
-			double x = next.ellipse.getX() / METRES_TO_PIXELS;
-			double y = next.ellipse.getY() / METRES_TO_PIXELS;
-			double w = next.ellipse.getWidth() / METRES_TO_PIXELS;
-			double h = next.ellipse.getHeight() / METRES_TO_PIXELS;
+			double x = next.ellipse.getX() / metresToPixels;
+			double y = next.ellipse.getY() / metresToPixels;
+			double w = next.ellipse.getWidth() / metresToPixels;
+			double h = next.ellipse.getHeight() / metresToPixels;
 			Ellipse2D.Double ellipse = new Ellipse2D.Double(x, y, w, h);
             switch (next.type){
                 case OBSTACLE:
@@ -140,10 +148,10 @@ public class EnvironmentMaker extends JPanel{
         }
 		/* Ellipse is given with values in metres, then converted to pixels. */
         public MyEllipse(ObjectType type, Ellipse2D.Double ellipse){
-			double x = ellipse.getX() * METRES_TO_PIXELS;
-			double y = ellipse.getY() * METRES_TO_PIXELS;
-			double w = ellipse.getWidth() * METRES_TO_PIXELS;
-			double h = ellipse.getHeight() * METRES_TO_PIXELS;
+			double x = ellipse.getX() * metresToPixels;
+			double y = ellipse.getY() * metresToPixels;
+			double w = ellipse.getWidth() * metresToPixels;
+			double h = ellipse.getHeight() * metresToPixels;
 			Ellipse2D.Double newEllipse = new Ellipse2D.Double(x, y, w, h);
             this.ellipse = newEllipse;
             this.type = type;
@@ -265,6 +273,7 @@ public class EnvironmentMaker extends JPanel{
             addMouseWheelListener(this);
             addKeyListener(this);
             setFocusable(true);
+            setPreferredSize(new Dimension((int)Math.ceil(mapWidth), (int)Math.ceil(mapHeight)));
             pointerSize = 1.0;
 
             // Initial values
@@ -285,6 +294,12 @@ public class EnvironmentMaker extends JPanel{
             super.paintComponent(g);
             Graphics2D g2d = (Graphics2D) g;
             
+            // Shade everything outside the map
+            Dimension size = getSize();
+            g2d.setColor(new Color(230, 230, 230));
+            g2d.fill(new Rectangle2D.Double(mapWidth, 0, Math.max(size.getWidth()-mapWidth, 0), size.getHeight()));
+            g2d.fill(new Rectangle2D.Double(0, mapHeight, mapWidth, Math.max(size.getHeight()-mapHeight, 0)));
+            
             // Draw objects (list is sorted so objects on the bottom get painted
             // first).
             ListIterator<MyEllipse> iter = objects.listIterator();
@@ -6,12 +6,15 @@ package simulator.gui;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.geom.Ellipse2D;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.ConcurrentModificationException;
 
 import simulator.maps.ObservedMap;
+import simulator.maps.Pose;
 import simulator.interfaces.MapListener;
 
 
@@ -29,18 +32,26 @@ public class ObservedMapGUI implements MapListener{
 	public ObservedMapGUI(ObservedMap map){
 		//Establish connections
 		this.map = map;
-		map.addListener(this);
+		map.addListener(this, MapListener.POSE | MapListener.POINTS | MapListener.DESTINATION);
 		canvas = new MyCanvas(map.getWidth(), map.getHeight());
 		canvas.setMutexLock(map.getMutexLockGui());
 		canvas.setNewPoints(map.getNewPoints());
 		canvas.setOldPoints(map.getOldPoints());
 	}
 	
-	/*Displays the GUI. Should only be called once, after initialisation.*/
-	public void display(){
+	/*Displays the GUI. Should only be called once, after initialisation. closeAction is run when the
+	user closes the window, and may be null.*/
+	public void display(final Runnable closeAction){
 		//Create the window
 		window = new JFrame("Observed Map");
-		window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		window.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		if (closeAction != null){
+			window.addWindowListener(new WindowAdapter() {
+				public void windowClosed(WindowEvent e) {
+					closeAction.run();
+				}
+			});
+		}
 		window.setLocation(575, 50);
 		window.setResizable(true);
 		
@@ -59,13 +70,19 @@ public class ObservedMapGUI implements MapListener{
 		window.setVisible(true);	
 	}
 	
+	/* Stops following the map. The window keeps showing the last state. */
+	public void detach(){
+		map.removeListener(this);
+	}
+	
 	/********************************************
 	* Listener methods 							*
 	*********************************************/
 	
 	/* Update primitives and repaint. Objects do not need to be updated as they use pointers. */
-	public void mapHasChanged(){
-		canvas.setVehiclePosition(map.getVehiclePosX(), map.getVehiclePosY(), map.getVehicleAng());
+	public void mapHasChanged(int changes){
+		Pose pose = map.getVehiclePose();
+		canvas.setVehiclePosition(pose.getX(), pose.getY(), pose.getAng());
 		canvas.setDestinationPosition(map.getDestinationPosX(), map.getDestinationPosY());
 		canvas.repaint();
 	}
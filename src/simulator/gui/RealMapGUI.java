@@ -6,6 +6,8 @@ package simulator.gui;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
@@ -14,6 +16,7 @@ import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.ConcurrentModificationException;
 
+import simulator.maps.Pose;
 import simulator.maps.RealMap;
 import simulator.interfaces.MapListener;
 
@@ -29,7 +32,7 @@ public class RealMapGUI implements MapListener{
 	public RealMapGUI(RealMap map, boolean trails){
 		//Establish connections
 		this.map = map;
-		map.addListener(this);
+		map.addListener(this, MapListener.POSE | MapListener.POINTS | MapListener.DESTINATION);
 		canvas = new MyCanvas(map.getWidth(), map.getHeight());
 		
 		//Get pointers
@@ -37,16 +40,25 @@ public class RealMapGUI implements MapListener{
 		canvas.setObstacles(map.getObstacles());
 		canvas.setLines(map.getLines());
 		canvas.setLasers(map.getLasers());
-		canvas.setVehiclePosition(map.getVehiclePosX(), map.getVehiclePosY(), map.getVehicleAng());
+		Pose pose = map.getVehiclePose();
+		canvas.setVehiclePosition(pose.getX(), pose.getY(), pose.getAng());
 		canvas.setTrails(trails);
 	}
 	
-	/*Displays the GUI. Should only be called once, after initialisation.*/
-	public void display(){
+	/*Displays the GUI. Should only be called once, after initialisation. closeAction is run when the
+	user closes the window, and may be null.*/
+	public void display(final Runnable closeAction){
 		
 		//Create the window
 		window = new JFrame("Real Map");
-		window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		window.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		if (closeAction != null){
+			window.addWindowListener(new WindowAdapter() {
+				public void windowClosed(WindowEvent e) {
+					closeAction.run();
+				}
+			});
+		}
 		window.setLocation(50, 50);
 		window.setResizable(true);
 		
@@ -65,13 +77,19 @@ public class RealMapGUI implements MapListener{
 		window.setVisible(true);	
 	}
 	
+	/* Stops following the map. The window keeps showing the last state. */
+	public void detach(){
+		map.removeListener(this);
+	}
+	
 	/********************************************
 	* Listener methods 							*
 	*********************************************/
 	
 	/* Update primitives and repaint. Objects do not need to be updated as they use pointers. */
-	public void mapHasChanged(){
-		canvas.setVehiclePosition(map.getVehiclePosX(), map.getVehiclePosY(), map.getVehicleAng());
+	public void mapHasChanged(int changes){
+		Pose pose = map.getVehiclePose();
+		canvas.setVehiclePosition(pose.getX(), pose.getY(), pose.getAng());
 		canvas.setDestinationPosition(map.getDestinationPosX(), map.getDestinationPosY());
 		canvas.repaint();
 	}
@@ -60,6 +60,9 @@ public class UserInterface implements ActionListener, ListSelectionListener{
     
     // Displaying Environment Profile
     private JTextField eNameTField; // Name of the vehicle profile
+    private JTextField eWidthTField;
+    private JTextField eHeightTField;
+    private JTextField eTileSizeTField;
     private EnvironmentMaker eEnvMaker;
     
     /* State variables. */
@@ -521,7 +524,7 @@ public class UserInterface implements ActionListener, ListSelectionListener{
                 "fill",
                 "[][]",              // Columns
                 "[20!]"              // Banner
-                +"[30!][][30!]");    // Save/Cancel buttons
+                +"[30!][30!][][30!]");   // Save/Cancel buttons
             dispPanel.setLayout(layout);
             JLabel dispLabel = new JLabel("Environment Profile", SwingConstants.CENTER);
             dispLabel.setOpaque(true);
@@ -532,6 +535,17 @@ public class UserInterface implements ActionListener, ListSelectionListener{
             Environment e = envSelectedProfile.getEnvironment();
             Color headingColor = new Color(230,230,230);
 
+            // Map size
+            JLabel sizeLabel = new JLabel("Size (m): ");
+            eWidthTField = new JTextField(String.valueOf( e.getWidth() ), 6);
+            eWidthTField.setEditable(editable);
+            JLabel byLabel = new JLabel(" x ");
+            eHeightTField = new JTextField(String.valueOf( e.getHeight() ), 6);
+            eHeightTField.setEditable(editable);
+            JLabel tileSizeLabel = new JLabel("   Tile size (m): ");
+            eTileSizeTField = new JTextField(String.valueOf( e.getTileSize() ), 6);
+            eTileSizeTField.setEditable(editable);
+
             // Environment maker
             eEnvMaker = new EnvironmentMaker(e);
             if (!editable) eEnvMaker.lock();
@@ -550,9 +564,15 @@ public class UserInterface implements ActionListener, ListSelectionListener{
             dispPanel.add(dispLabel, "cell 0 0, span 5, grow");
             dispPanel.add(nameLabel, "cell 0 1");
             dispPanel.add(eNameTField, "cell 1 1, grow");
-            dispPanel.add(eEnvMaker, "cell 0 2, span 2, grow");
-            dispPanel.add(vSaveButton, "cell 0 4, span 4, center");
-            dispPanel.add(vCancelButton, "cell 0 4, span 4, center");
+            dispPanel.add(sizeLabel, "cell 0 2");
+            dispPanel.add(eWidthTField, "cell 1 2, split 5");
+            dispPanel.add(byLabel, "cell 1 2");
+            dispPanel.add(eHeightTField, "cell 1 2");
+            dispPanel.add(tileSizeLabel, "cell 1 2");
+            dispPanel.add(eTileSizeTField, "cell 1 2");
+            dispPanel.add(eEnvMaker, "cell 0 3, span 2, grow");
+            dispPanel.add(vSaveButton, "cell 0 5, span 4, center");
+            dispPanel.add(vCancelButton, "cell 0 5, span 4, center");
         }
         
         // Pack and display the window
@@ -1165,11 +1185,61 @@ public class UserInterface implements ActionListener, ListSelectionListener{
                 eNameTField.setBackground(badColor);
                 eNameTField.setForeground(Color.WHITE);
             }
+            // map size
+            double newWidth = 0;
+            double newHeight = 0;
+            double newTileSize = 0;
+            try {
+                newWidth = Double.parseDouble( eWidthTField.getText() );
+                newHeight = Double.parseDouble( eHeightTField.getText() );
+                double oldWidth = environment.getWidth();
+                double oldHeight = environment.getHeight();
+                if ( environment.setSize(newWidth, newHeight) ){
+                    environment.setSize(oldWidth, oldHeight);
+                    eWidthTField.setBackground(Color.WHITE);
+                    eWidthTField.setForeground(Color.BLACK);
+                    eHeightTField.setBackground(Color.WHITE);
+                    eHeightTField.setForeground(Color.BLACK);
+                } else {
+                    valid = false;
+                    eWidthTField.setBackground(badColor);
+                    eWidthTField.setForeground(Color.WHITE);
+                    eHeightTField.setBackground(badColor);
+                    eHeightTField.setForeground(Color.WHITE);
+                }
+            } catch (NumberFormatException ex){
+                valid = false;
+                eWidthTField.setBackground(badColor);
+                eWidthTField.setForeground(Color.WHITE);
+                eHeightTField.setBackground(badColor);
+                eHeightTField.setForeground(Color.WHITE);
+            }
+            // tile size
+            try {
+                newTileSize = Double.parseDouble( eTileSizeTField.getText() );
+                double oldTileSize = environment.getTileSize();
+                if ( environment.setTileSize(newTileSize) ){
+                    environment.setTileSize(oldTileSize);
+                    eTileSizeTField.setBackground(Color.WHITE);
+                    eTileSizeTField.setForeground(Color.BLACK);
+                } else {
+                    valid = false;
+                    eTileSizeTField.setBackground(badColor);
+                    eTileSizeTField.setForeground(Color.WHITE);
+                }
+            } catch (NumberFormatException ex){
+                valid = false;
+                eTileSizeTField.setBackground(badColor);
+                eTileSizeTField.setForeground(Color.WHITE);
+            }
             
             // Save if all fields are valid
             if (valid){
-                // Save to file
+                // Save to file (the objects are read at the old scale, then the
+                // map is resized, so they keep their size in metres)
                 eEnvMaker.save(environment);
+                environment.setSize(newWidth, newHeight);
+                environment.setTileSize(newTileSize);
                 Logger.writeEnvironmentProfiles();
 
                 // Update the list
@@ -1258,8 +1328,8 @@ public class UserInterface implements ActionListener, ListSelectionListener{
                 boolean trails = trailSelect.isSelected();
                 boolean timer = timerSelect.isSelected();
 				
-				// Create a non-EDT thread
-				(new Thread(new Simulator(vp.getVehicle(), ep.getEnvironment(), trails, timer))).start();
+				// Run on a non-EDT thread, closing a map window stops it
+				new Simulator(vp.getVehicle(), ep.getEnvironment(), trails, timer).start();
 				//mainFrame.setVisible(false);;
             }
         }
@@ -0,0 +1,25 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.interfaces;
+
+import java.util.List;
+
+/** Implemented by navigators that can be given a deadline, such as ARA*. They find a path quickly, then
+keep improving it while there is time, and return the best one found when the time runs out. This keeps
+each loop of the simulation to a predictable length however large the map is. **/
+public interface AnytimeNavigator extends Navigator{
+
+	/* The same as calculatePath(grid, ...), but returns within about budget ns of real time, with the
+	best path found so far. A budget of 0 or less means no limit, which gives the best path the
+	navigator can find. */
+	public List<NavigatorNode> calculatePath(GridView grid,
+											int startTileX,
+											int startTileY,
+											int destTileX,
+											int destTileY,
+											double startAngle,
+											long budget);
+
+}
@@ -0,0 +1,29 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.interfaces;
+
+/** A read only view of the discrete map's grid, as handed to a Navigator. Each tile holds an obstacle
+value: 0 = no obstacle, 1+ = obstacle (the higher the value the more likely the tile is to contain an
+obstacle). Tiles are accessed by get(col number, row number).
+A view never changes once it has been handed out, so it may be read from any thread without locking.
+The version increases every time the map changes, so two views with the same version hold the same
+tiles. **/
+public interface GridView{
+
+	//Returns the number of columns and rows
+	public int getSizeX();
+	public int getSizeY();
+
+	//Returns the obstacle value of the tile at (x,y)
+	public int get(int x, int y);
+
+	//Returns the version of the map this view was taken from
+	public long getVersion();
+
+	/* Returns a view that is the same as this one, apart from the tile at (x,y) holding value. This view
+	is not changed. Used by navigators that need to treat a tile differently, e.g. to clear the
+	destination, without writing to the map. */
+	public GridView withTile(int x, int y, int value);
+}
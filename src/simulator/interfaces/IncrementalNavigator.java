@@ -0,0 +1,20 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.interfaces;
+
+/** Implemented by navigators that repair their last plan rather than starting again, such as D* Lite.
+Before each call to calculatePath the map tells the navigator which tiles have changed since the grid it
+last planned on, so it only has to update those tiles instead of comparing the whole grid. **/
+public interface IncrementalNavigator extends Navigator{
+
+	/* The version of the grid last given to calculatePath, or -1 if it has not been called yet. */
+	public long getGridVersion();
+
+	/* Called just before calculatePath(grid, ...) when grid is newer than getGridVersion(). tiles holds
+	each tile that changed in between once, as x*grid.getSizeY() + y, in no particular order. tiles is
+	null when the changes are no longer known, in which case any tile may have changed. */
+	public void tilesChanged(GridView grid, int[] tiles);
+
+}
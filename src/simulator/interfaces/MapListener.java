@@ -4,6 +4,18 @@ Written by Nick Sullivan, Adelaide Uni.
 
 package simulator.interfaces;
 
+/** Alerted when a map changes. Changes are coalesced (see MapNotifier), so a listener is told once
+about everything that changed since it was last alerted, rather than once per change. **/
 public interface MapListener{
-	public void mapHasChanged();
+	//The aspects of a map that can change, combined as bit flags
+	public static final int POSE = 1;			//The vehicle's position or angle
+	public static final int POINTS = 2;			//Obstacle, line or laser points
+	public static final int GRID = 4;			//The discrete map's grid
+	public static final int PATH = 8;			//The planned path
+	public static final int DESTINATION = 16;	//The destination
+	public static final int ALL = POSE | POINTS | GRID | PATH | DESTINATION;
+	
+	/* Called with the aspects that changed since the listener was last alerted, out of those it
+	listens to. May be called from any thread. */
+	public void mapHasChanged(int changes);
 }
@@ -18,11 +18,13 @@ public interface Navigator{
 	this function returns the list of nodes (in order) to be traversed to reach the goal
 	destination from the start point. 
 	
-	The grid is accessed by grid[col number][row number], so the start position is at
-	grid[startTileX][startTileY].
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY). It is an immutable snapshot of the map, which keeps changing
+	while the path is calculated. Use grid.withTile() to plan as if a tile were different.
 	
-	If a path is unable to be found, this function should return an empty List. */
-	public List<NavigatorNode> calculatePath(int[][] grid, 
+	If a path is unable to be found, this function should return null. An empty List means the start
+	is already the destination. */
+	public List<NavigatorNode> calculatePath(GridView grid, 
 											int startTileX, 
 											int startTileY, 
 											int destTileX, 
@@ -0,0 +1,18 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.interfaces;
+
+import java.util.SplittableRandom;
+
+/** Implemented by anything that makes random choices, such as a sampling navigator. The simulator hands 
+each one its own stream derived from the run's seed before the run starts, so runs with the same seed 
+make the same choices, and runs on other threads never share a generator. **/
+public interface Seedable{
+
+	/* Sets the random number generator to use from now on. The generator belongs to the caller's run
+	and must not be shared with other threads. */
+	public void setRandom(SplittableRandom random);
+
+}
@@ -0,0 +1,26 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.interfaces;
+
+/** The source of time for a simulation. Everything that waits or measures time during a run (sensor
+periods, vehicle movement steps, GPS/IMU update rates) goes through a clock, so a run can either be
+paced by the wall clock or skip ahead to the next thing that needs to happen. **/
+public interface SimulationClock{
+
+	/* The current simulation time, in nanoseconds. Only differences between two values are meaningful. */
+	public long nanoTime();
+
+	/* Blocks the calling thread until the given number of milliseconds of simulation time has passed. */
+	public void sleep(long millis) throws InterruptedException;
+
+	/* Declares that a thread takes part in the simulation. Simulation time will not move on while a
+	registered thread is busy, only while it is sleeping on this clock. Should be called before the
+	thread is started, and matched by unregister() when it finishes. */
+	public void register(Thread thread);
+
+	/* Declares that a thread no longer takes part in the simulation. */
+	public void unregister(Thread thread);
+
+}
@@ -4,17 +4,24 @@ Written by Nick Sullivan, Adelaide Uni.
 
 package simulator.maps;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicReference;
 
+import simulator.interfaces.AnytimeNavigator;
+import simulator.interfaces.GridView;
+import simulator.interfaces.IncrementalNavigator;
 import simulator.interfaces.MapListener;
 import simulator.interfaces.Navigator;
 import simulator.interfaces.NavigatorNode;
 
 /** The DiscreteMap contains estimated information about the vehicle, obstacles, and lines.
 It also provides this information to the DiscreteMapGUI for display. Primitives are provided through
-a listener interface, and lists are provided using pointers and mutex locks. **/
+a listener interface, and lists are provided using pointers and mutex locks. 
+The grid is never handed out directly. Navigators and the GUI are given a GridSnapshot, which is
+immutable, so they can read it while sensors keep adding points. Writes copy only the blocks of the
+grid that a published snapshot still shares. The tiles changed in each version are also recorded, so an
+IncrementalNavigator can be told what changed instead of comparing whole grids. **/
 public class DiscreteMap{
 	private double width;		//The width of the map, in m
 	private double height;		//The height of the map, in m
@@ -22,33 +29,49 @@ public class DiscreteMap{
 	private int destTileY;
 	private int numTilesX;		//How many horizontal tiles there are
 	private int numTilesY;		//How many vertical tiles there are
-	private int[][] grid;		//A 2-D grid containing obstacle values, if a point falls in a tile the tile is incremented.
-	private LinkedList<MapListener> listeners;		//Listeners will be alerted of map changes
+	private MapNotifier notifier;		//Alerts listeners of map changes
+	
+	//The grid is written by the sensing thread and snapshotted by others, so all access to these must
+	// be done with the grid lock
+	private int[][] blocks;		//The grid containing obstacle values, in blocks (see GridSnapshot). If a 
+								// point falls in a tile the tile is incremented.
+	private boolean[] blockShared;	//Whether each block is used by a published snapshot, and must be
+									// copied before it is written to
+	private GridSnapshot snapshot;	//The most recently published snapshot
+	private boolean gridChanged;	//Whether the grid has changed since the snapshot was published
+	private TileChangeLog changes;	//The tiles changed in each version, for incremental navigators
+	private Object gridLock;		//The lock guarding the grid
 	
 							
-	//These variables are altered or requested by another thread, so all access to them must be done by
-	// the thread safe getter and setter functions
-	private int vehicleTileX;	//The position of the vehicle in the grid
-	private int vehicleTileY;
-	private double vehicleAng;	//The orientation of the vehicle, in degrees (CCW from East)	
-	private List<NavigatorNode> path;				//The order of nodes to go through to reach the destination (set by calculatePath())
-													//Each node contains the x,y position of grid
-	private Object mutexLock;	//The mutex lock to prevent thread clashes	
+	//The pose is replaced by another thread, each read giving a whole pose. It is always inside the map.
+	private AtomicReference<Pose> pose;	//The estimated position and angle of the vehicle
+	
+	//The path is replaced by publishPath() and read by other threads, it is never altered in place
+	private volatile PlannedPath path;	//The tiles to go through to reach the destination
+	private Object pathLock;			//Stops two published paths getting the same version
 	
 	public DiscreteMap(double width, double height, int numTilesX, int numTilesY){
 		this.width = width;
 		this.height = height;
 		this.numTilesX = numTilesX;
 		this.numTilesY = numTilesY;
-		vehicleTileX = 0;
-		vehicleTileY = 0;
+		pose = new AtomicReference<Pose>(Pose.ORIGIN);
 		destTileX = 0;
 		destTileY = 0;
-		vehicleAng = 0.0;
-		grid = new int[numTilesX][numTilesY];
-		listeners = new LinkedList<MapListener>();
-		path = new LinkedList<NavigatorNode>();
-		mutexLock = new Object();
+		int blocksY = GridSnapshot.blockCount(numTilesY);
+		blocks = new int[GridSnapshot.blockCount(numTilesX)*blocksY][];
+		for (int i=0; i<blocks.length; i++){
+			blocks[i] = new int[GridSnapshot.BLOCK_SIZE*GridSnapshot.BLOCK_SIZE];
+		}
+		blockShared = new boolean[blocks.length];
+		snapshot = new GridSnapshot(numTilesX, numTilesY, blocks.clone(), 0);
+		Arrays.fill(blockShared, true);
+		gridChanged = false;
+		changes = new TileChangeLog(numTilesX*numTilesY, 0);
+		gridLock = new Object();
+		notifier = new MapNotifier();
+		path = PlannedPath.EMPTY;
+		pathLock = new Object();
 	}
 	
 	
@@ -65,50 +88,134 @@ public class DiscreteMap{
 			System.out.println("DISCRETEMAP ERROR - POINT OUT OF BOUNDS");
 			return;
 		}
-		grid[posX][posY]++;
+		synchronized (gridLock){
+			incrementTile(posX, posY);
+		}
 			
-		alertListeners();
+		notifier.changed(MapListener.GRID);
+	}
+	
+	/* Adds the first count points of a sweep to the map, skipping any that are NaN. Listeners are
+	alerted once. Arguments are in metres - pixel coordinates. */
+	public void addPoints(double[] xs, double[] ys, int count){
+		boolean added = false;
+		synchronized (gridLock){
+			for (int i=0; i<count; i++){
+				if (Double.isNaN(xs[i]) || Double.isNaN(ys[i])) continue;
+				
+				int posX = (int)(xs[i]/width * numTilesX);
+				int posY = (int)(ys[i]/height * numTilesY);
+				if (posX < 0 || posX >= numTilesX || posY < 0 || posY >= numTilesY){
+					System.out.println("DISCRETEMAP ERROR - POINT OUT OF BOUNDS");
+					continue;
+				}
+				incrementTile(posX, posY);
+				added = true;
+			}
+		}
+		if (added){
+			notifier.changed(MapListener.GRID);
+		}
+	}
+	
+	/* Increments a tile, first copying its block if a snapshot shares it. Must hold the grid lock. */
+	private void incrementTile(int x, int y){
+		int b = GridSnapshot.blockIndex(x, y, GridSnapshot.blockCount(numTilesY));
+		if (blockShared[b]){
+			blocks[b] = blocks[b].clone();
+			blockShared[b] = false;
+		}
+		blocks[b][GridSnapshot.tileIndex(x, y)]++;
+		changes.mark(x*numTilesY + y);
+		gridChanged = true;
 	}
 	
-	/* Given a desired Navigator, we tell it to calculate a path from start to end.
-	This path will then be recorded and displayed. Thread safe.*/
+	/* Returns an immutable snapshot of the grid as it is now. A new snapshot, with the next version, is
+	only made if the grid has changed since the last one, otherwise the last one is returned again. 
+	Thread safe. */
+	public GridSnapshot getSnapshot(){
+		synchronized (gridLock){
+			if (gridChanged){
+				snapshot = new GridSnapshot(numTilesX, numTilesY, blocks.clone(), snapshot.getVersion() + 1);
+				changes.publish(snapshot.getVersion());
+				Arrays.fill(blockShared, true);
+				gridChanged = false;
+			}
+			return snapshot;
+		}
+	}
+	
+	/* Returns each tile that changed after version from, up to and including version to, once, as
+	x*numTilesY + y. Returns null if the changes since from are no longer kept. Thread safe. */
+	public int[] getChangesBetween(long from, long to){
+		synchronized (gridLock){
+			return changes.changesBetween(from, to);
+		}
+	}
+	
+	/* Given a desired Navigator, we tell it to calculate a path from start to end, on a snapshot of the
+	grid. This path will then be published, with the next version, and displayed. An IncrementalNavigator is first told which
+	tiles changed since it last planned. Thread safe.*/
 	public void calculatePath(Navigator nav){
-		//Get a path from the grid, start position, end position
-		List<NavigatorNode> p = nav.calculatePath(grid, vehicleTileX, vehicleTileY, destTileX, destTileY, getVehicleAng());
-		synchronized(mutexLock){
-			if (p == null){
-				path = new LinkedList<NavigatorNode>();
-			} else {
-				path = p;
+		calculatePath(nav, 0);
+	}
+	
+	/* As calculatePath(nav), but an AnytimeNavigator is given budget ns of real time to plan in, 0 for no
+	limit. Other navigators take as long as they take. */
+	public void calculatePath(Navigator nav, long budget){
+		publishPath(planPath(nav, getSnapshot(), getVehiclePose(), budget));
+	}
+	
+	/* Asks a navigator for a path from a vehicle pose to the destination on a given snapshot of the grid,
+	without publishing it, so a planner on another thread can decide whether the path is still wanted. An
+	IncrementalNavigator is first told which tiles changed since it last planned. Budget is as for
+	calculatePath(nav, budget). Returns null if no path was found. */
+	public List<NavigatorNode> planPath(Navigator nav, GridView grid, Pose vehicle, long budget){
+		if (nav instanceof IncrementalNavigator){
+			IncrementalNavigator inc = (IncrementalNavigator)nav;
+			long last = inc.getGridVersion();
+			if (last >= 0 && last < grid.getVersion()){
+				inc.tilesChanged(grid, getChangesBetween(last, grid.getVersion()));
 			}
 		}
-		alertListeners();
+		if (nav instanceof AnytimeNavigator && budget > 0){
+			return ((AnytimeNavigator)nav).calculatePath(grid, getTileX(vehicle), getTileY(vehicle), destTileX, destTileY, vehicle.getAng(), budget);
+		}
+		return nav.calculatePath(grid, getTileX(vehicle), getTileY(vehicle), destTileX, destTileY, vehicle.getAng());
+	}
+	
+	/* Publishes a path from planPath(), with the next version, and displays it. Thread safe. */
+	public void publishPath(List<NavigatorNode> p){
+		synchronized(pathLock){
+			path = PlannedPath.of(p, path.getVersion() + 1);
+		}
+		notifier.changed(MapListener.PATH);
 	}
 	
 	/********************************************
 	* Listener methods 							*
 	*********************************************/
 	
-	/* Adds a listener. Listeners will be alerted whenever the grid changes. The listener
-		must implement the MapListener interface. */
+	/* Adds a listener for every aspect of the map. Listeners are alerted of changes at most once per
+	the notifier's interval, or when it is flushed. The listener must implement the MapListener
+	interface. */
 	public void addListener(MapListener ml){
-		if (listeners.contains(ml)) return;
-		
-		listeners.add(ml);	
+		notifier.addListener(ml, MapListener.ALL);
+	}
+	
+	/* Adds a listener that is only alerted when one of the given aspects (see MapListener) changes. */
+	public void addListener(MapListener ml, int aspects){
+		notifier.addListener(ml, aspects);
 	}
 	
-	/* Removes a listener. Listeners will be alerted whenever the grid changes. The listener
-		must implement the MapListener interface. */
+	/* Removes a listener. */
 	public void removeListener(MapListener ml){
-		listeners.remove(ml);
+		notifier.removeListener(ml);
 	}
 	
-	/* Alerts all listeners that the grid has changed.*/
-	private void alertListeners(){
-		ListIterator<MapListener> iterator = listeners.listIterator(0);
-		while (iterator.hasNext()){
-			iterator.next().mapHasChanged();
-		}
+	/* The notifier that alerts this map's listeners, to flush it or change its interval. */
+	public MapNotifier getNotifier(){
+		return notifier;
 	}
 
 	/********************************************
@@ -116,9 +223,6 @@ public class DiscreteMap{
 	*********************************************/
 	/* Basic getters and setters */
 		
-	public int[][] getGrid(){
-		return grid;
-	}
 	public int getNumTilesX(){
 		return numTilesX;
 	}
@@ -144,64 +248,44 @@ public class DiscreteMap{
 		}
 		destTileX = posX;
 		destTileY = posY;
-		alertListeners();
-	}
-	
-	/* Called once by the GUI thread to obtain pointers. */
-	
-	public Object getMutexLock(){
-		return mutexLock;
+		notifier.changed(MapListener.DESTINATION);
 	}
 	
 	/* Thread safe getters and setters */
 	
+	/* The vehicle's pose, use this rather than the separate getters to get values that belong together. */
+	public Pose getVehiclePose(){
+		return pose.get();
+	}
+	/* The column and row of the grid that a pose is in. */
+	public int getTileX(Pose p){
+		return (int)(p.getX()/width * numTilesX);
+	}
+	public int getTileY(Pose p){
+		return (int)(p.getY()/height * numTilesY);
+	}
 	public int getVehicleTileX(){
-		int x;
-		synchronized (mutexLock){
-			x = vehicleTileX;
-		}
-		return x;
+		return getTileX(pose.get());
 	}
 	public int getVehicleTileY(){
-		int y;
-		synchronized (mutexLock){
-			y = vehicleTileY;
-		}
-		return y;
+		return getTileY(pose.get());
 	}
 	public double getVehicleAng(){
-		double ang;
-		synchronized (mutexLock){
-			ang = vehicleAng;
-		}
-		return ang;
-	}
-	public void setVehiclePos(double x, double y){
-		synchronized (mutexLock){
-			double normX = x/width;		//normalise values
-			double normY = y/height;
-			
-			int posX = (int)(normX * numTilesX);
-			int posY = (int)(normY * numTilesY);
-			
-			if (posX < 0 || posX >= numTilesX || posY < 0 || posY >= numTilesY){
-				System.out.println("DISCRETEMAP ERROR - VEHICLE OUT OF BOUNDS");
-				return;
-			}
-			vehicleTileX = posX;
-			vehicleTileY = posY;
-		}
-		alertListeners();
+		return pose.get().getAng();
 	}
-	public void setVehicleAng(double ang){
-		synchronized (mutexLock){
-			vehicleAng = ang;
+	/* Sets the vehicle's pose. If the position is outside the map it is ignored, but the angle is kept. */
+	public void setVehiclePose(Pose p){
+		int posX = getTileX(p);
+		int posY = getTileY(p);
+		if (posX < 0 || posX >= numTilesX || posY < 0 || posY >= numTilesY){
+			System.out.println("DISCRETEMAP ERROR - VEHICLE OUT OF BOUNDS");
+			p = pose.get().withAngle(p.getAng(), p.getTime());
 		}
-		alertListeners();
+		pose.set(p);
+		notifier.changed(MapListener.POSE);
 	}
-	public List<NavigatorNode> getPath(){
-		synchronized (mutexLock){
-			return path;
-		}
+	/* The latest path. It may be replaced at any time, but the path returned never changes. */
+	public PlannedPath getPath(){
+		return path;
 	}
 }
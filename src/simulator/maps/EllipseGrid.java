@@ -0,0 +1,254 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+import java.lang.Math;
+import java.util.List;
+import java.util.ListIterator;
+import java.awt.geom.Ellipse2D;
+
+/** A uniform grid over a list of ellipses, used to speed up ray casting. Each ellipse is binned into
+every cell its bounding box overlaps, and a ray only tests the ellipses in the cells it passes through,
+walking the cells in order and stopping at the first cell that contains a hit. The cost of a ray depends
+on its length and the local density of ellipses rather than on how many ellipses the environment has.
+
+The grid reads the ellipses in place. If an ellipse is moved or resized, call refit() for it, or
+rebuild() if the list itself was changed. Queries may run on several threads at once, but a refit or
+rebuild must not overlap with them. **/
+public class EllipseGrid{
+	private static final int TARGET_PER_CELL = 2;		//How many ellipses we aim to have in each cell
+	private static final int MAX_CELLS = 1 << 22;		//Upper limit on the number of cells
+
+	private List<Ellipse2D.Double> source;	//The list being indexed, in m,m - pixel coordinates
+	private Ellipse2D.Double[] items;		//The ellipses, indexed by their position in the source list
+	private int[] itemCells;				//The cell range each item was binned into (4 per item: col0,row0,col1,row1)
+	private int[][] cells;					//The item indices in each cell, accessed by cells[col*rows+row]
+	private int[] cellCounts;				//How many indices of each cell array are used
+	private double minX;					//The top left corner of the grid, in m
+	private double minY;
+	private double maxX;					//The bottom right corner of the grid, in m
+	private double maxY;
+	private double cellSize;				//The width and height of each cell, in m
+	private int cols;						//How many columns of cells there are
+	private int rows;						//How many rows of cells there are
+
+	/* Constructor, indexes the given list. */
+	public EllipseGrid(List<Ellipse2D.Double> source){
+		this.source = source;
+		rebuild();
+	}
+
+	/* Re-reads the source list and bins every ellipse again. The grid bounds and cell size are chosen
+	from the ellipses, so this should be called whenever ellipses are added or removed. */
+	public synchronized void rebuild(){
+		int n = source.size();
+		items = new Ellipse2D.Double[n];
+		itemCells = new int[4*n];
+		ListIterator<Ellipse2D.Double> iter = source.listIterator(0);
+		for (int i=0; i<n; i++){
+			items[i] = iter.next();
+		}
+
+		//Find the bounds of all the ellipses
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		maxX = Double.NEGATIVE_INFINITY;
+		maxY = Double.NEGATIVE_INFINITY;
+		double totalSize = 0;
+		for (int i=0; i<n; i++){
+			Ellipse2D.Double e = items[i];
+			minX = Math.min(minX, e.getX());
+			minY = Math.min(minY, e.getY());
+			maxX = Math.max(maxX, e.getX() + e.getWidth());
+			maxY = Math.max(maxY, e.getY() + e.getHeight());
+			totalSize += Math.max(e.getWidth(), e.getHeight());
+		}
+		if (n == 0){
+			minX = minY = maxX = maxY = 0;
+		}
+
+		//Choose a cell size that gives a few ellipses per cell, without cells being smaller than an
+		// average ellipse (otherwise each ellipse is stored many times)
+		double spanX = Math.max(maxX - minX, 1e-6);
+		double spanY = Math.max(maxY - minY, 1e-6);
+		cellSize = Math.sqrt(spanX*spanY*TARGET_PER_CELL / Math.max(n, 1));
+		if (n > 0){
+			cellSize = Math.max(cellSize, totalSize / n);
+		}
+		cellSize = Math.max(cellSize, Math.sqrt(spanX*spanY / MAX_CELLS));
+		cols = Math.max(1, (int)Math.ceil(spanX / cellSize));
+		rows = Math.max(1, (int)Math.ceil(spanY / cellSize));
+		cells = new int[cols*rows][];
+		cellCounts = new int[cols*rows];
+
+		//Bin the ellipses
+		for (int i=0; i<n; i++){
+			insert(i);
+		}
+	}
+
+	/* Re-bins a single ellipse after it has been moved or resized. If the ellipse is not in the index
+	or has moved outside the grid bounds, the whole grid is rebuilt. */
+	public synchronized void refit(Ellipse2D.Double ellipse){
+		int index = -1;
+		for (int i=0; i<items.length; i++){
+			if (items[i] == ellipse){
+				index = i;
+				break;
+			}
+		}
+		if (index == -1 || ellipse.getX() < minX || ellipse.getY() < minY ||
+				ellipse.getX() + ellipse.getWidth() > maxX || ellipse.getY() + ellipse.getHeight() > maxY){
+			rebuild();
+			return;
+		}
+		remove(index);
+		insert(index);
+	}
+
+	/* Given a ray with origin (ox,oy) and unit direction (dx,dy), in metres - pixel coordinates, returns
+	the distance to the nearest ellipse the ray enters within maxDist, or infinity if there is none. */
+	public double intersect(double ox, double oy, double dx, double dy, double maxDist){
+		if (items.length == 0) return Double.POSITIVE_INFINITY;
+
+		//Clip the ray to the grid bounds
+		double tEnter = 0;
+		double tExit = maxDist;
+		if (dx != 0){
+			double t0 = (minX - ox) / dx;
+			double t1 = (maxX - ox) / dx;
+			tEnter = Math.max(tEnter, Math.min(t0, t1));
+			tExit = Math.min(tExit, Math.max(t0, t1));
+		} else if (ox < minX || ox > maxX){
+			return Double.POSITIVE_INFINITY;
+		}
+		if (dy != 0){
+			double t0 = (minY - oy) / dy;
+			double t1 = (maxY - oy) / dy;
+			tEnter = Math.max(tEnter, Math.min(t0, t1));
+			tExit = Math.min(tExit, Math.max(t0, t1));
+		} else if (oy < minY || oy > maxY){
+			return Double.POSITIVE_INFINITY;
+		}
+		if (tEnter > tExit) return Double.POSITIVE_INFINITY;
+
+		//Find the first cell
+		int col = clamp((int)((ox + tEnter*dx - minX) / cellSize), cols);
+		int row = clamp((int)((oy + tEnter*dy - minY) / cellSize), rows);
+
+		//Set up the cell walk (distance to the next cell boundary, and the distance between boundaries)
+		int stepCol = dx > 0 ? 1 : -1;
+		int stepRow = dy > 0 ? 1 : -1;
+		double tNextCol = Double.POSITIVE_INFINITY;
+		double tNextRow = Double.POSITIVE_INFINITY;
+		double tDeltaCol = Double.POSITIVE_INFINITY;
+		double tDeltaRow = Double.POSITIVE_INFINITY;
+		if (dx != 0){
+			double edge = minX + (dx > 0 ? col+1 : col)*cellSize;
+			tNextCol = (edge - ox) / dx;
+			tDeltaCol = cellSize / Math.abs(dx);
+		}
+		if (dy != 0){
+			double edge = minY + (dy > 0 ? row+1 : row)*cellSize;
+			tNextRow = (edge - oy) / dy;
+			tDeltaRow = cellSize / Math.abs(dy);
+		}
+
+		//Walk the cells until a hit is found before leaving a cell
+		double nearest = Double.POSITIVE_INFINITY;
+		while (true){
+			int cell = col*rows + row;
+			int[] indices = cells[cell];
+			int count = cellCounts[cell];
+			for (int i=0; i<count; i++){
+				double t = RealMap.intersectEllipse(items[indices[i]], ox, oy, dx, dy);
+				if (t < nearest){
+					nearest = t;
+				}
+			}
+			double tCellExit = Math.min(tNextCol, tNextRow);
+			if (nearest <= tCellExit || tCellExit > tExit){
+				break;
+			}
+			if (tNextCol < tNextRow){
+				col += stepCol;
+				tNextCol += tDeltaCol;
+				if (col < 0 || col >= cols) break;
+			} else {
+				row += stepRow;
+				tNextRow += tDeltaRow;
+				if (row < 0 || row >= rows) break;
+			}
+		}
+		if (nearest > maxDist) return Double.POSITIVE_INFINITY;
+		return nearest;
+	}
+
+	/* Adds an item to every cell its bounding box overlaps, and records which cells these were. */
+	private void insert(int index){
+		Ellipse2D.Double e = items[index];
+		int col0 = clamp((int)((e.getX() - minX) / cellSize), cols);
+		int row0 = clamp((int)((e.getY() - minY) / cellSize), rows);
+		int col1 = clamp((int)((e.getX() + e.getWidth() - minX) / cellSize), cols);
+		int row1 = clamp((int)((e.getY() + e.getHeight() - minY) / cellSize), rows);
+		itemCells[4*index] = col0;
+		itemCells[4*index+1] = row0;
+		itemCells[4*index+2] = col1;
+		itemCells[4*index+3] = row1;
+		for (int c=col0; c<=col1; c++){
+			for (int r=row0; r<=row1; r++){
+				int cell = c*rows + r;
+				int[] indices = cells[cell];
+				int count = cellCounts[cell];
+				if (indices == null){
+					indices = new int[TARGET_PER_CELL];
+				} else if (count == indices.length){
+					int[] larger = new int[count*2];
+					System.arraycopy(indices, 0, larger, 0, count);
+					indices = larger;
+				}
+				indices[count] = index;
+				cells[cell] = indices;
+				cellCounts[cell] = count+1;
+			}
+		}
+	}
+
+	/* Removes an item from the cells it was recorded in. */
+	private void remove(int index){
+		for (int c=itemCells[4*index]; c<=itemCells[4*index+2]; c++){
+			for (int r=itemCells[4*index+1]; r<=itemCells[4*index+3]; r++){
+				int cell = c*rows + r;
+				int[] indices = cells[cell];
+				int count = cellCounts[cell];
+				for (int i=0; i<count; i++){
+					if (indices[i] == index){
+						indices[i] = indices[count-1];
+						cellCounts[cell] = count-1;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/* Restricts a cell coordinate to [0, size-1]. */
+	private static int clamp(int value, int size){
+		if (value < 0) return 0;
+		if (value >= size) return size-1;
+		return value;
+	}
+
+	/********************************************
+	* Getters									*
+	*********************************************/
+
+	public int size(){
+		return items.length;
+	}
+	public double getCellSize(){
+		return cellSize;
+	}
+}
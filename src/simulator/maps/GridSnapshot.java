@@ -0,0 +1,106 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+import simulator.interfaces.GridView;
+
+/** An immutable copy of a grid, published by the DiscreteMap for navigators to plan on.
+The grid is split into square blocks of BLOCK_SIZE x BLOCK_SIZE tiles, each its own array. When the map
+changes, only the blocks that were written to are copied (copy-on-write), and every other block is
+shared with the previous snapshot. Taking a snapshot therefore costs one pointer per block, and a run
+keeps roughly one grid's worth of memory however many snapshots are alive. Blocks are never written
+once a snapshot refers to them. **/
+public final class GridSnapshot implements GridView{
+	static final int BLOCK_SHIFT = 5;					//Blocks are 2^BLOCK_SHIFT tiles across
+	static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	private final int sizeX;			//How many columns there are
+	private final int sizeY;			//How many rows there are
+	private final int blocksY;			//How many rows of blocks there are
+	private final int[][] blocks;		//The blocks, accessed by blocks[blockX*blocksY + blockY], each
+										// holding its tiles at [tileX*BLOCK_SIZE + tileY]
+	private final long version;			//The version of the map
+
+	/* Constructor. The blocks array is owned by the snapshot, but the blocks in it may be shared. */
+	GridSnapshot(int sizeX, int sizeY, int[][] blocks, long version){
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.blocksY = blockCount(sizeY);
+		this.blocks = blocks;
+		this.version = version;
+	}
+
+	/* Creates a snapshot holding a copy of grid, accessed by grid[col number][row number]. Intended for
+	tools and tests that build a grid by hand, the DiscreteMap publishes its own snapshots. */
+	public static GridSnapshot of(int[][] grid, long version){
+		int sizeX = grid.length;
+		int sizeY = grid[0].length;
+		int blocksY = blockCount(sizeY);
+		int[][] blocks = new int[blockCount(sizeX)*blocksY][];
+		for (int i=0; i<blocks.length; i++){
+			blocks[i] = new int[BLOCK_SIZE*BLOCK_SIZE];
+		}
+		for (int x=0; x<sizeX; x++){
+			for (int y=0; y<sizeY; y++){
+				blocks[blockIndex(x, y, blocksY)][tileIndex(x, y)] = grid[x][y];
+			}
+		}
+		return new GridSnapshot(sizeX, sizeY, blocks, version);
+	}
+
+	@Override
+	public int get(int x, int y){
+		return blocks[(x >> BLOCK_SHIFT)*blocksY + (y >> BLOCK_SHIFT)][((x & BLOCK_MASK) << BLOCK_SHIFT) | (y & BLOCK_MASK)];
+	}
+
+	/* Copies only the block holding (x,y). The result keeps this snapshot's version. */
+	@Override
+	public GridView withTile(int x, int y, int value){
+		if (get(x, y) == value) return this;
+
+		int[][] newBlocks = blocks.clone();
+		int b = blockIndex(x, y, blocksY);
+		newBlocks[b] = newBlocks[b].clone();
+		newBlocks[b][tileIndex(x, y)] = value;
+		return new GridSnapshot(sizeX, sizeY, newBlocks, version);
+	}
+
+	/********************************************
+	* Block arithmetic, shared with DiscreteMap	*
+	*********************************************/
+
+	/* How many blocks are needed to cover size tiles. */
+	static int blockCount(int size){
+		return (size + BLOCK_MASK) >> BLOCK_SHIFT;
+	}
+
+	/* The block holding (x,y). */
+	static int blockIndex(int x, int y, int blocksY){
+		return (x >> BLOCK_SHIFT)*blocksY + (y >> BLOCK_SHIFT);
+	}
+
+	/* Where (x,y) is within its block. */
+	static int tileIndex(int x, int y){
+		return ((x & BLOCK_MASK) << BLOCK_SHIFT) | (y & BLOCK_MASK);
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	@Override
+	public int getSizeX(){
+		return sizeX;
+	}
+	@Override
+	public int getSizeY(){
+		return sizeY;
+	}
+	@Override
+	public long getVersion(){
+		return version;
+	}
+}
@@ -0,0 +1,134 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import simulator.interfaces.MapListener;
+
+/** Alerts a map's listeners of changes, coalescing them. The map reports each change as it happens,
+which only sets a dirty flag for the aspect that changed (see MapListener). The listeners are then
+alerted once for all of them, either after the interval has passed or when flush() is called, e.g.
+once per simulation tick. Each listener is only told about the aspects it subscribed to, and not at
+all if none of them changed. A sweep that adds hundreds of points therefore causes one repaint
+instead of hundreds. Thread safe. **/
+public class MapNotifier{
+	public static final long DEFAULT_INTERVAL = 40;	//Time between alerts in ms, about 25 per second
+	
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+		new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Map notifier");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});		//Alerts listeners once the interval has passed, shared by all notifiers
+	
+	private CopyOnWriteArrayList<Subscription> subscriptions;	//The listeners and what they listen to
+	private long interval;			//Wall time to wait before alerting, in ms, 0 to wait for flush()
+	private int pending;			//The aspects changed since listeners were last alerted
+	private boolean scheduled;		//Whether an alert has been scheduled for the pending changes
+	private Object lock;			//Guards pending and scheduled
+	private Object deliveryLock;	//Stops alerts overlapping, so listeners are called one at a time
+	private Runnable delivery;		//Scheduled on the timer to alert the listeners
+	
+	/* Constructor, alerting listeners at most once per DEFAULT_INTERVAL. */
+	public MapNotifier(){
+		subscriptions = new CopyOnWriteArrayList<Subscription>();
+		interval = DEFAULT_INTERVAL;
+		pending = 0;
+		scheduled = false;
+		lock = new Object();
+		deliveryLock = new Object();
+		delivery = new Runnable() {
+			public void run() {
+				flush();
+			}
+		};
+	}
+	
+	/* Adds a listener for the given aspects, or changes the aspects if it is already added. */
+	public void addListener(MapListener ml, int aspects){
+		for (Subscription s : subscriptions){
+			if (s.listener == ml){
+				s.aspects = aspects;
+				return;
+			}
+		}
+		subscriptions.add(new Subscription(ml, aspects));
+	}
+	
+	/* Removes a listener. It will not be alerted of changes that are still pending. */
+	public void removeListener(MapListener ml){
+		for (Subscription s : subscriptions){
+			if (s.listener == ml){
+				subscriptions.remove(s);
+			}
+		}
+	}
+	
+	/* Records that some aspects have changed. Listeners are alerted later, so this is cheap enough to
+	call for every change, and does nothing if there are no listeners. */
+	public void changed(int aspects){
+		if (subscriptions.isEmpty()) return;
+		
+		synchronized (lock){
+			pending |= aspects;
+			if (scheduled || interval <= 0) return;
+			scheduled = true;
+		}
+		TIMER.schedule(delivery, interval, TimeUnit.MILLISECONDS);
+	}
+	
+	/* Alerts the listeners of every pending change now, on the calling thread. */
+	public void flush(){
+		synchronized (deliveryLock){
+			int changes;
+			synchronized (lock){
+				changes = pending;
+				pending = 0;
+				scheduled = false;
+			}
+			if (changes == 0) return;
+			
+			for (Subscription s : subscriptions){
+				int c = changes & s.aspects;
+				if (c != 0){
+					s.listener.mapHasChanged(c);
+				}
+			}
+		}
+	}
+	
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+	
+	public long getInterval(){
+		return interval;
+	}
+	/* Sets the time to wait before alerting listeners of a change, in ms. With 0 they are only alerted
+	when flush() is called. */
+	public void setInterval(long interval){
+		synchronized (lock){
+			this.interval = interval;
+		}
+	}
+	
+	/* A listener and the aspects it listens to. */
+	private static class Subscription{
+		private final MapListener listener;
+		private volatile int aspects;
+		
+		public Subscription(MapListener listener, int aspects){
+			this.listener = listener;
+			this.aspects = aspects;
+		}
+	}
+}
@@ -5,7 +5,7 @@ Written by Nick Sullivan, Adelaide Uni.
 package simulator.maps;
 
 import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicReference;
 import java.awt.Point;
 import simulator.interfaces.MapListener;
 
@@ -18,7 +18,7 @@ public class ObservedMap{
 	private double destPosX;		//The X position of the destination, in m (pixel coordinates);
 	private double destPosY;		//The Y position of the destination, in m (pixel coordinates);
 	
-	private LinkedList<MapListener> listeners;		//Listeners will be alerted of map changes
+	private MapNotifier notifier;		//Alerts listeners of map changes
 	
 	//These variables are read by the GUI thread, so all changes to them must be done with the 
 	// mutex lock.
@@ -28,25 +28,18 @@ public class ObservedMap{
 											// new points will be marked as red.
 	private Object mutexLockGui;			//Mutual exclusion lock
 	
-	//These three variables are altered by another thread, so all access to them must be done by
-	// the thread safe getter and setter functions
-	private double vehiclePosX;	//The X position of the vehicle, in m (pixel coordinates)
-	private double vehiclePosY;	//The Y position of the vehicle, in m (pixel coordinates)
-	private double vehicleAng;	//The orientation of the vehicle, in degrees (CCW from East)
-	private Object mutexLockVeh;	//The mutex lock to prevent thread clashes
+	//The pose is replaced by another thread, each read giving a whole pose
+	private AtomicReference<Pose> pose;	//The estimated position and angle of the vehicle
 	
 	public ObservedMap(double width, double height){
 		this.width = width;
 		this.height = height;
-		vehiclePosX = 0;
-		vehiclePosY = 0;
-		vehicleAng = 0;
+		pose = new AtomicReference<Pose>(Pose.ORIGIN);
 		destPosX = 0;
 		destPosY = 0;
 		oldPoints = new LinkedList<Point>();
 		newPoints = new LinkedList<Point>();
-		listeners = new LinkedList<MapListener>();
-		mutexLockVeh = new Object();
+		notifier = new MapNotifier();
 		mutexLockGui = new Object();
 	}
 	
@@ -57,7 +50,7 @@ public class ObservedMap{
 		synchronized(mutexLockGui){
 			newPoints.add(new Point((int)(x*1000.0), (int)(y*1000.0)));		//points are in mm
 		}
-		alertListeners();
+		notifier.changed(MapListener.POINTS);
 	}
 	
 	/* Adds a point of a line (metres,metres - pixel coordinates), to the observed map.
@@ -66,7 +59,33 @@ public class ObservedMap{
 		synchronized(mutexLockGui){
 			newPoints.add(new Point((int)(x*1000.0), (int)(y*1000.0)));	//convert to mm
 		}
-		alertListeners();
+		notifier.changed(MapListener.POINTS);
+	}
+	
+	/* Adds the first count points of a sweep (metres,metres - pixel coordinates) to the observed map,
+	skipping any that are NaN. Listeners are alerted once. Thread safe.*/
+	public void addObstaclePoints(double[] xs, double[] ys, int count){
+		addPoints(xs, ys, count);
+	}
+	
+	/* Adds the first count points of a camera sweep, see addObstaclePoints(). Thread safe.*/
+	public void addLinePoints(double[] xs, double[] ys, int count){
+		addPoints(xs, ys, count);
+	}
+	
+	/* Adds points to the new list under a single lock. */
+	private void addPoints(double[] xs, double[] ys, int count){
+		boolean added = false;
+		synchronized(mutexLockGui){
+			for (int i=0; i<count; i++){
+				if (Double.isNaN(xs[i]) || Double.isNaN(ys[i])) continue;
+				newPoints.add(new Point((int)(xs[i]*1000.0), (int)(ys[i]*1000.0)));	//convert to mm
+				added = true;
+			}
+		}
+		if (added){
+			notifier.changed(MapListener.POINTS);
+		}
 	}
 	
 	/* All obstacle points that are marked as new will be marked as old. Thread safe*/
@@ -79,7 +98,7 @@ public class ObservedMap{
 				oldPoints.add(p);
 			}
 		}
-		alertListeners();
+		notifier.changed(MapListener.POINTS);
 	}
 	
 	/* All line points that are marked as new will be marked as old. Thread safe.*/
@@ -91,36 +110,35 @@ public class ObservedMap{
 				oldPoints.add(p);
 			}
 		}
-		alertListeners();
+		notifier.changed(MapListener.POINTS);
 	}
 	
 	/********************************************
 	* Listener methods 							*
 	*********************************************/
 	
-	/* Adds a listener. Listeners will be alerted whenever a point is added or refreshed. The listener
-		must implement the MapListener interface. */
+	/* Adds a listener for every aspect of the map. Listeners are alerted of changes at most once per
+	the notifier's interval, or when it is flushed. The listener must implement the MapListener
+	interface. */
 	public void addListener(MapListener ml){
-		if (listeners.contains(ml)) return;
-		
-		listeners.add(ml);	
+		notifier.addListener(ml, MapListener.ALL);
 	}
 	
-	/* Removes a listener. Listeners will be alerted whenever a point is added or refreshed. The listener
-		must implement the MapListener interface. */
-	public void removeListener(MapListener ml){
-		listeners.remove(ml);
-	
+	/* Adds a listener that is only alerted when one of the given aspects (see MapListener) changes. */
+	public void addListener(MapListener ml, int aspects){
+		notifier.addListener(ml, aspects);
 	}
 	
-	/* Alerts all listeners that a point has been added, or points have been refreshed.*/
-	private void alertListeners(){
-		ListIterator<MapListener> iterator = listeners.listIterator(0);
-		while (iterator.hasNext()){
-			iterator.next().mapHasChanged();
-		}
+	/* Removes a listener. */
+	public void removeListener(MapListener ml){
+		notifier.removeListener(ml);
 	}
 	
+	/* The notifier that alerts this map's listeners, to flush it or change its interval. */
+	public MapNotifier getNotifier(){
+		return notifier;
+	}
+
 	/********************************************
 	* Getters and Setters						*
 	*********************************************/
@@ -141,7 +159,7 @@ public class ObservedMap{
 	public void setDestinationPos(double x, double y){
 		destPosX = x;
 		destPosY = y;
-		alertListeners();
+		notifier.changed(MapListener.DESTINATION);
 	}
 	
 	/* Called once by the GUI thread to obtain pointers. */
@@ -158,40 +176,22 @@ public class ObservedMap{
 	
 	/* Threadsafe getters and setters */
 	
+	/* The vehicle's pose, use this rather than the separate getters to get values that belong together. */
+	public Pose getVehiclePose(){
+		return pose.get();
+	}
 	public double getVehiclePosX(){
-		double x;
-		synchronized (mutexLockVeh){
-			x = vehiclePosX;
-		}
-		return x;
+		return pose.get().getX();
 	}
 	public double getVehiclePosY(){
-		double y;
-		synchronized (mutexLockVeh){
-			y = vehiclePosY;
-		}
-		return y;
+		return pose.get().getY();
 	}
 	public double getVehicleAng(){
-		double ang;
-		synchronized (mutexLockVeh){
-			ang = vehicleAng;
-		}
-		return ang;
-	}
-
-	public void setVehiclePos(double x, double y){
-		synchronized (mutexLockVeh){
-			vehiclePosX = x;
-			vehiclePosY = y;
-		}
-		alertListeners();
+		return pose.get().getAng();
 	}
-	public void setVehicleAng(double ang){
-		synchronized (mutexLockVeh){
-			vehicleAng = ang;
-		}
-		alertListeners();
+	public void setVehiclePose(Pose p){
+		pose.set(p);
+		notifier.changed(MapListener.POSE);
 	}
 	
 	
@@ -0,0 +1,80 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+import java.util.List;
+
+import simulator.interfaces.NavigatorNode;
+
+/** A path published by the DiscreteMap, as the tiles to go through in order. A PlannedPath never
+changes, so the mover and the GUI can read it from their own threads without locks while the planner
+publishes new ones. Each new path has a higher version, so a reader can tell a new plan from the one
+it is already following. Readers keep track of their own progress along it. **/
+public final class PlannedPath{
+	public static final PlannedPath EMPTY = new PlannedPath(new int[0], new int[0], 0);	//No path yet
+
+	private final int[] xs;			//The column of each tile, in order
+	private final int[] ys;			//The row of each tile, in order
+	private final long version;		//Increases with each path published by the map
+
+	private PlannedPath(int[] xs, int[] ys, long version){
+		this.xs = xs;
+		this.ys = ys;
+		this.version = version;
+	}
+
+	/* Creates a path holding a copy of the nodes, which may be null for no path. */
+	public static PlannedPath of(List<NavigatorNode> nodes, long version){
+		int size = (nodes == null) ? 0 : nodes.size();
+		int[] xs = new int[size];
+		int[] ys = new int[size];
+		int i = 0;
+		if (nodes != null){
+			for (NavigatorNode n : nodes){
+				xs[i] = n.getX();
+				ys[i] = n.getY();
+				i++;
+			}
+		}
+		return new PlannedPath(xs, ys, version);
+	}
+
+	/* Returns the index of the tile nearest to (x,y) among the first count tiles, preferring the later
+	one when two are as near. Returns 0 if the path is empty. */
+	public int indexNearest(int x, int y, int count){
+		int best = 0;
+		long bestDist = Long.MAX_VALUE;
+		for (int i=0; i<Math.min(count, xs.length); i++){
+			long dx = xs[i] - x;
+			long dy = ys[i] - y;
+			long dist = dx*dx + dy*dy;
+			if (dist <= bestDist){
+				bestDist = dist;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	public int size(){
+		return xs.length;
+	}
+	public boolean isEmpty(){
+		return xs.length == 0;
+	}
+	public int getX(int i){
+		return xs[i];
+	}
+	public int getY(int i){
+		return ys[i];
+	}
+	public long getVersion(){
+		return version;
+	}
+}
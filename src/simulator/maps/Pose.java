@@ -0,0 +1,51 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+/** The position and angle of the vehicle at a moment in time. A Pose never changes, so the maps
+publish a new one for every update through a single reference, and a reader always gets a position and
+angle that belong together without taking a lock. **/
+public final class Pose{
+	public static final Pose ORIGIN = new Pose(0, 0, 0, 0);	//The pose before any is given
+
+	private final double x;			//The X position of the vehicle, in m (pixel coordinates)
+	private final double y;			//The Y position of the vehicle, in m (pixel coordinates)
+	private final double ang;		//The orientation of the vehicle, in degrees (CCW from East)
+	private final long time;		//The simulation time the pose was measured, in ns (see SimulationClock)
+
+	public Pose(double x, double y, double ang, long time){
+		this.x = x;
+		this.y = y;
+		this.ang = ang;
+		this.time = time;
+	}
+
+	/* Returns a pose with this position, but a new angle and time. */
+	public Pose withAngle(double ang, long time){
+		return new Pose(x, y, ang, time);
+	}
+
+	@Override
+	public String toString(){
+		return "(" + x + "," + y + ") " + ang + "deg at " + time + "ns";
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	public double getX(){
+		return x;
+	}
+	public double getY(){
+		return y;
+	}
+	public double getAng(){
+		return ang;
+	}
+	public long getTime(){
+		return time;
+	}
+}
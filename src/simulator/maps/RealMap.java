@@ -7,6 +7,9 @@ package simulator.maps;
 import java.lang.Math;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import simulator.interfaces.MapListener;
@@ -20,37 +23,44 @@ public class RealMap{
 	private double destPosX;		//The X position of the destination, in m (pixel coordinates);
 	private double destPosY;		//The Y position of the destination, in m (pixel coordinates);
 	
-	private LinkedList<MapListener> listeners;		//Listeners will be alerted of map changes
+	private MapNotifier notifier;		//Alerts listeners of map changes
 	
 	//These variables are read by the GUI thread, so all changes to them must be done with the 
 	// mutex lock.
 	private LinkedList<Ellipse2D.Double> obstacles;	//Obstacles with their position in m,m - pixel coordinates - obtained from Darryl's part
 	private LinkedList<Ellipse2D.Double> lines;		//Lines with their position in m,m - pixel coordinates - obtained from Darryl's part
 	private LinkedList<Line2D.Double> lasers;		//Contains lines indicating collision detection
+	private EllipseGrid obstacleIndex;				//Spatial index over obstacles, used by analytic collisions
+	private EllipseGrid lineIndex;					//Spatial index over lines, used by analytic collisions
 	private Object mutexLockGui;					//Mutual exclusion lock
 	
-	//These three variables are altered by the mover thread, so all access to them must be done by
-	// the thread safe getter and setter functions.
-	private double vehiclePosX;	//The X position of the vehicle, in m (pixel coordinates)
-	private double vehiclePosY;	//The Y position of the vehicle, in m (pixel coordinates)
-	private double vehicleAng;	//The orientation of the vehicle, in degrees (CCW from East)
-	private Object mutexLockVeh;				//The mutex lock to prevent thread clashes
+	//The pose is replaced by the mover thread and read by the others, each read giving a whole pose
+	private AtomicReference<Pose> pose;				//The vehicle's real position and angle
+	
+	/* How collisions are found. STEP marches a projectile in 1cm steps (the original method), ANALYTIC
+	intersects the ray with each ellipse in closed form and gives exact hit points. */
+	public static enum CollisionMode {
+		STEP, ANALYTIC
+	}
+	private volatile CollisionMode collisionMode;	//The method used by the collision functions
+	private volatile boolean lasersEnabled;			//Whether sweeps record lasers for display
 	
 	public RealMap(double width, double height, LinkedList<Ellipse2D.Double> obstacles, LinkedList<Ellipse2D.Double> lines){
 		//Set variables to defaults
 		this.width = width;
 		this.height = height;
-		vehiclePosX = 0;
-		vehiclePosY = 0;
-		vehicleAng = 0;
+		pose = new AtomicReference<Pose>(Pose.ORIGIN);
 		destPosX = 0;
 		destPosY = 0;
-		listeners = new LinkedList<MapListener>();
+		notifier = new MapNotifier();
 		this.obstacles = obstacles; //new LinkedList<Ellipse2D.Double>();
 		this.lines = lines; //new LinkedList<Ellipse2D.Double>();
 		lasers = new LinkedList<Line2D.Double>();
-		mutexLockVeh = new Object();
+		obstacleIndex = new EllipseGrid(obstacles);
+		lineIndex = new EllipseGrid(lines);
 		mutexLockGui = new Object();
+		collisionMode = CollisionMode.ANALYTIC;
+		lasersEnabled = true;
 	}
 	
 	/*Adds an obstacle to the list. Ellipse values should be in metres.*/
@@ -64,55 +74,7 @@ public class RealMap{
 	the map	are reached, returns null. 
 	Also creates a laser from the vehicle to the collision point.*/
 	public double[] calculateObstacleCollision(double ang, double maxDist){
-		double NUDGE = 0.01;	//How far the projectile moves each iteration, in m
-		double posX = getVehiclePosX();
-		double posY = getVehiclePosY();
-		double totAng = (vehicleAng+ang)*Math.PI/180.0;
-		double incX = NUDGE*Math.cos(totAng);	//projectile increment
-		double incY = -NUDGE*Math.sin(totAng);
-		double retX = -1;						//return values
-		double retY = -1;
-		
-		//Check for collision
-		boolean complete = false;
-		while (!complete){
-			//Nudge the projectile
-			posX += incX;
-			posY += incY;
-			maxDist -= NUDGE;
-			
-			//Check bounds and add laser if bounds are reached
-			if (maxDist < 0 || posX < 0 || posX > width || posY < 0 || posY > height){
-				addLaser(getVehiclePosX(), getVehiclePosY(), posX, posY);
-				return null;
-			}
-			//Compare each object
-			ListIterator<Ellipse2D.Double> iterator = obstacles.listIterator(0);
-			while (iterator.hasNext() && !complete){
-				Ellipse2D.Double circ = iterator.next();
-				double circW = circ.getWidth();
-				double circH = circ.getHeight();
-				double circX = circ.getX() + circW/2.0;			//Centre of the circle
-				double circY = circ.getY() + circH/2.0;
-				
-				double xBound = (posX - circX)*(posX - circX) / (circW*circW/4.0);
-				double yBound = (posY - circY)*(posY - circY) / (circH*circH/4.0);
-				boolean contained = xBound+yBound <= 1.0;
-				
-				//If the point is within the object, we can return
-				if (contained){
-					complete = true;
-					retX = posX;
-					retY = posY;
-				}
-			}
-		}
-
-		//Add a laser
-		double[] xy = {retX, retY};
-		addLaser(getVehiclePosX(), getVehiclePosY(), retX, retY);
-		
-		return xy;
+		return calculateCollision(obstacleIndex, obstacles, ang, maxDist);
 	}
 	
 	/*Given an angle (degrees, CCW from East), this function will return the position (in metres,metres - pixel coordinates)
@@ -120,31 +82,146 @@ public class RealMap{
 	the vehicle. Note that the angle given is relative to the vehicle orientation. If the maximum distance or boundaries of
 	the map	are reached, returns null. */
 	public double[] calculateLineCollision(double ang, double maxDist){
+		return calculateCollision(lineIndex, lines, ang, maxDist);
+	}
+	
+	/*Performs a whole sweep of obstacle collisions, starting at startAng (degrees, relative to the vehicle 
+	orientation, CCW) and stepping by increment for count rays. The results are written into the caller's 
+	buffers: the distance to the hit in ranges, and its position (metres,metres - pixel coordinates) in xs 
+	and ys. Rays that reach the maximum distance or map boundaries are marked with NaN in all three. 
+	Returns the number of hits. The rays are evaluated in parallel, the lasers are replaced once and 
+	listeners are alerted once. */
+	public int sweepObstacles(double startAng, double increment, int count, double maxDist,
+								double[] ranges, double[] xs, double[] ys){
+		return sweep(obstacleIndex, obstacles, startAng, increment, count, maxDist, ranges, xs, ys);
+	}
+	
+	/*Performs a whole sweep of line collisions. See sweepObstacles(). */
+	public int sweepLines(double startAng, double increment, int count, double maxDist,
+								double[] ranges, double[] xs, double[] ys){
+		return sweep(lineIndex, lines, startAng, increment, count, maxDist, ranges, xs, ys);
+	}
+	
+	/*Casts a single ray from the vehicle and adds its laser. */
+	private double[] calculateCollision(EllipseGrid index, LinkedList<Ellipse2D.Double> objects, double ang, double maxDist){
+		Pose p = pose.get();
+		double posX = p.getX();
+		double posY = p.getY();
+		double vehAng = p.getAng();
+		double totAng = (vehAng+ang)*Math.PI/180.0;
+		double dirX = Math.cos(totAng);			//unit direction of the ray
+		double dirY = -Math.sin(totAng);		//flip y because of pixel coord
+		double dist = castRay(index, objects, posX, posY, dirX, dirY, maxDist);
+		
+		//Nothing within range, add a laser to the end of the ray
+		if (Double.isNaN(dist)){
+			double end = Math.max(clipRay(posX, posY, dirX, dirY, maxDist), 0);
+			addLaser(posX, posY, posX + end*dirX, posY + end*dirY);
+			return null;
+		}
+		
+		//Add a laser
+		double[] xy = {posX + dist*dirX, posY + dist*dirY};
+		addLaser(posX, posY, xy[0], xy[1]);
+		
+		return xy;
+	}
+	
+	/*Performs a sweep of rays from a single vehicle pose. See sweepObstacles(). */
+	private int sweep(EllipseGrid index, LinkedList<Ellipse2D.Double> objects, double startAng, double increment, 
+						int count, double maxDist, double[] ranges, double[] xs, double[] ys){
+		Pose p = pose.get();
+		double posX = p.getX();
+		double posY = p.getY();
+		double vehAng = p.getAng();
+		
+		//Cast the rays, splitting large sweeps over the fork join pool
+		SweepTask task = new SweepTask(index, objects, posX, posY, vehAng+startAng, increment, maxDist,
+										ranges, xs, ys, 0, count);
+		if (count > 2*SweepTask.THRESHOLD){
+			ForkJoinPool.commonPool().invoke(task);
+		} else {
+			task.compute();
+		}
+		
+		//Count the hits and replace the lasers
+		int hits = 0;
+		for (int i=0; i<count; i++){
+			if (!Double.isNaN(ranges[i])) hits++;
+		}
+		if (lasersEnabled){
+			synchronized (mutexLockGui){
+				lasers.clear();
+				for (int i=0; i<count; i++){
+					if (Double.isNaN(ranges[i])){
+						double totAng = (vehAng + startAng + i*increment)*Math.PI/180.0;
+						double dirX = Math.cos(totAng);
+						double dirY = -Math.sin(totAng);
+						double end = Math.max(clipRay(posX, posY, dirX, dirY, maxDist), 0);
+						lasers.add(new Line2D.Double(posX, posY, posX + end*dirX, posY + end*dirY));
+					} else {
+						lasers.add(new Line2D.Double(posX, posY, xs[i], ys[i]));
+					}
+				}
+			}
+		}
+		notifier.changed(MapListener.POINTS);
+		return hits;
+	}
+	
+	/*Casts a ray from (posX,posY) along the unit direction (dirX,dirY), returning the distance to the 
+	nearest ellipse, or NaN if the maximum distance or map boundary is reached first. Does not touch 
+	any shared state, so may be called from several threads at once. */
+	private double castRay(EllipseGrid index, LinkedList<Ellipse2D.Double> objects, double posX, double posY, 
+							double dirX, double dirY, double maxDist){
+		if (collisionMode == CollisionMode.STEP){
+			return castStepRay(objects, posX, posY, dirX, dirY, maxDist);
+		}
+		double limit = clipRay(posX, posY, dirX, dirY, maxDist);
+		if (limit < 0){
+			return Double.NaN;
+		}
+		double dist = index.intersect(posX, posY, dirX, dirY, limit);
+		if (dist > limit){
+			return Double.NaN;
+		}
+		return dist;
+	}
+	
+	/*Returns how far a ray can travel before it reaches the maximum distance or leaves the map. Negative
+	if the ray starts outside the map. */
+	private double clipRay(double posX, double posY, double dirX, double dirY, double maxDist){
+		double limit = maxDist;
+		if (dirX > 0) limit = Math.min(limit, (width - posX) / dirX);
+		if (dirX < 0) limit = Math.min(limit, -posX / dirX);
+		if (dirY > 0) limit = Math.min(limit, (height - posY) / dirY);
+		if (dirY < 0) limit = Math.min(limit, -posY / dirY);
+		return limit;
+	}
+	
+	/*Fires a projectile in NUDGE sized steps, comparing its position against every ellipse in the list 
+	at each step. The hit distance is quantised to the step size. */
+	private double castStepRay(LinkedList<Ellipse2D.Double> objects, double posX, double posY, 
+								double dirX, double dirY, double maxDist){
 		double NUDGE = 0.01;	//How far the projectile moves each iteration, in m
-		double posX = getVehiclePosX();
-		double posY = getVehiclePosY();
-		double totAng = (vehicleAng+ang)*Math.PI/180.0;
-		double incX = NUDGE*Math.cos(totAng);	//projectile increment
-		double incY = -NUDGE*Math.sin(totAng);
-		double retX = -1;						//return values
-		double retY = -1;
+		double incX = NUDGE*dirX;	//projectile increment
+		double incY = NUDGE*dirY;
+		double travelled = 0;
 		
 		//Check for collision
-		boolean complete = false;
-		while (!complete){
+		while (true){
 			//Nudge the projectile
 			posX += incX;
 			posY += incY;
-			maxDist -= NUDGE;
+			travelled += NUDGE;
 			
 			//Check bounds
-			if (maxDist < 0 || posX < 0 || posX > width || posY < 0 || posY > height){
-				addLaser(getVehiclePosX(), getVehiclePosY(), posX, posY);
-				return null;
+			if (travelled > maxDist || posX < 0 || posX > width || posY < 0 || posY > height){
+				return Double.NaN;
 			}
 			//Compare each object
-			ListIterator<Ellipse2D.Double> iterator = lines.listIterator(0);
-			while (iterator.hasNext() && !complete){
+			ListIterator<Ellipse2D.Double> iterator = objects.listIterator(0);
+			while (iterator.hasNext()){
 				Ellipse2D.Double circ = iterator.next();
 				double circW = circ.getWidth();
 				double circH = circ.getHeight();
@@ -153,30 +230,54 @@ public class RealMap{
 				
 				double xBound = (posX - circX)*(posX - circX) / (circW*circW/4.0);
 				double yBound = (posY - circY)*(posY - circY) / (circH*circH/4.0);
-				boolean contained = xBound+yBound <= 1.0;
 				
 				//If the point is within the object, we can return
-				if (contained){
-					complete = true;
-					retX = posX;
-					retY = posY;
+				if (xBound+yBound <= 1.0){
+					return travelled;
 				}
 			}
 		}
-
-		//Add a laser
-		double[] xy = {retX, retY};
-		addLaser(getVehiclePosX(), getVehiclePosY(), retX, retY);
-
-		return xy;
+	}
+	
+	/*Returns the distance along a ray (origin ox,oy and unit direction dx,dy, in metres) to where it
+	first enters the ellipse, 0 if the origin is already inside, or infinity if it never does. The ray 
+	is scaled into the ellipse's unit circle space and solved as a quadratic. */
+	static double intersectEllipse(Ellipse2D.Double circ, double ox, double oy, double dx, double dy){
+		double radX = circ.getWidth()/2.0;
+		double radY = circ.getHeight()/2.0;
+		if (radX <= 0 || radY <= 0){
+			return Double.POSITIVE_INFINITY;
+		}
+		double u = (ox - (circ.getX() + radX)) / radX;		//origin relative to the centre, unit circle space
+		double v = (oy - (circ.getY() + radY)) / radY;
+		double du = dx / radX;
+		double dv = dy / radY;
+		
+		double a = du*du + dv*dv;
+		double b = 2.0*(u*du + v*dv);
+		double c = u*u + v*v - 1.0;
+		if (c <= 0){			//origin is inside
+			return 0;
+		}
+		double disc = b*b - 4.0*a*c;
+		if (disc < 0){			//ray misses
+			return Double.POSITIVE_INFINITY;
+		}
+		double t = (-b - Math.sqrt(disc)) / (2.0*a);
+		if (t < 0){				//ellipse is behind the ray (both roots share a sign as c > 0)
+			return Double.POSITIVE_INFINITY;
+		}
+		return t;
 	}
 	
 	/*Adds a laser from (x1,y1) to (x2,y2) to the laser list. Thread safe. */
 	private void addLaser(double x1, double y1, double x2, double y2){
-		synchronized (mutexLockGui){
-			lasers.add(new Line2D.Double(x1, y1, x2, y2));
+		if (lasersEnabled){
+			synchronized (mutexLockGui){
+				lasers.add(new Line2D.Double(x1, y1, x2, y2));
+			}
 		}
-		alertListeners();
+		notifier.changed(MapListener.POINTS);
 	}
 	
 	/*Empties the list containing all the laser lines. Thread safe.*/
@@ -186,35 +287,96 @@ public class RealMap{
 		synchronized (mutexLockGui){
 			lasers.clear();
 		}
-		alertListeners();
+		notifier.changed(MapListener.POINTS);
+	}
+	
+	/* Evaluates a range of rays in a sweep, splitting the range in half until it is small enough to
+	do directly. Each ray only writes its own index of the buffers. */
+	private class SweepTask extends RecursiveAction{
+		private static final long serialVersionUID = 42L;
+		private static final int THRESHOLD = 16;	//Rays evaluated directly by a single task
+		
+		private EllipseGrid index;
+		private LinkedList<Ellipse2D.Double> objects;
+		private double posX;			//Ray origin, in m (pixel coordinates)
+		private double posY;
+		private double startAng;		//Absolute angle of ray 0, in degrees (CCW from East)
+		private double increment;		//Angle between rays, in degrees
+		private double maxDist;
+		private double[] ranges;
+		private double[] xs;
+		private double[] ys;
+		private int from;				//The range of rays to evaluate, [from, to)
+		private int to;
+		
+		public SweepTask(EllipseGrid index, LinkedList<Ellipse2D.Double> objects, double posX, double posY,
+							double startAng, double increment, double maxDist, double[] ranges, double[] xs, 
+							double[] ys, int from, int to){
+			this.index = index;
+			this.objects = objects;
+			this.posX = posX;
+			this.posY = posY;
+			this.startAng = startAng;
+			this.increment = increment;
+			this.maxDist = maxDist;
+			this.ranges = ranges;
+			this.xs = xs;
+			this.ys = ys;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute(){
+			if (to - from > THRESHOLD){
+				int mid = (from + to) >>> 1;
+				invokeAll(new SweepTask(index, objects, posX, posY, startAng, increment, maxDist, ranges, xs, ys, from, mid),
+						new SweepTask(index, objects, posX, posY, startAng, increment, maxDist, ranges, xs, ys, mid, to));
+				return;
+			}
+			for (int i=from; i<to; i++){
+				double totAng = (startAng + i*increment)*Math.PI/180.0;
+				double dirX = Math.cos(totAng);
+				double dirY = -Math.sin(totAng);		//flip y because of pixel coord
+				double dist = castRay(index, objects, posX, posY, dirX, dirY, maxDist);
+				ranges[i] = dist;
+				if (Double.isNaN(dist)){
+					xs[i] = Double.NaN;
+					ys[i] = Double.NaN;
+				} else {
+					xs[i] = posX + dist*dirX;
+					ys[i] = posY + dist*dirY;
+				}
+			}
+		}
 	}
 	
 	/********************************************
 	* Listener methods 							*
 	*********************************************/
 	
-	/* Adds a listener. Listeners will be alerted whenever a circle or line is added. The listener
-		must implement the MapListener interface. */
+	/* Adds a listener for every aspect of the map. Listeners are alerted of changes at most once per
+	the notifier's interval, or when it is flushed. The listener must implement the MapListener
+	interface. */
 	public void addListener(MapListener ml){
-		if (listeners.contains(ml)) return;
-		
-		listeners.add(ml);	
+		notifier.addListener(ml, MapListener.ALL);
 	}
 	
-	/* Removes a listener. Listeners will be alerted whenever a circle or line is added. The listener
-		must implement the MapListener interface. */
-	public void removeListener(MapListener ml){
-		listeners.remove(ml);
+	/* Adds a listener that is only alerted when one of the given aspects (see MapListener) changes. */
+	public void addListener(MapListener ml, int aspects){
+		notifier.addListener(ml, aspects);
 	}
 	
-	/* Alerts all listeners that the grid has changed.*/
-	private void alertListeners(){
-		ListIterator<MapListener> iterator = listeners.listIterator(0);
-		while (iterator.hasNext()){
-			iterator.next().mapHasChanged();
-		}
+	/* Removes a listener. */
+	public void removeListener(MapListener ml){
+		notifier.removeListener(ml);
 	}
 	
+	/* The notifier that alerts this map's listeners, to flush it or change its interval. */
+	public MapNotifier getNotifier(){
+		return notifier;
+	}
+
 	/********************************************
 	* Getters and Setters						*
 	*********************************************/
@@ -235,7 +397,37 @@ public class RealMap{
 	public void setDestinationPos(double x, double y){
 		destPosX = x;
 		destPosY = y;
-		alertListeners();
+		notifier.changed(MapListener.DESTINATION);
+	}
+	
+	public boolean getLasersEnabled(){
+		return lasersEnabled;
+	}
+	/* Disabling lasers avoids creating a line per ray when nothing is displaying them. */
+	public void setLasersEnabled(boolean lasersEnabled){
+		this.lasersEnabled = lasersEnabled;
+	}
+	public CollisionMode getCollisionMode(){
+		return collisionMode;
+	}
+	public void setCollisionMode(CollisionMode collisionMode){
+		if (collisionMode == null) return;
+		this.collisionMode = collisionMode;
+	}
+	
+	/* Spatial index maintenance. These must not be called while a collision is being calculated.
+	Call rebuildIndexes() after obstacles or lines are added or removed, and refitObstacle()/refitLine() 
+	after a single ellipse has been moved or resized. */
+	
+	public void rebuildIndexes(){
+		obstacleIndex.rebuild();
+		lineIndex.rebuild();
+	}
+	public void refitObstacle(Ellipse2D.Double obs){
+		obstacleIndex.refit(obs);
+	}
+	public void refitLine(Ellipse2D.Double line){
+		lineIndex.refit(line);
 	}
 	
 	/* Called once by the GUI thread to obtain pointers. */
@@ -255,35 +447,22 @@ public class RealMap{
 	
 	/* Threadsafe getters and setters */
 	
+	/* The vehicle's pose, use this rather than the separate getters to get values that belong together. */
+	public Pose getVehiclePose(){
+		return pose.get();
+	}
 	public double getVehiclePosX(){
-		double x;
-		synchronized (mutexLockVeh){
-			x = vehiclePosX;
-		}
-		return x;
+		return pose.get().getX();
 	}
 	public double getVehiclePosY(){
-		double y;
-		synchronized (mutexLockVeh){
-			y = vehiclePosY;
-		}
-		return y;
+		return pose.get().getY();
 	}
 	public double getVehicleAng(){
-		double ang;
-		synchronized (mutexLockVeh){
-			ang = vehicleAng;
-		}
-		return ang;
+		return pose.get().getAng();
 	}
-
-	public void setVehiclePos(double x, double y, double ang){
-		synchronized (mutexLockVeh){
-			vehiclePosX = x;
-			vehiclePosY = y;
-			vehicleAng = ang;
-		}
-		alertListeners();
+	public void setVehiclePose(Pose p){
+		pose.set(p);
+		notifier.changed(MapListener.POSE);
 	}
 	
 	
@@ -0,0 +1,132 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+import java.util.Arrays;
+
+import simulator.interfaces.GridView;
+import simulator.interfaces.Navigator;
+
+/** Decides whether the DiscreteMap's path needs planning again, so the simulation loop only runs the
+navigator when the path has been invalidated. The tiles the current path covers are kept as a bit per
+tile. Each time it is asked, the tiles that changed since it last looked (from the map's change log) are
+checked against them, and the vehicle's tile against the path. A new path is needed if:
+- there is no path yet, or none was found and the grid has changed since,
+- a tile on or beside the path has become an obstacle,
+- the vehicle has strayed more than MAX_DEVIATION tiles from the path,
+- the destination has moved,
+- or REFRESH_LOOPS loops have passed.
+Otherwise the check costs a few lookups per changed tile. **/
+public class ReplanPolicy{
+	private static final int MAX_DEVIATION = 2;		//How far the vehicle may be from the path, in tiles
+	private static final int REFRESH_LOOPS = 10;	//How many loops may pass without a new path, as the pose
+												// estimate jumps about and a fresh path recovers from it
+
+	private DiscreteMap map;			//The map whose path is being kept
+	private int sizeX;					//The size of the map, in tiles
+	private int sizeY;
+	private long[] pathTiles;			//A bit per tile, x*sizeY + y, set if the path goes through it
+	private boolean hasPath;			//Whether the last plan found a path
+	private boolean planned;			//Whether a plan has been made yet
+	private long gridVersion;			//The version of the grid whose changes have been checked
+	private int destTileX;				//The destination the path was planned to
+	private int destTileY;
+	private int skipped;				//How many times in a row replanning was skipped
+
+	public ReplanPolicy(DiscreteMap map){
+		this.map = map;
+		sizeX = map.getNumTilesX();
+		sizeY = map.getNumTilesY();
+		pathTiles = new long[(sizeX*sizeY + 63) >> 6];
+		hasPath = false;
+		planned = false;
+		gridVersion = 0;
+		skipped = 0;
+	}
+
+	/* Whether the path needs planning again, see the class comment. Changes to the grid are only checked
+	once, so this should be followed by planning whenever it returns true. */
+	public synchronized boolean needsReplan(){
+		if (!planned) return true;
+		if (map.getDestinationTileX() != destTileX || map.getDestinationTileY() != destTileY) return true;
+		if (skipped >= REFRESH_LOOPS) return true;
+
+		//Check the tiles that changed
+		GridView grid = map.getSnapshot();
+		if (grid.getVersion() != gridVersion){
+			int[] changes = map.getChangesBetween(gridVersion, grid.getVersion());
+			if (changes == null || !hasPath) return true;
+			gridVersion = grid.getVersion();
+			for (int t : changes){
+				int x = t / sizeY;
+				int y = t % sizeY;
+				if (grid.get(x, y) > 0 && nearPath(x, y, 1)) return true;
+			}
+		}
+
+		//Check the vehicle is still on the path
+		if (hasPath){
+			Pose pose = map.getVehiclePose();
+			if (!nearPath(map.getTileX(pose), map.getTileY(pose), MAX_DEVIATION)) return true;
+		}
+		skipped++;
+		return false;
+	}
+
+	/* Plans a new path with the map (see DiscreteMap.calculatePath) and starts keeping track of it. */
+	public void calculatePath(Navigator nav, long budget){
+		GridView grid = map.getSnapshot();
+		Pose pose = map.getVehiclePose();
+		int destX = map.getDestinationTileX();
+		int destY = map.getDestinationTileY();
+		map.publishPath(map.planPath(nav, grid, pose, budget));
+		pathPublished(grid.getVersion(), pose, destX, destY);
+	}
+	
+	/* Starts keeping track of the map's path, which was just published after planning from pose to the
+	destination on version gridVersion of the grid. Anything that changed after that version is checked
+	next time. Used by planners that call DiscreteMap.planPath() themselves. */
+	public synchronized void pathPublished(long gridVersion, Pose pose, int destX, int destY){
+		PlannedPath path = map.getPath();
+		Arrays.fill(pathTiles, 0);
+		int x = map.getTileX(pose);
+		int y = map.getTileY(pose);
+		for (int i=0; i<path.size(); i++){
+			markLine(x, y, path.getX(i), path.getY(i));
+			x = path.getX(i);
+			y = path.getY(i);
+		}
+		hasPath = !path.isEmpty();
+		planned = true;
+		this.gridVersion = gridVersion;
+		destTileX = destX;
+		destTileY = destY;
+		skipped = 0;
+	}
+
+	/* Marks the tiles on a straight line between two tiles as part of the path. Paths from the smoothing
+	and any-angle navigators have long straight parts, so the tiles between their nodes are filled in. */
+	private void markLine(int x0, int y0, int x1, int y1){
+		int steps = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+		for (int i=0; i<=steps; i++){
+			int x = (steps == 0) ? x0 : x0 + (int)Math.round((double)(x1 - x0) * i / steps);
+			int y = (steps == 0) ? y0 : y0 + (int)Math.round((double)(y1 - y0) * i / steps);
+			if (x < 0 || x >= sizeX || y < 0 || y >= sizeY) continue;
+			int t = x*sizeY + y;
+			pathTiles[t >> 6] |= 1L << t;
+		}
+	}
+
+	/* Whether the path goes through a tile within range tiles of (x,y). */
+	private boolean nearPath(int x, int y, int range){
+		for (int i = Math.max(0, x - range); i <= Math.min(sizeX - 1, x + range); i++){
+			for (int j = Math.max(0, y - range); j <= Math.min(sizeY - 1, y + range); j++){
+				int t = i*sizeY + j;
+				if ((pathTiles[t >> 6] & (1L << t)) != 0) return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,100 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.maps;
+
+import java.util.Arrays;
+
+/** Records which tiles of the DiscreteMap changed in each published version, so an IncrementalNavigator
+can be told only what changed since it last planned.
+Tiles are numbered x*sizeY + y. A tile changed since the last snapshot is marked in a bitset, so it is
+only listed once however many points fall in it. When a snapshot is published the marked tiles are
+appended to the log as that version's changes. Versions follow one another, so the changes since any
+version are one run of the log. The log is cleared once it reaches MAX_LOG_SIZE tiles, after which
+changes since older versions are no longer known. Not thread safe, the DiscreteMap guards it with its
+grid lock. **/
+class TileChangeLog{
+	private static final int MAX_LOG_SIZE = 1 << 20;	//Tiles kept before the log is cleared (4MB)
+
+	private long[] pendingBits;		//A bit per tile, set if it changed since the last published version
+	private int[] pending;			//The tiles with their bit set, in the order they changed
+	private int pendingCount;
+	private int[] log;				//The tiles changed in each published version, version after version
+	private int logSize;
+	private int[] versionStart;		//Where the changes of version logBase+1+i start in the log
+	private int versionCount;
+	private long logBase;			//The oldest version that changes can be given since
+	private long[] mergeBits;		//Scratch bitset to list each tile once when merging versions
+
+	/* Constructor, for a grid of numTiles tiles whose current version is version. */
+	TileChangeLog(int numTiles, long version){
+		pendingBits = new long[(numTiles + 63) >> 6];
+		pending = new int[64];
+		pendingCount = 0;
+		log = new int[64];
+		logSize = 0;
+		versionStart = new int[16];
+		versionCount = 0;
+		logBase = version;
+	}
+
+	/* Marks a tile as changed in the next version. */
+	void mark(int tile){
+		long bit = 1L << tile;
+		if ((pendingBits[tile >> 6] & bit) != 0) return;
+		pendingBits[tile >> 6] |= bit;
+		if (pendingCount == pending.length){
+			pending = Arrays.copyOf(pending, 2*pendingCount);
+		}
+		pending[pendingCount++] = tile;
+	}
+
+	/* Records the marked tiles as the changes of version, which must be one after the last version
+	published, and clears the marks. */
+	void publish(long version){
+		if (logSize + pendingCount > MAX_LOG_SIZE){
+			logSize = 0;
+			versionCount = 0;
+			logBase = version - 1;
+		}
+		if (versionCount == versionStart.length){
+			versionStart = Arrays.copyOf(versionStart, 2*versionCount);
+		}
+		versionStart[versionCount++] = logSize;
+		if (logSize + pendingCount > log.length){
+			log = Arrays.copyOf(log, Math.max(2*log.length, logSize + pendingCount));
+		}
+		for (int i=0; i<pendingCount; i++){
+			int tile = pending[i];
+			pendingBits[tile >> 6] &= ~(1L << tile);
+			log[logSize++] = tile;
+		}
+		pendingCount = 0;
+	}
+
+	/* Returns each tile that changed after version from, up to and including version to, once. Returns
+	null if the changes since from are no longer kept, or to has not been published. */
+	int[] changesBetween(long from, long to){
+		if (from < logBase || to > logBase + versionCount || from > to) return null;
+		int begin = (from == logBase + versionCount) ? logSize : versionStart[(int)(from - logBase)];
+		int end = (to == logBase + versionCount) ? logSize : versionStart[(int)(to - logBase)];
+
+		//Only one version has no repeats, otherwise merge them
+		if (to - from <= 1) return Arrays.copyOfRange(log, begin, end);
+		if (mergeBits == null) mergeBits = new long[pendingBits.length];
+		int[] tiles = new int[end - begin];
+		int count = 0;
+		for (int i=begin; i<end; i++){
+			int tile = log[i];
+			long bit = 1L << tile;
+			if ((mergeBits[tile >> 6] & bit) != 0) continue;
+			mergeBits[tile >> 6] |= bit;
+			tiles[count++] = tile;
+		}
+		for (int i=0; i<count; i++){
+			mergeBits[tiles[i] >> 6] = 0;
+		}
+		return (count == tiles.length) ? tiles : Arrays.copyOf(tiles, count);
+	}
+}
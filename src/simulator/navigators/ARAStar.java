@@ -0,0 +1,227 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import simulator.interfaces.AnytimeNavigator;
+import simulator.interfaces.GridView;
+import simulator.interfaces.NavigatorNode;
+
+/* Anytime Repairing A* (ARA*). The first search uses a heavily weighted heuristic, which finds a path
+quickly but not the shortest. The weighting is then lowered step by step, and each search carries on
+from the last, only reopening the tiles whose distance improved, rather than starting again. Each path
+found is at most the weighting times longer than the shortest, and with a weighting of 1 it is the
+shortest.
+When given a time budget it stops once the budget is spent and returns the best path so far. The first
+path is always finished, as returning nothing would stop the vehicle.
+Moves are 8-connected, may not cut the corner of an obstacle, and cost 10 straight and 14 diagonally,
+like AStarC. The heuristic is the octile distance.
+http://www.cs.cmu.edu/~maxim/files/ara_nips03.pdf */
+public class ARAStar implements AnytimeNavigator{
+	private static final int INITIAL_WEIGHTING = 30;	//10 = same as dist, the weighting of the first search
+	private static final int WEIGHTING_STEP = 5;		//How much the weighting is lowered by after each search
+	private static final int CHECK_INTERVAL = 256;		//How many tiles are closed between checks of the time
+
+	private GridView grid;				//The grid being searched
+	private int sizeX;					//The size of the grid the arrays were made for
+	private int sizeY;
+	private int destTileX;				//Where the search is going
+	private int destTileY;
+	private int weighting;				//The heuristic weighting of the current search
+	private int[] distance;				//The distance of each tile from the start
+	private int[] parent;				//The tile each tile was reached from
+	private int[] reached;				//generation once a tile has been reached in this call
+	private int[] closed;				//2*search once a tile is closed in that search, 2*search+1 once it
+										// is also waiting for the next search (inconsistent)
+	private int[] inconsistent;			//Closed tiles whose distance improved, to reopen in the next search
+	private int inconsistentCount;
+	private int generation;				//Increases with each call
+	private int search;					//Increases with each search, across calls
+	private int sequence;				//Breaks ties in the order tiles were added
+	private IndexedHeap openList;		//Tiles that need checking, by estimate and then by order added
+
+	public ARAStar(){
+		sizeX = 0;
+		sizeY = 0;
+		generation = 0;
+		search = 0;
+		openList = new IndexedHeap(0);
+	}
+
+	@Override
+	public String getName(){
+		return "ARAStar";
+	}
+
+
+	/*Given a 2D grid containing obstacle information:
+	0 = no obstacle
+	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+	this function returns the list of nodes (in order) to be traversed to reach the goal
+	destination from the start point.
+
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
+
+	If a path is unable to be found, this function should return null. With no time budget every search
+	is run, so the path is the shortest. */
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle){
+		return calculatePath(grid, startTileX, startTileY, destTileX, destTileY, startAngle, 0);
+	}
+
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle, long budget){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+
+		long deadline = (budget > 0) ? System.nanoTime() + budget : Long.MAX_VALUE;
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		this.grid = grid.withTile(destTileX, destTileY, 0);		//If the destination is obstructed we never find an answer
+		this.destTileX = destTileX;
+		this.destTileY = destTileY;
+		prepare(grid.getSizeX(), grid.getSizeY());
+
+		//Initialise first point
+		int start = startTileX*sizeY + startTileY;
+		int goal = destTileX*sizeY + destTileY;
+		distance[start] = 0;
+		parent[start] = start;
+		reached[start] = generation;
+		weighting = INITIAL_WEIGHTING;
+		sequence = 0;
+		openList.add(start, key(start));
+
+		//Search with lower and lower weightings, until the shortest path is found or time runs out
+		while (true){
+			search++;
+			if (!improvePath(goal, deadline)) break;
+			if (reached[goal] != generation) return null;			//Nothing left to open, so there is no path
+			if (weighting == 10 || System.nanoTime() > deadline) break;
+
+			//Lower the weighting, and reopen the tiles that improved with the new estimates
+			weighting = Math.max(10, weighting - WEIGHTING_STEP);
+			int[] open = new int[openList.size() + inconsistentCount];
+			int count = 0;
+			while (!openList.isEmpty()){
+				open[count++] = openList.poll();
+			}
+			System.arraycopy(inconsistent, 0, open, count, inconsistentCount);
+			count += inconsistentCount;
+			inconsistentCount = 0;
+			for (int i=0; i<count; i++){
+				openList.add(open[i], key(open[i]));
+			}
+		}
+
+		//Give up if the run has been ended
+		if (Thread.currentThread().isInterrupted()) return null;
+
+		//Progress back up through the parents. Distances only fall, so the parents always lead to the start
+		for (int n = goal; n != start; n = parent[n]){
+			returnList.addFirst(new GridSearch.PathNode(n / sizeY, n % sizeY));
+		}
+		return returnList;
+	}
+
+	/* Runs one search with the current weighting, until no open tile could improve the path to the goal.
+	Returns false if it stopped early, because time ran out after a path had been found, or the run was
+	ended. */
+	private boolean improvePath(int goal, long deadline){
+		int checked = 0;
+		int closedStamp = 2*search;
+		while (!openList.isEmpty()){
+			//Stop if the goal is as good as anything left to open
+			if (reached[goal] == generation && 10L*distance[goal] <= (openList.peekKey() >>> 32)) return true;
+
+			//Give up if the run has been ended, or time has run out and there is something to return
+			if (++checked % CHECK_INTERVAL == 0){
+				if (Thread.currentThread().isInterrupted()) return false;
+				if (reached[goal] == generation && System.nanoTime() > deadline) return false;
+			}
+
+			//Take the most suitable tile and close it
+			int chosen = openList.poll();
+			closed[chosen] = closedStamp;
+			int x = chosen / sizeY;
+			int y = chosen % sizeY;
+
+			for (int d=0; d<8; d++){
+				int nx = x + GridSearch.DX[d];
+				int ny = y + GridSearch.DY[d];
+				if (!isFree(nx, ny)) continue;
+				boolean diagonal = nx != x && ny != y;
+				if (diagonal && (!isFree(nx, y) || !isFree(x, ny))) continue;
+
+				int n = nx*sizeY + ny;
+				int dist = distance[chosen] + (diagonal ? GridSearch.DIAGONAL_COST : GridSearch.STRAIGHT_COST);
+				if (reached[n] == generation && dist >= distance[n]) continue;
+
+				distance[n] = dist;
+				parent[n] = chosen;
+				reached[n] = generation;
+				if (closed[n] != closedStamp && closed[n] != closedStamp + 1){
+					openList.add(n, key(n));
+				} else if (closed[n] == closedStamp){
+					//Already closed in this search, so it waits for the next one
+					closed[n] = closedStamp + 1;
+					inconsistent[inconsistentCount++] = n;
+				}
+			}
+		}
+		return true;
+	}
+
+	/* Whether (x,y) is in the map and not obstructed. */
+	private boolean isFree(int x, int y){
+		return x >= 0 && x < sizeX && y >= 0 && y < sizeY && grid.get(x, y) <= 0;
+	}
+
+	/* The open list key of a tile, its distance plus the weighted estimate (both times 10), and then the
+	order tiles were added. */
+	private long key(int tile){
+		int h = GridSearch.octile(Math.abs(tile / sizeY - destTileX), Math.abs(tile % sizeY - destTileY));
+		long f = 10L*distance[tile] + (long)weighting*h;
+		return GridSearch.key(f, sequence++);
+	}
+
+	/* Makes the arrays fit the grid, and starts a new generation. */
+	private void prepare(int sizeX, int sizeY){
+		int tiles = sizeX * sizeY;
+		if (distance == null || distance.length < tiles){
+			distance = null;				//let the old arrays go before making the new ones
+			parent = null;
+			reached = null;
+			closed = null;
+			inconsistent = null;
+			distance = new int[tiles];
+			parent = new int[tiles];
+			reached = new int[tiles];
+			closed = new int[tiles];
+			inconsistent = new int[tiles];
+			generation = 0;
+			search = 0;
+		}
+		if (generation == Integer.MAX_VALUE || search >= Integer.MAX_VALUE/2 - 64){
+			Arrays.fill(reached, 0);
+			Arrays.fill(closed, 0);
+			generation = 0;
+			search = 0;
+		}
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		generation++;
+		inconsistentCount = 0;
+		openList.ensureCapacity(tiles);
+		openList.clear();
+	}
+}
@@ -1,780 +1,334 @@
 package simulator.navigators;
 
-import java.util.List;
-import java.util.ListIterator;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.TreeSet;
-import java.lang.Comparable;
-import java.util.Scanner;
-import java.lang.Math;
+import java.util.List;
 
-import simulator.interfaces.Navigator;
+import simulator.interfaces.GridView;
+import simulator.interfaces.IncrementalNavigator;
 import simulator.interfaces.NavigatorNode;
 
-/** D*
+/** D* Lite
  * This is built from LPA*, with the added functionality that the start position
- * can move.
+ * can move. The search runs backwards, from the destination to the vehicle, so
+ * when the vehicle moves and the map changes only the affected part of the
+ * search has to be repaired.
  *
- * Changes from LPA*:
- * start and goal (and succ/pred) are swapped. While the paper swaps the names,
- * for this only the values are changed.
- * 
- * km is introduced to keep track of 'goal' movement, it is effectively a
+ * km is introduced to keep track of the vehicle's movement, it is effectively a
  * heuristic offset.
  *
+ * Every cell's state is kept in primitive arrays indexed by x*sizeY + y: g and
+ * rhs as ints, obstacles as a bitset, and the queue of inconsistent cells is an
+ * IndexedHeap, so a key can be changed in place. Neighbours are worked out when
+ * needed rather than stored, which keeps a 2000x2000 grid to about 12 bytes a
+ * cell.
+ *
+ * Moves are to the 8 neighbouring tiles, costing 10 straight and 14 diagonally,
+ * and may cut corners as with the AStar navigator. A tile with a value above 0
+ * can be left but not entered. The destination is treated as clear. The
+ * heuristic is the octile distance, which never overestimates, as D* Lite needs.
+ *
+ * When the map tells us which tiles changed (see IncrementalNavigator), only
+ * those are compared, otherwise the whole grid is.
+ *
  * http://idm-lab.org/bib/abstracts/papers/aaai02b.pdf
  * */
-public class DStarLite implements Navigator{
-
-    private static final int INF = -1;
-    
-    private TreeSet<Node> U;     // Set of inconsistent vertices, a nodes key
-                                 // should NOT be altered while inside this list.
-    private Node start;                             
-    private Node goal;
-    private int[][] grid;        // Copy of the obstacle grid (0=clear, 1+=obstacle)
-    private Node[][] nodeGrid;   // Stores a pointer to each node, matching the grid
-    private boolean firstTime;   // Whether we have initialised
+public class DStarLite implements IncrementalNavigator{
+
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int STRAIGHT_COST = 10;        // Cost of moving to a neighbouring tile
+    private static final int DIAGONAL_COST = 14;        // Cost of moving to a diagonal tile
+    private static final int[] DX = GridSearch.DX;      // The 8 neighbours, as steps in x and y
+    private static final int[] DY = GridSearch.DY;
+
+    private int sizeX;           // The size of the grid
+    private int sizeY;
+    private int[] g;             // Distance from each cell to the destination (INF if not known)
+    private int[] rhs;           // One-step-ahead distance of each cell to the destination
+    private long[] blocked;      // A bit per cell, set if it holds an obstacle
+    private IndexedHeap U;       // The inconsistent cells, by key
+    private int start;           // The vehicle's cell
+    private int last;            // The vehicle's cell when km was last updated
+    private int goal;            // The destination's cell
     private int km;
+    private long gridVersion;    // The version of the map the obstacles were taken from
+    private boolean firstTime;   // Whether we have initialised
+    private int[] changedTiles;  // Tiles changed since gridVersion, as x*sizeY+y (null if unknown)
+    private long changedVersion; // The version changedTiles lead up to
 
     /* Constructor. Initialise variables that we can. */
     public DStarLite(){
-        U = new TreeSet<Node>();
         firstTime = true;
         km = 0;
+        changedTiles = null;
     }
-   
-   @Override
-	public String getName(){
-		return "DStarLite";
-	}
-	
+
+    @Override
+    public String getName(){
+        return "DStarLite";
+    }
+
     /*Given a 2D grid containing obstacle information:
-	0 = no obstacle
-	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
-	this function returns the list of nodes (in order) to be traversed to reach the goal
-	destination from the start point. 
-	
-	The grid is accessed by grid[col number][row number], so the start position is at
-	grid[startTileX][startTileY].
-	
-	If a path is unable to be found, this function should return null. */
-	@Override
-    public List<NavigatorNode> calculatePath(int[][] gri, int startX, int startY, int destX, int destY, 
-													double startAngle){
-        //System.out.println("Entering calculatePath()");
-        LinkedList<NavigatorNode> path = new LinkedList<NavigatorNode>();
-        
-        // Swap start and dest
-        int tempX = startX;
-        int tempY = startY;
-        startX = destX;
-        startY = destY;
-        destX = tempX;
-        destY = tempY;
-        
-        // If this is the first time we're called, initialise
-        if (firstTime){
+    0 = no obstacle
+    1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+    this function returns the list of nodes (in order) to be traversed to reach the goal
+    destination from the start point.
+
+    The grid is accessed by grid.get(col number, row number), so the start position is at
+    grid.get(startTileX, startTileY).
+
+    If a path is unable to be found, this function returns null. If the thread is interrupted it
+    also returns null, and the search carries on from where it was on the next call. An empty list
+    means the start is already the destination. */
+    @Override
+    public List<NavigatorNode> calculatePath(GridView gri, int startX, int startY, int destX, int destY,
+                                                    double startAngle){
+        gri = gri.withTile(destX, destY, 0);
+
+        // If this is the first time we're called, or the map or destination are new, initialise
+        if (firstTime || gri.getSizeX() != sizeX || gri.getSizeY() != sizeY ||
+                destX*sizeY + destY != goal){
+            initialise(gri, startX, startY, destX, destY);
             firstTime = false;
-            //System.out.println("Create the grid");
-            // Create the grid
-            nodeGrid = new Node[gri.length][gri[0].length];
-            grid = new int[gri.length][gri[0].length];
-            for (int i=0; i<gri.length; i++){
-                for (int j=0; j<gri[0].length; j++){
-                    grid[i][j] = gri[i][j];
-                }
-            }
-            // Create the goal node
-            //System.out.println("Create the goal node");
-            goal = new Node(destX, destY);
-            nodeGrid[destX][destY] = goal;
-        
-            // Create the start node
-            //System.out.println("Create the start node");
-            start = new Node(startX, startY);
-            nodeGrid[startX][startY] = start;
-            start.setRhs(0);
-            start.setH( calculateHeur(start) );     
-            start.setKey( calculateKey(start) );
-        
-            // Add the start node to the priority queue
-            //System.out.println("Add start to queue");
-            U.add(start);
-
         }
         // If this is not the first time, calculate differences
         else {
-            // Create a list of nodes to update
-            LinkedList<Node> toUpdate = new LinkedList<Node>();
-            
             // Check for movement
-            if ( goal.getX() != destX || goal.getY() != destY ){
-                // Find how far we've moved
-                int oldH = calculateHeur(start);
-                goal = nodeGrid[destX][destY];
-                if (goal == null){
-                    nodeGrid[destX][destY] = new Node(destX, destY);
-                    goal = nodeGrid[destX][destY];
-                }
-                    
-                int newH = calculateHeur(start);
-                km += oldH - newH;
-
-                //Add to update
-                if ( !toUpdate.contains(goal) ){
-                    toUpdate.add(goal);
-                }
+            int s = startX*sizeY + startY;
+            if (s != start){
+                start = s;
+                km += heuristic(last);
+                last = start;
             }
 
-            // Compare each grid index
-            for (int i=0; i<gri.length; i++){
-                for (int j=0; j<gri[0].length; j++){
-                    if (grid[i][j] != gri[i][j]){
-                        // Mark nodes for update
-                        Node n = nodeGrid[i][j];
-						if (n == null){
-							nodeGrid[i][j] = new Node(i, j);
-							n = nodeGrid[i][j];
-						}
-                        if ( !toUpdate.contains(n) ){
-                            toUpdate.add(n);
+            // Compare the tiles that changed, or each grid index if they are not known,
+            // unless the map has not changed since the last call
+            if (gri.getVersion() != gridVersion){
+                if (changedTiles != null && changedVersion == gri.getVersion()){
+                    for (int t : changedTiles){
+                        checkTile(gri, t / sizeY, t % sizeY);
+                    }
+                } else {
+                    for (int i=0; i<sizeX; i++){
+                        for (int j=0; j<sizeY; j++){
+                            checkTile(gri, i, j);
                         }
-                        
-                        // Supposed to add successors, but I don't think it's required
-                        //LinkedList<Node> succ = getSuccessors(n);
-                        //ListIterator<Node> iter = succ.listIterator();
-                        //while(iter.hasNext()){
-                        //    Node next = iter.next();
-                        //    if ( !toUpdate.contains(next) ) {
-                        //        toUpdate.add(next);
-                        //    }
-                        //}
-
-                        // Copy the new grid
-                        grid[i][j] = gri[i][j];
                     }
                 }
+                gridVersion = gri.getVersion();
             }
-
-            // Update
-            ListIterator<Node> iter = toUpdate.listIterator();
-            while(iter.hasNext()){
-                Node next = iter.next();
-				//System.out.println(next);
-                if ( !U.contains(next) ){
-                    updateVertex(next);
-                }
-            }
-        
+            changedTiles = null;
         }
-        
+
         // Update the path
-        computeShortestPath();
+        if (!computeShortestPath()) return null;
 
-        // Store the path
-        Node prev = goal;
-        //System.out.println("    "+prev.toString());
-        while (prev != start){
-            LinkedList<Node> pred = prev.getPredecessors();
-            ListIterator<Node> iter = pred.listIterator();
+        // Store the path, by following the cheapest neighbours down to the destination
+        LinkedList<NavigatorNode> path = new LinkedList<NavigatorNode>();
+        if (g[start] == INF){
+            System.out.println("No path exists.");
+            return null;
+        }
+        int u = start;
+        while (u != goal && path.size() < sizeX*sizeY){
+            int next = -1;
             int min = INF;
-            Node next = null;
-            while( iter.hasNext() ){
-                Node n = iter.next();
-                int g = n.getG();
-                int c = calculateDist(prev, n);
-                if (g != INF && c != INF){
-                    int val = g + c;
-                    if (val < min || min == INF){
-                        min = val;
-                        next = n;
-                    }
+            int x = u / sizeY;
+            int y = u % sizeY;
+            for (int d=0; d<8; d++){
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) continue;
+                int s = nx*sizeY + ny;
+                if (isBlocked(s) || g[s] == INF) continue;
+                int val = g[s] + cost(d);
+                if (val < min){
+                    min = val;
+                    next = s;
                 }
             }
-            if (next == null) System.out.println("OH NOES");
-            prev = next;
-            path.add(next);
-            System.out.println("    "+prev.toString());
+            if (next == -1) break;
+            u = next;
+            path.add(new GridSearch.PathNode(u / sizeY, u % sizeY));
+        }
+        if (u != goal){
+            System.out.println("No path exists.");      // the g values lead nowhere, not a path that stops short
+            return null;
         }
-        
-		System.out.println("Returning path!");
         return path;
     }
 
-    /* Calculate the key value. Each call will create a new, unique key. Does
-     * NOT alter the node.*/
-    private Key calculateKey(Node s){
-        int g = s.getG();
-        int rhs = s.getRhs();
-        int h = s.getH();
-
-        // Infinity cases
-        if (g == INF && rhs == INF){
-            return new Key(INF, INF);
-        }
-        if (g == INF){
-            return new Key(rhs+h+km, rhs);
-        }
-        if (rhs == INF){
-            return new Key(g+h+km, g);
-        }
-
-        // Normal case            
-        int k0 = Math.min(g,rhs)+h+km;
-        int k1 = Math.min(g,rhs);
-        
-        Key k = new Key(k0, k1);
-        return k;
+    /* Records the tiles that changed, to be compared on the next call. */
+    @Override
+    public void tilesChanged(GridView gri, int[] tiles){
+        changedTiles = tiles;
+        changedVersion = gri.getVersion();
     }
 
-    /* Calculates the distance cost between two vertices. Assumes nodes a and b
-     * are next to one another. */
-    private int calculateDist(Node a, Node b){
-        int ax = a.getX();
-        int ay = a.getY();
-        int bx = b.getX();
-        int by = b.getY();
-        
-        if ( grid[ax][ay] > 0 || grid[bx][by] > 0 ){
-            return INF;
-        }
-        
-        if (ax == bx || ay == by ){
-            return 10;
-        }
-        return 14; 
-
+    @Override
+    public long getGridVersion(){
+        return firstTime ? -1 : gridVersion;
     }
 
-    /* Calculates the hueristic from a node to the goal. */
-    private int calculateHeur(Node a){
-        int startX = a.getX();
-        int startY = a.getY();
-        int destX = goal.getX();
-        int destY = goal.getY();
-        int h = Math.abs(startX-destX) + Math.abs(startY-destY);
-        return h;
-    }
-    
-    /* Updates a vertex. */
-    private void updateVertex(Node u){
-        //System.out.println("    Entering updateVertex()");
-        
-        // Remove from priority queue before we alter the value
-        if ( U.contains(u) ){
-            //System.out.println("removing: " + u.toString() );
-            U.remove(u);
-        }
-        
-        // Calculate new rhs
-        if ( u != start){
-            // Find the minimum rhs+cost from predecessors
-            int minRhs = INF;
-            LinkedList<Node> pred = u.getPredecessors();
-            ListIterator<Node> iter = pred.listIterator();
-            while ( iter.hasNext() ){
-                Node s = iter.next();
-                int g = s.getG();
-                int dist = calculateDist(s, u);
-                if ( g != INF && dist != INF){
-                    int val = g + dist;
-                    if (val < minRhs || minRhs == INF){
-                        minRhs = val;
-                    }
-                }
+    /* Starts a new search on the grid, with every cell unknown apart from the destination. The arrays
+     * are reused if the grid is the same size. */
+    private void initialise(GridView gri, int startX, int startY, int destX, int destY){
+        int cells = gri.getSizeX() * gri.getSizeY();
+        if (g == null || g.length != cells){
+            g = null;                   // let the old arrays go before making the new ones
+            rhs = null;
+            U = null;
+            g = new int[cells];
+            rhs = new int[cells];
+            blocked = new long[(cells + 63) >> 6];
+            U = new IndexedHeap(cells);
+        }
+        sizeX = gri.getSizeX();
+        sizeY = gri.getSizeY();
+        Arrays.fill(g, INF);
+        Arrays.fill(rhs, INF);
+        Arrays.fill(blocked, 0);
+        for (int i=0; i<sizeX; i++){
+            for (int j=0; j<sizeY; j++){
+                if (gri.get(i, j) > 0) setBlocked(i*sizeY + j, true);
             }
-            u.setRhs(minRhs);
         }
+        gridVersion = gri.getVersion();
+        changedTiles = null;
 
-        // Set the new key
-        u.setKey( calculateKey(u) );
-
-        //printout
-        //System.out.println("    Node is now: "+u.toString());
-        
-        // Add to the priority queue if needed
-        if ( u.getG() != u.getRhs() ){
-            //System.out.println("adding: " + u.toString() );
-            U.add(u);
-        }
+        start = startX*sizeY + startY;
+        last = start;
+        goal = destX*sizeY + destY;
+        km = 0;
+        U.clear();
+        rhs[goal] = 0;
+        U.add(goal, calculateKey(goal));
     }
 
-    /* Get the successors for a node, creating them if need be. Successors are
-     * accessable nodes that are not predecessors. If closed, sets all
-     * successors as having a new predecessor 'u', otherwise removes 'u' from
-     * being the successors' predecessor. */
-    private LinkedList<Node> getSuccessors(Node u, boolean closed){
-        //System.out.println("Entering getSuccessors()");
-        LinkedList<Node> pred = u.getPredecessors();
-        LinkedList<Node> succ = new LinkedList<Node>();
-        int x = u.getX();
-        int y = u.getY();
-        if (x-1 >= 0) {                 // left
-            if (grid[x-1][y] == 0){
-                Node n = nodeGrid[x-1][y];
-                if (n == null){
-                    n = new Node(x-1, y);
-                    n.setH( calculateHeur(n) );
-                    n.setKey( calculateKey(n) );
-                    nodeGrid[x-1][y] = n;
-                }
-                if ( !pred.contains(n) ){
-                    succ.add(n);
-                    if (closed) {
-                        n.addPredecessor(u);
-                    } else {
-                        n.removePredecessor(u);
-                    }
-                }
-            }
-        }
-        if (x+1 < nodeGrid.length) {    // right
-            if (grid[x+1][y] == 0){
-                Node n = nodeGrid[x+1][y];
-                if (n == null){
-                    n = new Node(x+1, y);
-                    n.setH( calculateHeur(n) );
-                    n.setKey( calculateKey(n) );
-                    nodeGrid[x+1][y] = n;
-                }
-                if ( !pred.contains(n) ){
-                    succ.add(n);
-                    if (closed) {
-                        n.addPredecessor(u);
-                    } else {
-                        n.removePredecessor(u);
-                    }
-                }
-            }
-        }
-        if (y-1 >= 0) {                 // up
-            if (grid[x][y-1] == 0){
-                Node n = nodeGrid[x][y-1];
-                if (n == null){
-                    n = new Node(x, y-1);
-                    n.setH( calculateHeur(n) );
-                    n.setKey( calculateKey(n) );
-                    nodeGrid[x][y-1] = n;
-                }
-                if ( !pred.contains(n) ){
-                    succ.add(n);
-                    if (closed) {
-                        n.addPredecessor(u);
-                    } else {
-                        n.removePredecessor(u);
-                    }
-                }
-            }
-        }
-        if (y+1 < nodeGrid[0].length) { // down
-            if (grid[x][y+1] == 0){
-                Node n = nodeGrid[x][y+1];
-                if (n == null){
-                    n = new Node(x, y+1);
-                    n.setH( calculateHeur(n) );
-                    n.setKey( calculateKey(n) );
-                    nodeGrid[x][y+1] = n;
-                }
-                if ( !pred.contains(n) ){
-                    succ.add(n);
-                    if (closed) {
-                        n.addPredecessor(u);
-                    } else {
-                        n.removePredecessor(u);
-                    }
-                }
-            }
+    /* Compares a tile of the grid with our copy, and if it has become clear or blocked, updates the
+     * neighbours that could move onto it. */
+    private void checkTile(GridView gri, int i, int j){
+        int t = i*sizeY + j;
+        boolean b = gri.get(i, j) > 0;
+        if (b == isBlocked(t)) return;
+        setBlocked(t, b);
+        for (int d=0; d<8; d++){
+            int nx = i + DX[d];
+            int ny = j + DY[d];
+            if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) continue;
+            updateVertex(nx*sizeY + ny);
         }
-
-        // printout
-        //System.out.println("Successors:");
-        //ListIterator<Node> iter = succ.listIterator();
-        //while ( iter.hasNext() ){
-        //    System.out.println("    "+iter.next().toString());
-        //}
-        
-        return succ;  
     }
-    
-    /* Performs the search. Iterates through the priority queue, closing or
-     * clearing nodes until a goal is reached. */
-    private void computeShortestPath(){
-        //System.out.println("Entering computeShortestPath()");
-        if ( !U.isEmpty() ){
-            Key topKey = U.first().getKey();
-            Key goalKey = calculateKey(goal);
-            while ( Key.compareKeys( topKey, goalKey ) < 0 ||      // We're not evaluating goal
-                    goal.getRhs() != goal.getG() ){                // Goal isn't complete
-
-                //System.out.println("loop");
-
-                // Store the top key
-                Key oldKey = topKey;
-                
-                // Pop the first inconsistent vertex
-                System.out.println("Grabbing first node");
-                Node u = U.pollFirst();
-                System.out.println("    u: " + u.toString());
-                
-                // Calculate if g > rhs
-                boolean greater = false;   
-                int g = u.getG();
-                int rhs = u.getRhs();
-                if (g == INF){
-                    if (rhs == INF){
-                        greater = false;
-                    } else {
-                        greater = true;
-                    }
-                } else if (rhs == INF){
-                    greater = false;
-                } else {
-                    greater = ( g > rhs );
-                }
-
-                // Calculate if the old key is smaller than new one
-                Key newKey = calculateKey(u);
-                u.setKey(newKey);
-                int val = Key.compareKeys(oldKey, newKey);
-                // Put the node back
-                if (val < -1){      //-1 means same values but smaller ID, -2 is smaller values
-                    //System.out.println("Old key was better.");
-                    U.add(u);
-                } else 
-                // This node is becoming closed
-                if ( greater ){
-                    //System.out.println("G was higher.");
-                    u.setG( u.getRhs() );
-                    //System.out.println("    Node is now: "+u.toString());
-
-                    // Find and update all successors (add this node as predecessor)
-                    LinkedList<Node> succ = getSuccessors(u, true);
-                    //System.out.println("Updating successors");
-                    ListIterator<Node> iter = succ.listIterator();
-                    while ( iter.hasNext() ){
-                        Node s = iter.next();
-                        updateVertex(s);
-                    }
-                }
-                // This node is becoming open
-                else {
-                    //System.out.println("G was NOT higher.");
-                    u.setG( INF );
-                    //System.out.println("    Node is now: "+u.toString());
-                    
-                    // Find and update all successors+ourselves (remove this node as predecessor)
-                    LinkedList<Node> succ = getSuccessors(u, false);
-                    succ.add(u);
-                    //System.out.println("Updating successors + self");
-                    ListIterator<Node> iter = succ.listIterator();
-                    while ( iter.hasNext() ){
-                        Node s = iter.next();
-                        updateVertex(s);
-                    }
-                }
-
-                // printout
-                //System.out.println("U:");
-                //Iterator<Node> iter = U.iterator();
-                //while ( iter.hasNext() ){
-                //    System.out.println("    "+iter.next().toString());
-                //}
-
-                
-                // Wait for user key press
-                //Scanner scan = new Scanner(System.in);
-                //String bleh = scan.next();
-				
-                // Get keys for next iteration, or break early
-                if ( U.isEmpty() ){
-                    break;
-                }
 
-                
-                topKey = U.first().getKey();
-                goalKey = calculateKey(goal);
-            }
+    /* Calculate the key of a cell, min(g,rhs) + h + km and then min(g,rhs), packed into a long so keys
+     * compare in the right order. */
+    private long calculateKey(int s){
+        int m = Math.min(g[s], rhs[s]);
+        if (m == INF){
+            return ((long)INF << 32) | INF;
         }
+        return ((long)(m + heuristic(s) + km) << 32) | m;
+    }
 
-        // Finished pathfinding
-        if (goal.getRhs() != goal.getG()){
-            System.out.println("No path exists.");
-            return;
-        }
-        //System.out.println("Path was successful:");
+    /* Calculates the heuristic from a cell to the vehicle (octile). */
+    private int heuristic(int s){
+        int dx = Math.abs(s / sizeY - start / sizeY);
+        int dy = Math.abs(s % sizeY - start % sizeY);
+        return STRAIGHT_COST * Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+    }
 
-        // Print the grid
-        //for (int cols = 0; cols < grid.length; cols++){
-        //    for (int rows = 0; rows < grid.length; rows++){
-                //System.out.print(grid[cols][rows] + " ");
-        //    }
-            //System.out.println("");
-        //}
-        
-        // Print the path
-        /*Node prev = goal;
-        System.out.println("    "+prev.toString());
-        while (prev != start){
-            LinkedList<Node> pred = prev.getPredecessors();
-            ListIterator<Node> iter = pred.listIterator();
-            int min = INF;
-            Node next = null;
-            while( iter.hasNext() ){
-                Node n = iter.next();
-                int g = n.getG();
-                int c = calculateDist(prev, n);
-                if (g != INF && c != INF){
-                    int val = g + c;
-                    if (val < min || min == INF){
-                        min = val;
-                        next = n;
-                    }
-                }
-            }
-            if (next == null) System.out.println("OH NOES");
-            prev = next;
-            System.out.println("    "+prev.toString());
-        }*/
-            
+    /* The cost of a move in direction d. */
+    private static int cost(int d){
+        return (DX[d] != 0 && DY[d] != 0) ? DIAGONAL_COST : STRAIGHT_COST;
     }
-    
-    /* Internal node class to represent each vertex. */
-    private static class Node implements NavigatorNode, Comparable<Node>{
-        private int x;      // col number
-        private int y;      // row number
-        private int g;      // dist from start to this node (-1=inf)
-        private int rhs;    // one-step-ahead dist from start to this node (-1=inf)
-        private int h;      // estimated dist from this node to goal
-        private Key key;    // sorting values
-        private LinkedList<Node> pred;  // list of predecessors
 
-        /* Constructor. */
-        public Node(int x, int y){
-            this.x = x;
-            this.y = y;
-            g = INF;             //inf
-            rhs = INF;           //inf
-            h = 0;
-            pred = new LinkedList<Node>();
-            key = new Key(INF, INF);
-        }
-        
-        /* Add a predecessor if it isn't already. */
-        public void addPredecessor(Node n){
-            if ( !pred.contains(n) ){
-                pred.add(n);
+    /* Updates a vertex, working out its rhs from its neighbours and putting it in or taking it out of
+     * the queue. */
+    private void updateVertex(int u){
+        // Calculate new rhs, the minimum cost + g of the neighbours it can move onto
+        if (u != goal){
+            int minRhs = INF;
+            int x = u / sizeY;
+            int y = u % sizeY;
+            for (int d=0; d<8; d++){
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) continue;
+                int s = nx*sizeY + ny;
+                if (isBlocked(s) || g[s] == INF) continue;
+                minRhs = Math.min(minRhs, g[s] + cost(d));
             }
+            rhs[u] = minRhs;
         }
 
-        /* Remove a predecessor if it exists. */
-        public void removePredecessor(Node n){
-            pred.remove(n);
-        }
-        
-        /* Printout Override. */
-        @Override
-        public String toString(){
-            return "("+x+","+y+")"+" rhs:"+rhs+" g:"+g+", h:"+h+" key:"+key.toString();
+        // Add to the priority queue if needed, changing the key in place if it is there
+        if (g[u] != rhs[u]){
+            U.add(u, calculateKey(u));
+        } else {
+            U.remove(u);
         }
+    }
 
-        /* Comparable overrides. */
-        
-        @Override
-        public int compareTo(Node b){
-            Key k1 = this.getKey();
-            Key k2 = b.getKey();
-            int val = Key.compareKeys(k1, k2);
-            return val;
-        }
-        
-        @Override
-        public boolean equals(Object obj){
-            Node n = (Node)obj;
-            Key a = this.key;
-            Key b = n.getKey();
-            int result = Key.compareKeys(a, b);
-            if (result == 0){
-                return true;
+    /* Updates the neighbours that can move onto u (none if u is blocked), and u itself if asked. */
+    private void updatePredecessors(int u, boolean self){
+        if (!isBlocked(u)){
+            int x = u / sizeY;
+            int y = u % sizeY;
+            for (int d=0; d<8; d++){
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) continue;
+                updateVertex(nx*sizeY + ny);
             }
-            return false;
         }
-        
-        /* Setters. */
-
-        public void setG(int g){
-            this.g = g;
-        }
-        public void setRhs(int rhs){
-            this.rhs = rhs;
-        }
-        public void setH(int h){
-            this.h = h;
-        }
-        public void setKey(Key key){
-            this.key = key;
-        }
-        
-
-        /* Getters. */
-		@Override
-        public int getX(){
-            return x;
-        }
-		@Override
-        public int getY(){
-            return y;
-        }
-        public int getG(){
-            return g;
+        if (self){
+            updateVertex(u);
         }
-        public int getRhs(){
-            return rhs;
-        }
-        public int getH(){
-            return h;
-        }
-        public Key getKey(){
-            return key;
-        }
-        public LinkedList<Node> getPredecessors(){
-            return pred;
-        }
-
-       
-
     }
 
-    /* Internal key class to identify node values. */
-    private static class Key {
-        private static int idCounter = 0;      //increments every time a new key is made
-        
-        private int k1;     // Min(g, rhs) + h
-        private int k2;     // Min(g, rhs)
-        private int k3;     // Unique identifier
-        
-        /* Constructor. */
-        public Key(int k1, int k2){
-            this.k1 = k1;
-            this.k2 = k2;
-            this.k3 = idCounter++;
-        }
-
-         /* Compares two keys.
-          * -2: a goes first
-          * -1: a goes first, but values are the same (except for ID)
-          * 0: same key
-          * 1: b goes first, but values are the same (except for ID)
-          * 2: b goes first */
-        public static int compareKeys(Key a, Key b){
-            int ak1 = a.getK1();
-            int bk1 = b.getK1();
-            int ak2 = a.getK2();
-            int bk2 = b.getK2();
-            int ak3 = a.getK3();
-            int bk3 = b.getK3();
-            
-            // Special infinity cases
-            if (ak1 == INF && bk1 == INF){
-                if (ak2 == INF && bk2 == INF){
-                    if (ak3 < bk3){
-                        return -1;
-                    }
-                    if (ak3 > bk3){
-                        return 1;
-                    }
-                    return 0;
-                } 
-                if (ak2 == INF){
-                    return 2;
-                }
-                if (bk2 == INF){
-                    return -2;
-                }
-            }
-            if (ak1 == INF){
-                return 2;
-            }
-            if (bk1 == INF){
-                return -2;
-            }
-
-            // Normal cases
-            if (ak1 < bk1){
-                return -2;
+    /* Performs the search. Takes cells off the queue, closing or clearing them, until the vehicle's
+     * cell is consistent and nothing in the queue could improve it. Returns false if the thread was
+     * interrupted, which leaves the search in a state it can carry on from. */
+    private boolean computeShortestPath(){
+        while (!U.isEmpty() &&
+                (U.peekKey() < calculateKey(start) || rhs[start] != g[start])){
+            if (Thread.currentThread().isInterrupted()) return false;
+
+            long oldKey = U.peekKey();
+            int u = U.peek();
+            long newKey = calculateKey(u);
+            // Put the cell back if its key has grown since it was added
+            if (oldKey < newKey){
+                U.add(u, newKey);
             }
-            if (ak1 > bk1){
-                return 2;
+            // This cell is becoming closed
+            else if (g[u] > rhs[u]){
+                U.poll();
+                g[u] = rhs[u];
+                updatePredecessors(u, false);
             }
-            if (ak2 < bk2){
-                return -2;
+            // This cell is becoming open
+            else {
+                U.poll();
+                g[u] = INF;
+                updatePredecessors(u, true);
             }
-            if (ak2 > bk2){
-                return 2;
-            }
-            if (ak3 < bk3){
-                return -1;
-            }
-            if (ak3 > bk3){
-                return 1;
-            }
-            return 0;
         }
-        
-        /* Getters. */
+        return true;
+    }
 
-        public int getK1(){
-            return k1;
-        }
-        public int getK2(){
-            return k2;
-        }
-        public int getK3(){
-            return k3;
-        }
+    /********************************************
+    * Getters and Setters                       *
+    *********************************************/
 
-        /* Printout. */
-        public String toString(){
-            return "("+k1+","+k2+","+k3+")";
+    private boolean isBlocked(int s){
+        return (blocked[s >> 6] & (1L << s)) != 0;
+    }
+    private void setBlocked(int s, boolean b){
+        if (b){
+            blocked[s >> 6] |= 1L << s;
+        } else {
+            blocked[s >> 6] &= ~(1L << s);
         }
     }
-    
-    /* Main. */
-    /*public static void main(String[] args){
-        System.out.println("Hello");
-        int[][] grid = new int[3][3];
-        grid[0][0] = 0;
-        grid[1][0] = 0;
-        grid[2][0] = 0;
-        grid[0][1] = 0;
-        grid[1][1] = 0;
-        grid[2][1] = 0;
-        grid[0][2] = 0;
-        grid[1][2] = 0;
-        grid[2][2] = 0;
-        DStarLite nav = new DStarLite();
-        nav.calculatePath(grid, 1, 0, 1, 2);
-        // Wait for user key press
-        Scanner scan = new Scanner(System.in);
-        String bleh = scan.next();
-        grid[1][1] = 1;
-        nav.calculatePath(grid, 1, 0, 1, 2);
-        // Wait for user key press
-        bleh = scan.next();
-        grid[0][0] = 1;
-        nav.calculatePath(grid, 1, 0, 1, 2);
-        // Wait for user key press
-        bleh = scan.next();
-        grid[1][1] = 0;
-        nav.calculatePath(grid, 1, 0, 1, 2);
-        // Wait for user key press
-        bleh = scan.next();
-        nav.calculatePath(grid, 2, 0, 1, 2);
-        // Wait for user key press
-        bleh = scan.next();
-        grid[1][1] = 1;
-        nav.calculatePath(grid, 1, 0, 1, 2);
-        
-    }*/
 }
@@ -0,0 +1,305 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import simulator.interfaces.GridView;
+import simulator.interfaces.NavigatorNode;
+
+/** The A* search shared by the AStar navigators. Each variant configures it (corner cutting, turning)
+and adds its own costs through the Costs interface, then does its own post processing such as smoothing.
+
+The open list is an IndexedHeap, and everything known about a node (distance, direction, open or closed)
+is kept in primitive arrays indexed by (x*gridSizeY + y)*directions + direction. The arrays are kept
+between searches and only reallocated when the grid grows. A generation number is stamped on each node
+as it is reached, so starting a new search does not need to clear anything. Parents are not stored, as
+a node's parent is one step back along the direction it was reached from, which keeps a 2000x2000 grid
+to about 14 bytes a node (8 times that when directional).
+
+Moving straight costs 10 and diagonally 14. The heuristic is the Manhattan distance times the heuristic
+weighting. Obstacles are any tile with a value above 0. Not thread safe, each navigator has its own. **/
+public class GridSearch{
+	public static final int NO_DIRECTION = -1;		//The direction of the start node, unless one is given
+	public static final int[] DX = {-1, -1, -1, 1,  1, 1,  0, 0};	//The 8 directions a node can be
+	public static final int[] DY = { 0, -1,  1, 0, -1, 1, -1, 1};	// reached from, as steps in x and y
+	static final int STRAIGHT_COST = 10;			//Cost of moving to a neighbouring tile, shared by the grid searches
+	static final int DIAGONAL_COST = 14;			//Cost of moving to a diagonal tile
+
+	/* Extra costs added by a variant. The tile costs and biases are only asked for once per tile in
+	each search. */
+	public interface Costs{
+		/* The extra distance of moving onto (x,y), whichever way it is reached. */
+		public int tileCost(GridView grid, int x, int y);
+
+		/* An extra amount added to the estimate of (x,y), but not to its distance. */
+		public int bias(GridView grid, int x, int y);
+
+		/* The extra distance of moving from (fromX,fromY), which was reached moving in direction fromDir
+		(NO_DIRECTION for the start), to (toX,toY) in direction toDir. */
+		public int stepCost(GridView grid, int fromX, int fromY, int fromDir, int toX, int toY, int toDir);
+	}
+
+	private int heuristicWeighting;		//10 = same as dist, >10 means a node that's closer to the end will
+										// be prioritised over a node that's not far from the start
+	private boolean cornerCutting;		//Whether diagonal moves can pass the corner of an obstacle
+	private boolean directional;		//Whether each direction into a tile is a separate node, needed
+										// when costs depend on the direction the tile was reached from
+	private Costs costs;				//Extra costs, or null for none
+
+	private int gridSizeX;				//The size of the grid the arrays were made for
+	private int gridSizeY;
+	private int directions;				//Nodes per tile, 8 if directional or 1 if not
+	private int[] distance;				//The distance of each node from the start
+	private byte[] direction;			//The direction each node was reached from
+	private byte[] parentDirection;		//The direction of each node's parent, only used when directional
+	private int[] visited;				//2*generation once a node is reached (distance is valid), 
+										// 2*generation+1 once it is closed
+	private int[] tileCost;				//The Costs tile cost and bias of each tile, only used with Costs
+	private int[] tileBias;
+	private int[] tileCosted;			//Generation in which each tile's cost and bias were found
+	private int generation;				//Increases with each search
+	private IndexedHeap openList;		//Nodes that need checking, by estimate and then by order added
+
+	/* Constructor, 8 connected with corner cutting, not directional, and a heuristic weighting of 10. */
+	public GridSearch(){
+		heuristicWeighting = 10;
+		cornerCutting = true;
+		directional = false;
+		costs = null;
+		gridSizeX = 0;
+		gridSizeY = 0;
+		directions = 1;
+		generation = 0;
+		openList = new IndexedHeap(0);
+	}
+
+	/* Finds the cheapest path from the start to the destination. Returns the tiles to go through in
+	order, not including the start, or an empty list if the start is the destination. Returns null if
+	there is no path, or if the thread is interrupted. startDir is the direction the start is treated as
+	being reached from, and must be one of the 8 directions when the search is directional. */
+	public LinkedList<NavigatorNode> search(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, int startDir){
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		prepare(grid.getSizeX(), grid.getSizeY());
+
+		//Initialise first point
+		int start = node(startTileX, startTileY, directional ? startDir : 0);
+		int reached = 2*generation;			//Stamps for reached and closed nodes
+		int closed = reached + 1;
+		distance[start] = 0;
+		direction[start] = (byte)startDir;
+		visited[start] = reached;
+		int sequence = 0;					//Breaks ties in the order nodes were added
+		openList.add(start, key(heuristic(startTileX, startTileY, destTileX, destTileY), sequence++));
+
+		//Begin A* search
+		while (!openList.isEmpty()){
+			//Give up if the run has been ended
+			if (Thread.currentThread().isInterrupted()) return null;
+
+			//Take the most suitable node and close it
+			int chosen = openList.poll();
+			visited[chosen] = closed;
+			int tile = chosen / directions;
+			int x = tile / gridSizeY;
+			int y = tile % gridSizeY;
+
+			//Check if we've reached the destination
+			if (x == destTileX && y == destTileY){
+				//Progress back up through parents until we're back at the start
+				for (int n = chosen; n != start; ){
+					int t = n / directions;
+					int px = t / gridSizeY;
+					int py = t % gridSizeY;
+					returnList.addFirst(new PathNode(px, py));
+					int d = direction[n];
+					n = node(px - DX[d], py - DY[d], directional ? parentDirection[n] : 0);
+				}
+				return returnList;
+			}
+
+			//Open or improve each neighbour that is in the map and not obstructed
+			int chosenDir = direction[chosen];
+			int chosenDist = distance[chosen];
+			for (int d=0; d<8; d++){
+				int nx = x + DX[d];
+				int ny = y + DY[d];
+				if (nx < 0 || nx >= gridSizeX || ny < 0 || ny >= gridSizeY) continue;
+				if (grid.get(nx, ny) > 0) continue;
+				boolean diagonal = DX[d] != 0 && DY[d] != 0;
+				if (diagonal && !cornerCutting && (grid.get(nx, y) > 0 || grid.get(x, ny) > 0)) continue;
+
+				int n = node(nx, ny, directional ? d : 0);
+				if (visited[n] == closed) continue;
+				int dist = chosenDist + (diagonal ? DIAGONAL_COST : STRAIGHT_COST);
+				int bias = 0;
+				if (costs != null){
+					int t = nx*gridSizeY + ny;
+					if (tileCosted[t] != generation){
+						tileCost[t] = costs.tileCost(grid, nx, ny);
+						tileBias[t] = costs.bias(grid, nx, ny);
+						tileCosted[t] = generation;
+					}
+					dist += tileCost[t] + costs.stepCost(grid, x, y, chosenDir, nx, ny, d);
+					bias = tileBias[t];
+				}
+				if (visited[n] == reached && dist >= distance[n]) continue;
+
+				distance[n] = dist;
+				direction[n] = (byte)d;
+				if (directional) parentDirection[n] = (byte)chosenDir;
+				visited[n] = reached;
+				int f = dist + heuristic(nx, ny, destTileX, destTileY) + bias;
+				openList.add(n, key(f, sequence++));
+			}
+		}
+
+		//The open list is empty, so we cannot find a solution
+		return null;
+	}
+
+	/* Makes the arrays fit the grid, and starts a new generation. */
+	private void prepare(int sizeX, int sizeY){
+		int dirs = directional ? 8 : 1;
+		int nodes = sizeX * sizeY * dirs;
+		if (distance == null || distance.length < nodes){
+			distance = null;				//let the old arrays go before making the new ones
+			direction = null;
+			parentDirection = null;
+			visited = null;
+			distance = new int[nodes];
+			direction = new byte[nodes];
+			visited = new int[nodes];
+			tileCost = null;				//the tile stamps are only valid for the old generations
+			generation = 0;
+		}
+		if (directional && (parentDirection == null || parentDirection.length < nodes)){
+			parentDirection = new byte[nodes];
+		}
+		if (costs != null && (tileCost == null || tileCost.length < sizeX*sizeY)){
+			tileCost = new int[sizeX * sizeY];
+			tileBias = new int[sizeX * sizeY];
+			tileCosted = new int[sizeX * sizeY];
+		}
+		if (generation == Integer.MAX_VALUE/2){
+			Arrays.fill(visited, 0);
+			if (tileCosted != null) Arrays.fill(tileCosted, 0);
+			generation = 0;
+		}
+		gridSizeX = sizeX;
+		gridSizeY = sizeY;
+		directions = dirs;
+		generation++;
+		openList.ensureCapacity(nodes);
+		openList.clear();
+	}
+
+	/* The index of the node for a tile and direction. */
+	private int node(int x, int y, int dir){
+		return (x*gridSizeY + y)*directions + dir;
+	}
+
+	/* The estimated distance to the destination (Manhattan). */
+	private int heuristic(int x, int y, int destTileX, int destTileY){
+		return heuristicWeighting * (Math.abs(x - destTileX) + Math.abs(y - destTileY));
+	}
+
+	/* The open list key, ordered by estimate and then by the order nodes were added. Used by the other
+	searches in this package for their IndexedHeaps too. */
+	static long key(long f, int sequence){
+		return (f << 32) | (sequence & 0xffffffffL);
+	}
+
+	/* The cost of the shortest unobstructed path dx across and dy down, moving straight and diagonally. */
+	static int octile(int dx, int dy){
+		return STRAIGHT_COST*Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST)*Math.min(dx, dy);
+	}
+
+	/* Walks every tile the line between the centres of two tiles passes through, after the first, and
+	returns whether they are all in the map and free. A line that passes exactly through a corner needs
+	both tiles beside the corner to be free, as moves may not cut corners. The any-angle navigators and
+	the portfolio's check of their paths all use this, so they agree on what can be seen. */
+	static boolean lineClear(GridView grid, int x0, int y0, int x1, int y1){
+		int dx = Math.abs(x1 - x0);
+		int dy = Math.abs(y1 - y0);
+		int stepX = (x1 > x0) ? 1 : -1;
+		int stepY = (y1 > y0) ? 1 : -1;
+		int x = x0;
+		int y = y0;
+		int error = dx - dy;			//Positive when the line leaves the tile across its side edge first
+		int remaining = dx + dy;
+		dx *= 2;
+		dy *= 2;
+		while (remaining > 0){
+			if (error > 0){
+				x += stepX;
+				error -= dy;
+				remaining--;
+			} else if (error < 0){
+				y += stepY;
+				error += dx;
+				remaining--;
+			} else {
+				if (!isFree(grid, x + stepX, y) || !isFree(grid, x, y + stepY)) return false;
+				x += stepX;
+				y += stepY;
+				error += dx - dy;
+				remaining -= 2;
+			}
+			if (!isFree(grid, x, y)) return false;
+		}
+		return true;
+	}
+
+	/* Whether (x,y) is in the map and not obstructed. */
+	static boolean isFree(GridView grid, int x, int y){
+		return x >= 0 && x < grid.getSizeX() && y >= 0 && y < grid.getSizeY() && grid.get(x, y) <= 0;
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	public void setHeuristicWeighting(int heuristicWeighting){
+		this.heuristicWeighting = heuristicWeighting;
+	}
+	public void setCornerCutting(boolean cornerCutting){
+		this.cornerCutting = cornerCutting;
+	}
+	public void setDirectional(boolean directional){
+		this.directional = directional;
+	}
+	public void setCosts(Costs costs){
+		this.costs = costs;
+	}
+
+	/********************************************
+	* Node Implementation						*
+	*********************************************/
+	/* A tile on a path found by the search. */
+	public static class PathNode implements NavigatorNode{
+		private int posX;			//This Node's column number in the grid
+		private int posY;			//This Node's row number in the grid
+
+		public PathNode(int x, int y){
+			posX = x;
+			posY = y;
+		}
+
+		@Override
+		public int getX(){
+			return posX;
+		}
+		@Override
+		public int getY(){
+			return posY;
+		}
+	}
+}
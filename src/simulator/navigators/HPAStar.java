@@ -0,0 +1,435 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import simulator.interfaces.GridView;
+import simulator.interfaces.IncrementalNavigator;
+import simulator.interfaces.NavigatorNode;
+
+/* Hierarchical path-finding A* (HPA*), for large grids. The grid is split into square clusters. Where
+two neighbouring clusters share a run of free tiles along their border there is an entrance, a pair of
+tiles facing each other across the border (one in the middle of a short run, one at each end of a long
+one). The distances between the entrances of a cluster are found once, by searching inside the cluster,
+and kept. A path is planned over the entrances alone, which is a graph far smaller than the grid, and
+only the start of it is then turned back into tiles, one cluster at a time.
+Clusters are only built when the search first reaches them, and when the map says a tile has changed,
+only the cluster it is in (and the one across the border, if it is on one) is thrown away to be built
+again.
+Moves are 8-connected, may not cut the corner of an obstacle, and cost 10 straight and 14 diagonally,
+like AStarC. The paths are close to, but not always, the shortest.
+The returned path has every tile for the first REFINE_TILES tiles or so, then only the entrances, which
+the path will be replanned from long before the vehicle reaches.
+http://webdocs.cs.ualberta.ca/~mmueller/ps/hpastar.pdf */
+public class HPAStar implements IncrementalNavigator{
+	private static final int CLUSTER_SIZE = 16;		//The width and height of a cluster, in tiles
+	private static final int ENTRANCE_SPLIT = 6;	//Runs of free tiles at least this long get two entrances
+	private static final int REFINE_TILES = 300;	//How many tiles of the path to fill in before using entrances
+	private static final int INF = Integer.MAX_VALUE;
+
+	/* The entrances of a cluster and the distances between them. The same tile may appear more than once
+	if it is an entrance on two borders. */
+	private static class Cluster{
+		private int[] tiles;			//The tile of each entrance inside this cluster
+		private int[] partners;			//The tile across the border each entrance leads to
+		private int[][] dist;			//dist[i][j] is the distance from entrance i to j inside the cluster
+	}
+
+	private GridView grid;				//The grid being searched
+	private int sizeX;					//The size of the grid the clusters were made for
+	private int sizeY;
+	private int destTileX;				//Where the search is going, which is always treated as free
+	private int destTileY;
+	private int clustersX;				//How many clusters there are across and down
+	private int clustersY;
+	private Cluster[] clusters;			//The clusters, by cx*clustersY + cy, null if it needs building
+	private long gridVersion;			//The version of the grid the clusters were built from, -1 before the first call
+	private int[] changedTiles;			//The tiles changed since gridVersion, null if unknown
+	private long changedVersion;		//The version the changed tiles lead to
+
+	//The search over entrances, by tile
+	private int[] distance;				//The distance of each entrance from the start
+	private int[] parent;				//The entrance each entrance was reached from
+	private int[] visited;				//2*generation once an entrance is reached, 2*generation+1 once closed
+	private int generation;				//Increases with each search
+	private IndexedHeap openList;		//Entrances that need checking, by estimate and then by order added
+
+	//The search inside a single cluster, by (x - originX)*CLUSTER_SIZE + (y - originY)
+	private int[] localDist;			//The distance of each tile from the search's start
+	private int[] localParent;			//The tile each tile was reached from
+	private IndexedHeap localOpen;		//Tiles that need checking, by distance
+	private int[] goalDist;				//The distances to the destination inside its cluster
+
+	public HPAStar(){
+		sizeX = 0;
+		sizeY = 0;
+		destTileX = -1;
+		destTileY = -1;
+		gridVersion = -1;
+		changedTiles = null;
+		changedVersion = -1;
+		generation = 0;
+		openList = new IndexedHeap(0);
+		localDist = new int[CLUSTER_SIZE*CLUSTER_SIZE];
+		localParent = new int[CLUSTER_SIZE*CLUSTER_SIZE];
+		localOpen = new IndexedHeap(CLUSTER_SIZE*CLUSTER_SIZE);
+		goalDist = new int[CLUSTER_SIZE*CLUSTER_SIZE];
+	}
+
+	@Override
+	public String getName(){
+		return "HPAStar";
+	}
+
+
+	/*Given a 2D grid containing obstacle information:
+	0 = no obstacle
+	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+	this function returns the list of nodes (in order) to be traversed to reach the goal
+	destination from the start point.
+
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
+
+	If a path is unable to be found, this function should return null. */
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		updateClusters(grid, destTileX, destTileY);
+		prepare();
+
+		//Distances inside the start's and destination's clusters
+		int start = startTileX*sizeY + startTileY;
+		int goal = destTileX*sizeY + destTileY;
+		int goalCX = destTileX / CLUSTER_SIZE;
+		int goalCY = destTileY / CLUSTER_SIZE;
+		searchCluster(goalCX, goalCY, destTileX, destTileY);		//Moves cost the same both ways
+		System.arraycopy(localDist, 0, goalDist, 0, localDist.length);
+
+		//Initialise first point
+		int reached = 2*generation;			//Stamps for reached and closed entrances
+		int closed = reached + 1;
+		distance[start] = 0;
+		parent[start] = start;
+		visited[start] = reached;
+		int sequence = 0;					//Breaks ties in the order entrances were added
+		openList.add(start, GridSearch.key(heuristic(startTileX, startTileY), sequence++));
+
+		//Search over the entrances
+		while (!openList.isEmpty()){
+			//Give up if the run has been ended
+			if (Thread.currentThread().isInterrupted()) return null;
+
+			int chosen = openList.poll();
+			visited[chosen] = closed;
+			if (chosen == goal){
+				return refinePath(start, goal);
+			}
+			int x = chosen / sizeY;
+			int y = chosen % sizeY;
+			int cx = x / CLUSTER_SIZE;
+			int cy = y / CLUSTER_SIZE;
+			Cluster c = getCluster(cx, cy);
+
+			//To the other entrances of the cluster, and across the border
+			boolean entrance = false;
+			for (int i=0; i<c.tiles.length; i++){
+				if (c.tiles[i] != chosen) continue;
+				entrance = true;
+				for (int j=0; j<c.tiles.length; j++){
+					sequence = relax(chosen, c.tiles[j], c.dist[i][j], closed, sequence);
+				}
+				sequence = relax(chosen, c.partners[i], GridSearch.STRAIGHT_COST, closed, sequence);
+			}
+			if (!entrance){
+				//The start, or a tile stepped onto from it, so search the cluster for its entrances
+				searchCluster(cx, cy, x, y);
+				for (int t : c.tiles){
+					sequence = relax(chosen, t, localDist[localIndex(t / sizeY, t % sizeY)], closed, sequence);
+				}
+				if (cx == goalCX && cy == goalCY){
+					sequence = relax(chosen, goal, localDist[localIndex(destTileX, destTileY)], closed, sequence);
+				}
+			} else if (cx == goalCX && cy == goalCY){
+				sequence = relax(chosen, goal, goalDist[localIndex(x, y)], closed, sequence);
+			}
+
+			//The start may be on an obstacle by a border that has no entrance there, so it may also
+			// step straight into the next cluster
+			if (chosen == start){
+				for (int d=0; d<8; d++){
+					int nx = x + GridSearch.DX[d];
+					int ny = y + GridSearch.DY[d];
+					if (nx / CLUSTER_SIZE == cx && ny / CLUSTER_SIZE == cy) continue;
+					if (!isFree(nx, ny)) continue;
+					boolean diagonal = nx != x && ny != y;
+					if (diagonal && (!isFree(nx, y) || !isFree(x, ny))) continue;
+					sequence = relax(chosen, nx*sizeY + ny, diagonal ? GridSearch.DIAGONAL_COST : GridSearch.STRAIGHT_COST, closed, sequence);
+				}
+			}
+		}
+
+		//The open list is empty, so we cannot find a solution
+		return null;
+	}
+
+	/* Records the tiles that changed, to be applied on the next call. */
+	@Override
+	public void tilesChanged(GridView grid, int[] tiles){
+		changedTiles = tiles;
+		changedVersion = grid.getVersion();
+	}
+
+	@Override
+	public long getGridVersion(){
+		return gridVersion;
+	}
+
+	/* Offers entrance to a path through from, cost further on. Returns the next sequence number. */
+	private int relax(int from, int to, int cost, int closed, int sequence){
+		if (cost == INF || visited[to] == closed) return sequence;
+		int dist = distance[from] + cost;
+		if (visited[to] == closed - 1 && dist >= distance[to]) return sequence;
+
+		distance[to] = dist;
+		parent[to] = from;
+		visited[to] = closed - 1;
+		openList.add(to, GridSearch.key(dist + heuristic(to / sizeY, to % sizeY), sequence));
+		return sequence + 1;
+	}
+
+	/* Turns the path over entrances, from start to goal, into the path to follow. The first REFINE_TILES
+	or so tiles are filled in by searching inside each cluster in turn, after that only the entrances
+	are given. */
+	private LinkedList<NavigatorNode> refinePath(int start, int goal){
+		LinkedList<Integer> entrances = new LinkedList<Integer>();
+		for (int n = goal; n != start; n = parent[n]){
+			entrances.addFirst(n);
+		}
+
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		int from = start;
+		for (int to : entrances){
+			int fromX = from / sizeY;
+			int fromY = from % sizeY;
+			int toX = to / sizeY;
+			int toY = to % sizeY;
+			boolean sameCluster = fromX / CLUSTER_SIZE == toX / CLUSTER_SIZE && fromY / CLUSTER_SIZE == toY / CLUSTER_SIZE;
+			if (returnList.size() >= REFINE_TILES || !sameCluster){
+				//Far enough along, or a step across a border
+				returnList.add(new GridSearch.PathNode(toX, toY));
+			} else {
+				//Fill in the tiles between the two inside their cluster
+				searchCluster(fromX / CLUSTER_SIZE, fromY / CLUSTER_SIZE, fromX, fromY);
+				int originX = (fromX / CLUSTER_SIZE) * CLUSTER_SIZE;
+				int originY = (fromY / CLUSTER_SIZE) * CLUSTER_SIZE;
+				LinkedList<NavigatorNode> segment = new LinkedList<NavigatorNode>();
+				for (int l = localIndex(toX, toY); l != localIndex(fromX, fromY); l = localParent[l]){
+					segment.addFirst(new GridSearch.PathNode(originX + l / CLUSTER_SIZE, originY + l % CLUSTER_SIZE));
+				}
+				returnList.addAll(segment);
+			}
+			from = to;
+		}
+		return returnList;
+	}
+
+	/* Returns a cluster, building it first if needed. */
+	private Cluster getCluster(int cx, int cy){
+		Cluster c = clusters[cx*clustersY + cy];
+		if (c == null){
+			c = buildCluster(cx, cy);
+			clusters[cx*clustersY + cy] = c;
+		}
+		return c;
+	}
+
+	/* Finds the entrances on each border of a cluster, and the distances between them. */
+	private Cluster buildCluster(int cx, int cy){
+		int originX = cx*CLUSTER_SIZE;
+		int originY = cy*CLUSTER_SIZE;
+		int lastX = Math.min(originX + CLUSTER_SIZE, sizeX) - 1;
+		int lastY = Math.min(originY + CLUSTER_SIZE, sizeY) - 1;
+		int width = lastX - originX + 1;
+		int height = lastY - originY + 1;
+
+		int[] tiles = new int[4*CLUSTER_SIZE];
+		int[] partners = new int[4*CLUSTER_SIZE];
+		int count = 0;
+		if (originX > 0)		count = addEntrances(tiles, partners, count, originX, originY, 0, 1, height, -1, 0);
+		if (lastX + 1 < sizeX)	count = addEntrances(tiles, partners, count, lastX, originY, 0, 1, height, 1, 0);
+		if (originY > 0)		count = addEntrances(tiles, partners, count, originX, originY, 1, 0, width, 0, -1);
+		if (lastY + 1 < sizeY)	count = addEntrances(tiles, partners, count, originX, lastY, 1, 0, width, 0, 1);
+
+		Cluster c = new Cluster();
+		c.tiles = Arrays.copyOf(tiles, count);
+		c.partners = Arrays.copyOf(partners, count);
+		c.dist = new int[count][count];
+		for (int i=0; i<count; i++){
+			searchCluster(cx, cy, c.tiles[i] / sizeY, c.tiles[i] % sizeY);
+			for (int j=0; j<count; j++){
+				c.dist[i][j] = localDist[localIndex(c.tiles[j] / sizeY, c.tiles[j] % sizeY)];
+			}
+		}
+		return c;
+	}
+
+	/* Walks length tiles along a border from (x,y) in direction (stepX,stepY), and adds an entrance for
+	each run of tiles that are free on both sides, the other side being (outX,outY) away. Both clusters
+	walk a border the same way, so they agree on its entrances. Returns the new count. */
+	private int addEntrances(int[] tiles, int[] partners, int count, int x, int y, int stepX, int stepY,
+							int length, int outX, int outY){
+		int runStart = -1;
+		for (int i=0; i<=length; i++){
+			boolean open = i < length && isFree(x + i*stepX, y + i*stepY) &&
+							isFree(x + i*stepX + outX, y + i*stepY + outY);
+			if (open && runStart == -1){
+				runStart = i;
+			} else if (!open && runStart != -1){
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 < ENTRANCE_SPLIT){
+					count = addEntrance(tiles, partners, count, x, y, stepX, stepY, (runStart + runEnd) / 2, outX, outY);
+				} else {
+					count = addEntrance(tiles, partners, count, x, y, stepX, stepY, runStart, outX, outY);
+					count = addEntrance(tiles, partners, count, x, y, stepX, stepY, runEnd, outX, outY);
+				}
+				runStart = -1;
+			}
+		}
+		return count;
+	}
+	private int addEntrance(int[] tiles, int[] partners, int count, int x, int y, int stepX, int stepY,
+							int i, int outX, int outY){
+		int tx = x + i*stepX;
+		int ty = y + i*stepY;
+		tiles[count] = tx*sizeY + ty;
+		partners[count] = (tx + outX)*sizeY + ty + outY;
+		return count + 1;
+	}
+
+	/* Dijkstra from (startX,startY) over the tiles of cluster (cx,cy) only, filling localDist, INF
+	where it cannot be reached, and localParent. */
+	private void searchCluster(int cx, int cy, int startX, int startY){
+		int originX = cx*CLUSTER_SIZE;
+		int originY = cy*CLUSTER_SIZE;
+		int lastX = Math.min(originX + CLUSTER_SIZE, sizeX) - 1;
+		int lastY = Math.min(originY + CLUSTER_SIZE, sizeY) - 1;
+		Arrays.fill(localDist, INF);
+		localOpen.clear();
+
+		int first = localIndex(startX, startY);
+		localDist[first] = 0;
+		localParent[first] = first;
+		localOpen.add(first, 0);
+		while (!localOpen.isEmpty()){
+			int chosen = localOpen.poll();
+			int x = originX + chosen / CLUSTER_SIZE;
+			int y = originY + chosen % CLUSTER_SIZE;
+			for (int d=0; d<8; d++){
+				int nx = x + GridSearch.DX[d];
+				int ny = y + GridSearch.DY[d];
+				if (nx < originX || nx > lastX || ny < originY || ny > lastY) continue;
+				boolean diagonal = nx != x && ny != y;
+				if (!isFree(nx, ny)) continue;
+				if (diagonal && (!isFree(nx, y) || !isFree(x, ny))) continue;
+
+				int n = localIndex(nx, ny);
+				int dist = localDist[chosen] + (diagonal ? GridSearch.DIAGONAL_COST : GridSearch.STRAIGHT_COST);
+				if (dist < localDist[n]){
+					localDist[n] = dist;
+					localParent[n] = chosen;
+					localOpen.add(n, dist);
+				}
+			}
+		}
+	}
+
+	/* Where (x,y) is within its cluster. */
+	private static int localIndex(int x, int y){
+		return (x % CLUSTER_SIZE)*CLUSTER_SIZE + (y % CLUSTER_SIZE);
+	}
+
+	/* Whether (x,y) is in the map and not obstructed. The destination is always free, otherwise an
+	obstructed destination could never be reached. */
+	private boolean isFree(int x, int y){
+		if (x < 0 || x >= sizeX || y < 0 || y >= sizeY) return false;
+		return grid.get(x, y) <= 0 || (x == destTileX && y == destTileY);
+	}
+
+	/* The estimated distance to the destination (octile). */
+	private int heuristic(int x, int y){
+		return GridSearch.octile(Math.abs(x - destTileX), Math.abs(y - destTileY));
+	}
+
+	/* Throws away the clusters that the changes to the grid, or to the destination, affect. If the
+	changes are not known, or the grid is a different size, every cluster is thrown away. */
+	private void updateClusters(GridView grid, int destTileX, int destTileY){
+		boolean sameSize = grid.getSizeX() == sizeX && grid.getSizeY() == sizeY && clusters != null;
+		if (!sameSize || (grid.getVersion() != gridVersion &&
+				(changedTiles == null || changedVersion != grid.getVersion() || gridVersion < 0))){
+			sizeX = grid.getSizeX();
+			sizeY = grid.getSizeY();
+			clustersX = (sizeX + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+			clustersY = (sizeY + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+			clusters = new Cluster[clustersX*clustersY];
+		} else if (grid.getVersion() != gridVersion){
+			for (int t : changedTiles){
+				tileChanged(t / sizeY, t % sizeY);
+			}
+		}
+		if (destTileX != this.destTileX || destTileY != this.destTileY){
+			tileChanged(this.destTileX, this.destTileY);
+			tileChanged(destTileX, destTileY);
+			this.destTileX = destTileX;
+			this.destTileY = destTileY;
+		}
+		this.grid = grid;
+		gridVersion = grid.getVersion();
+		changedTiles = null;
+	}
+
+	/* Throws away the cluster a tile is in, and the cluster across the border if the tile is on one,
+	as its entrances on that border may have changed. */
+	private void tileChanged(int x, int y){
+		if (x < 0 || x >= sizeX || y < 0 || y >= sizeY) return;
+		int cx = x / CLUSTER_SIZE;
+		int cy = y / CLUSTER_SIZE;
+		clusters[cx*clustersY + cy] = null;
+		if (x % CLUSTER_SIZE == 0 && cx > 0) clusters[(cx - 1)*clustersY + cy] = null;
+		if (x % CLUSTER_SIZE == CLUSTER_SIZE - 1 && cx + 1 < clustersX) clusters[(cx + 1)*clustersY + cy] = null;
+		if (y % CLUSTER_SIZE == 0 && cy > 0) clusters[cx*clustersY + cy - 1] = null;
+		if (y % CLUSTER_SIZE == CLUSTER_SIZE - 1 && cy + 1 < clustersY) clusters[cx*clustersY + cy + 1] = null;
+	}
+
+	/* Makes the search arrays fit the grid, and starts a new generation. */
+	private void prepare(){
+		int tiles = sizeX * sizeY;
+		if (distance == null || distance.length < tiles){
+			distance = null;				//let the old arrays go before making the new ones
+			parent = null;
+			visited = null;
+			distance = new int[tiles];
+			parent = new int[tiles];
+			visited = new int[tiles];
+			generation = 0;
+		}
+		if (generation == Integer.MAX_VALUE/2){
+			Arrays.fill(visited, 0);
+			generation = 0;
+		}
+		generation++;
+		openList.ensureCapacity(tiles);
+		openList.clear();
+	}
+}
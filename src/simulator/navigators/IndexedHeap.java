@@ -0,0 +1,155 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+
+/** A binary min-heap of integer ids, each with a long key, that can find an id in constant time. This
+allows the key of an id already in the heap to be lowered (decrease-key), which the open list of a
+search needs when a shorter route to a node is found.
+Ids run from 0 to the capacity, and the arrays are reused between searches, so nothing is allocated
+once the heap has grown to the size of the grid. Only the position of each id is kept for every id,
+the heap itself grows with the number of ids in it, which is usually far fewer. Not thread safe, each
+navigator has its own. **/
+public class IndexedHeap{
+	private static final int INITIAL_SIZE = 64;	//Starting length of the heap arrays
+
+	private int[] heap;				//The ids, in heap order
+	private long[] keys;			//The key of the id at each heap index
+	private int[] position;			//Where each id is in the heap, -1 if it is not
+	private int size;				//How many ids are in the heap
+
+	/* Constructor, for ids from 0 to capacity-1. */
+	public IndexedHeap(int capacity){
+		heap = new int[INITIAL_SIZE];
+		keys = new long[INITIAL_SIZE];
+		position = new int[capacity];
+		Arrays.fill(position, -1);
+		size = 0;
+	}
+
+	/* Makes sure ids from 0 to capacity-1 can be used. Empties the heap if it has to grow. */
+	public void ensureCapacity(int capacity){
+		if (capacity > position.length){
+			position = null;			//let the old array go before making the new one
+			position = new int[capacity];
+			Arrays.fill(position, -1);
+			size = 0;
+		}
+	}
+
+	/* Removes every id. Only touches the ids that were in the heap. */
+	public void clear(){
+		for (int i=0; i<size; i++){
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/* Adds an id with the given key, or changes its key if it is already in the heap. */
+	public void add(int id, long key){
+		int i = position[id];
+		if (i == -1){
+			if (size == heap.length){
+				heap = Arrays.copyOf(heap, 2*size);
+				keys = Arrays.copyOf(keys, 2*size);
+			}
+			siftUp(size++, id, key);
+		} else if (key < keys[i]){
+			siftUp(i, id, key);
+		} else {
+			siftDown(i, id, key);
+		}
+	}
+
+	/* Removes and returns the id with the smallest key. The heap must not be empty. */
+	public int poll(){
+		int top = heap[0];
+		position[top] = -1;
+		size--;
+		if (size > 0){
+			siftDown(0, heap[size], keys[size]);
+		}
+		return top;
+	}
+
+	/* Removes an id, if it is in the heap. */
+	public void remove(int id){
+		int i = position[id];
+		if (i == -1) return;
+		position[id] = -1;
+		size--;
+		if (i < size){
+			int last = heap[size];
+			long lastKey = keys[size];
+			siftDown(i, last, lastKey);
+			int j = position[last];
+			siftUp(j, last, lastKey);
+		}
+	}
+
+	/* The id with the smallest key, without removing it. The heap must not be empty. */
+	public int peek(){
+		return heap[0];
+	}
+
+	/* The smallest key. The heap must not be empty. */
+	public long peekKey(){
+		return keys[0];
+	}
+
+	/* Places id, with the given key, at heap index i or above, moving larger parents down. */
+	private void siftUp(int i, int id, long key){
+		while (i > 0){
+			int parent = (i-1) >>> 1;
+			if (keys[parent] <= key) break;
+			heap[i] = heap[parent];
+			keys[i] = keys[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = id;
+		keys[i] = key;
+		position[id] = i;
+	}
+
+	/* Places id, with the given key, at heap index i or below, moving smaller children up. */
+	private void siftDown(int i, int id, long key){
+		int half = size >>> 1;
+		while (i < half){
+			int child = 2*i + 1;
+			int right = child + 1;
+			if (right < size && keys[right] < keys[child]){
+				child = right;
+			}
+			if (key <= keys[child]) break;
+			heap[i] = heap[child];
+			keys[i] = keys[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = id;
+		keys[i] = key;
+		position[id] = i;
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	public int size(){
+		return size;
+	}
+	public boolean contains(int id){
+		return position[id] != -1;
+	}
+	/* The key of an id, which must be in the heap. */
+	public long getKey(int id){
+		return keys[position[id]];
+	}
+}
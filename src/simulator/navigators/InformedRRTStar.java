@@ -0,0 +1,567 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import simulator.interfaces.AnytimeNavigator;
+import simulator.interfaces.GridView;
+import simulator.interfaces.IncrementalNavigator;
+import simulator.interfaces.NavigatorNode;
+import simulator.interfaces.Seedable;
+
+/* Informed RRT*. Like RapidExploringRandomTree it grows a tree towards random samples, but each new
+vertex takes the neighbour within a radius that gives it the shortest path as its parent, and the
+neighbours that would be shorter through the new vertex are rewired to it. The radius shrinks as the
+tree grows. Once a path has been found, samples are only taken from the ellipse of points that could
+make it shorter, which has the vehicle and the destination as its foci.
+The tree is rooted at the destination rather than the vehicle, so it stays valid as the vehicle moves
+and is kept between calls. Each call only adds to it, and the vehicle is joined to the best vertex it
+can see. When tiles change, the vertices whose edge to their parent now crosses an obstacle are removed,
+with everything below them. Edges are never longer than STEP, so only vertices near the changed tiles
+need checking. The tree is started again if the destination or the size of the grid changes.
+Vertices are found through a spatial hash, a grid of cells each listing the vertices in it.
+Edges are straight lines between tile centres that may not cross an obstacle or cut the corner of one,
+as GridSearch.lineClear() checks for the any-angle navigators.
+The first path is searched for until found, for at most MAX_SAMPLES samples or the time budget (see
+AnytimeNavigator), after which null is returned and the next call carries on with the same tree. If the
+tree reaches MAX_VERTICES without a path it is started again. A path once found is improved for
+REFINE_SAMPLES samples, or until the time budget runs out.
+http://arxiv.org/abs/1404.2334 */
+public class InformedRRTStar implements AnytimeNavigator, IncrementalNavigator, Seedable{
+	private static final double STEP = 6.0;				//The furthest a new vertex is from the tree, and the
+														// largest rewiring radius, in tiles
+	private static final double START_BIAS = 0.1;		//Fraction of samples at the vehicle, which the tree grows towards
+	private static final int MAX_SAMPLES = 100000;		//How many samples to look for a first path for
+	private static final int REFINE_SAMPLES = 2000;		//How many samples to improve a path with, without a budget
+	private static final int MAX_VERTICES = 200000;		//The most vertices the tree may have
+	private static final int MAX_CELLS = 4096;			//Roughly the most cells the spatial hash has
+	private static final int CHECK_INTERVAL = 256;		//How many samples between checks for an interrupt
+	private static final double INF = Double.MAX_VALUE;
+
+	private SplittableRandom random;		//Chooses the sample points, replaced by the run's own stream
+	private GridView grid;					//The grid being searched, with the destination cleared
+	private int sizeX;						//The size of the grid the tree was made for
+	private int sizeY;
+	private int rootX;						//The destination the tree is rooted at
+	private int rootY;
+	private double gamma;					//Scales the rewiring radius to the size of the grid
+	private long gridVersion;				//The version of the grid the tree matches, -1 for none
+	private int[] changedTiles;				//The tiles changed before the next call, see tilesChanged()
+	private long changedVersion;			//The grid version changedTiles lead up to
+
+	//The tree. Vertex i is on tile (xs[i],ys[i]), and its path to the destination goes through parent[i]
+	// and is cost[i] tiles long. Its children are firstChild[i] and their nextSibling chain. Removed
+	// vertices are not alive, and their slots are reused.
+	private int[] xs;
+	private int[] ys;
+	private int[] parent;
+	private double[] cost;
+	private int[] firstChild;
+	private int[] nextSibling;
+	private boolean[] alive;
+	private int used;						//How many slots have been used
+	private int vertices;					//How many vertices are alive
+	private int[] free;						//Slots of removed vertices
+	private int freeCount;
+	private int[] vertexAt;					//The vertex on each tile, x*sizeY + y, or -1
+
+	//The spatial hash. The vertices in cell (cx,cy) are cellHead[cx*cellsY + cy] and its nextInCell chain
+	private int cellSize;					//The width of a cell, in tiles
+	private int cellsX;
+	private int cellsY;
+	private int[] cellHead;
+	private int[] nextInCell;
+
+	private int[] found;					//The vertices found by near()
+	private int foundCount;
+	private int[] stack;					//Used to walk subtrees
+
+	public InformedRRTStar(){
+		random = new SplittableRandom();
+		sizeX = 0;
+		sizeY = 0;
+		gridVersion = -1;
+		changedTiles = null;
+		changedVersion = -1;
+		found = new int[64];
+		stack = new int[64];
+	}
+
+	@Override
+	public void setRandom(SplittableRandom random){
+		this.random = random;
+	}
+
+	@Override
+	public String getName(){
+		return "InformedRRTStar";
+	}
+
+
+	/*Given a 2D grid containing obstacle information:
+	0 = no obstacle
+	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+	this function returns the list of nodes (in order) to be traversed to reach the goal
+	destination from the start point.
+
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
+
+	If a path is unable to be found, this function should return null. */
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle){
+		return calculatePath(grid, startTileX, startTileY, destTileX, destTileY, startAngle, 0);
+	}
+
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle, long budget){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+
+		long deadline = (budget > 0) ? System.nanoTime() + budget : Long.MAX_VALUE;
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		prepare(grid, destTileX, destTileY);
+
+		//Grow the tree until the vehicle can join it, then improve the path
+		int join = joinStart(startTileX, startTileY);
+		double best = (join < 0) ? INF : joinCost(join, startTileX, startTileY);
+		int samples = 0;
+		int refined = 0;
+		while (true){
+			if (budget > 0 && System.nanoTime() > deadline) break;		//the kept tree lets the next call carry on
+			if (best < INF){
+				if (budget <= 0 && refined >= REFINE_SAMPLES) break;
+				refined++;
+			} else if (samples >= MAX_SAMPLES){
+				break;
+			}
+			if (vertices >= MAX_VERTICES){
+				if (best < INF) break;
+				//Full without reaching the vehicle, so the tree is no use to keep
+				System.out.println("Tree is full without a path, starting again.");
+				reset(sizeX, sizeY, rootX, rootY);
+			}
+
+			//Give up if the run has been ended, and check whether the path has improved
+			if (++samples % CHECK_INTERVAL == 0){
+				if (Thread.currentThread().isInterrupted()) return null;
+				join = joinStart(startTileX, startTileY);
+				best = (join < 0) ? INF : joinCost(join, startTileX, startTileY);
+			}
+
+			//Determine a 'random' point in space, sometimes the vehicle, and only where it would help
+			// once there is a path
+			double sx;
+			double sy;
+			if (best < INF){
+				double[] p = sampleEllipse(startTileX, startTileY, best);
+				sx = p[0];
+				sy = p[1];
+			} else if (random.nextDouble() < START_BIAS){
+				sx = startTileX;
+				sy = startTileY;
+			} else {
+				sx = random.nextDouble() * sizeX - 0.5;
+				sy = random.nextDouble() * sizeY - 0.5;
+			}
+			int v = extend(sx, sy);
+			if (v < 0) continue;
+
+			//A vertex near the vehicle may give it a shorter path
+			double dx = xs[v] - startTileX;
+			double dy = ys[v] - startTileY;
+			if (dx*dx + dy*dy <= STEP*STEP){
+				join = joinStart(startTileX, startTileY);
+				best = (join < 0) ? INF : joinCost(join, startTileX, startTileY);
+			}
+		}
+
+		join = joinStart(startTileX, startTileY);
+		if (join < 0){
+			System.out.println("No path found after " + samples + " samples.");
+			return null;
+		}
+
+		//Progress up through the parents to the destination
+		for (int v = join; v >= 0; v = parent[v]){
+			if (xs[v] == startTileX && ys[v] == startTileY) continue;
+			returnList.add(new GridSearch.PathNode(xs[v], ys[v]));
+		}
+		return returnList;
+	}
+
+	/* Adds a vertex towards (sx,sy) from the nearest vertex, at most STEP away, with the parent that gives
+	it the shortest path, and rewires its neighbours through it where that is shorter. Returns the new
+	vertex, or -1 if none was added. */
+	private int extend(double sx, double sy){
+		int nearest = nearest(sx, sy);
+		double dx = sx - xs[nearest];
+		double dy = sy - ys[nearest];
+		double dist = Math.sqrt(dx*dx + dy*dy);
+		if (dist > STEP){
+			dx *= STEP / dist;
+			dy *= STEP / dist;
+		}
+		int x = (int)Math.round(xs[nearest] + dx);
+		int y = (int)Math.round(ys[nearest] + dy);
+		if (!GridSearch.isFree(grid, x, y) || vertexAt[x*sizeY + y] >= 0) return -1;
+		if (!GridSearch.lineClear(grid, x, y, xs[nearest], ys[nearest])) return -1;
+
+		//Choose the best parent in the radius
+		near(x, y, radius());
+		int best = nearest;
+		double bestCost = cost[nearest] + distance(x, y, nearest);
+		for (int i=0; i<foundCount; i++){
+			int m = found[i];
+			double c = cost[m] + distance(x, y, m);
+			if (c < bestCost && GridSearch.lineClear(grid, x, y, xs[m], ys[m])){
+				best = m;
+				bestCost = c;
+			}
+		}
+		int v = addVertex(x, y, best, bestCost);
+
+		//Rewire the neighbours that are shorter through it. Only vertices further from the destination
+		// can be, so this never makes a loop
+		for (int i=0; i<foundCount; i++){
+			int m = found[i];
+			if (m == best) continue;
+			double c = bestCost + distance(x, y, m);
+			if (c < cost[m] - 1e-9 && GridSearch.lineClear(grid, xs[m], ys[m], x, y)){
+				setParent(m, v, c);
+			}
+		}
+		return v;
+	}
+
+	/* The vertex the vehicle at (x,y) can see, within STEP, that gives it the shortest path, or -1. */
+	private int joinStart(int x, int y){
+		near(x, y, STEP);
+		int best = -1;
+		double bestCost = INF;
+		for (int i=0; i<foundCount; i++){
+			int m = found[i];
+			double c = joinCost(m, x, y);
+			if (c < bestCost && GridSearch.lineClear(grid, x, y, xs[m], ys[m])){
+				best = m;
+				bestCost = c;
+			}
+		}
+		return best;
+	}
+
+	/* The length of the path from (x,y) to the destination through vertex v. */
+	private double joinCost(int v, int x, int y){
+		return cost[v] + distance(x, y, v);
+	}
+
+	/* A point from the ellipse of points whose straight line distance from the vehicle plus that to the
+	destination is less than length, which are the only ones that could give a shorter path. */
+	private double[] sampleEllipse(int startX, int startY, double length){
+		double minLength = Math.hypot(rootX - startX, rootY - startY);
+		double a = length / 2;
+		double b = Math.sqrt(Math.max(0, length*length - minLength*minLength)) / 2;
+		double angle = Math.atan2(rootY - startY, rootX - startX);
+		double r = Math.sqrt(random.nextDouble());			//Uniform over a unit disc
+		double t = 2*Math.PI*random.nextDouble();
+		double ex = a * r * Math.cos(t);
+		double ey = b * r * Math.sin(t);
+		return new double[]{
+				(startX + rootX) / 2.0 + ex*Math.cos(angle) - ey*Math.sin(angle),
+				(startY + rootY) / 2.0 + ex*Math.sin(angle) + ey*Math.cos(angle)};
+	}
+
+	/* The rewiring radius, which shrinks as the tree grows, as in RRT*. */
+	private double radius(){
+		double n = Math.max(2, vertices);
+		return Math.max(1.5, Math.min(STEP, gamma * Math.sqrt(Math.log(n) / n)));
+	}
+
+	/********************************************
+	* Keeping the tree between calls			*
+	*********************************************/
+
+	/* Makes the tree fit the grid and destination, removing what the changed tiles have cut off, or
+	starting again if the changes are not known. */
+	private void prepare(GridView grid, int destTileX, int destTileY){
+		this.grid = grid.withTile(destTileX, destTileY, 0);		//If the destination is obstructed we never find an answer
+		boolean same = gridVersion >= 0 && grid.getSizeX() == sizeX && grid.getSizeY() == sizeY
+						&& destTileX == rootX && destTileY == rootY;
+		if (!same){
+			reset(grid.getSizeX(), grid.getSizeY(), destTileX, destTileY);
+		} else if (grid.getVersion() != gridVersion){
+			if (changedTiles != null && changedVersion == grid.getVersion()){
+				for (int t : changedTiles){
+					prune(t / sizeY, t % sizeY);
+				}
+			} else {
+				reset(sizeX, sizeY, destTileX, destTileY);
+			}
+		}
+		gridVersion = grid.getVersion();
+		changedTiles = null;
+	}
+
+	/* Removes the vertices near an obstructed tile whose edge to their parent now crosses an obstacle,
+	with everything below them. */
+	private void prune(int x, int y){
+		if (GridSearch.isFree(grid, x, y)) return;
+		near(x, y, STEP + 1);
+		for (int i=0; i<foundCount; i++){
+			int m = found[i];
+			if (!alive[m]) continue;		//Already removed below another
+			int p = parent[m];
+			if (!GridSearch.isFree(grid, xs[m], ys[m]) || (p >= 0 && !GridSearch.lineClear(grid, xs[m], ys[m], xs[p], ys[p]))){
+				removeSubtree(m);
+			}
+		}
+	}
+
+	/* Records the tiles that changed, to be applied on the next call. */
+	@Override
+	public void tilesChanged(GridView grid, int[] tiles){
+		changedTiles = tiles;
+		changedVersion = grid.getVersion();
+	}
+
+	@Override
+	public long getGridVersion(){
+		return gridVersion;
+	}
+
+	/* Starts a new tree with only the destination, making the arrays fit the grid. */
+	private void reset(int sizeX, int sizeY, int destTileX, int destTileY){
+		int tiles = sizeX * sizeY;
+		if (vertexAt == null || vertexAt.length != tiles){
+			vertexAt = null;				//let the old array go before making the new one
+			vertexAt = new int[tiles];
+		}
+		Arrays.fill(vertexAt, -1);
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		rootX = destTileX;
+		rootY = destTileY;
+		gamma = 2*Math.sqrt(1.5 * tiles / Math.PI);
+
+		cellSize = Math.max((int)Math.ceil(STEP), (int)Math.ceil(Math.sqrt((double)tiles / MAX_CELLS)));
+		cellsX = (sizeX + cellSize - 1) / cellSize;
+		cellsY = (sizeY + cellSize - 1) / cellSize;
+		cellHead = new int[cellsX * cellsY];
+		Arrays.fill(cellHead, -1);
+
+		int capacity = 1024;
+		xs = new int[capacity];
+		ys = new int[capacity];
+		parent = new int[capacity];
+		cost = new double[capacity];
+		firstChild = new int[capacity];
+		nextSibling = new int[capacity];
+		nextInCell = new int[capacity];
+		alive = new boolean[capacity];
+		free = new int[capacity];
+		used = 0;
+		vertices = 0;
+		freeCount = 0;
+		addVertex(destTileX, destTileY, -1, 0);
+	}
+
+	/********************************************
+	* Tree operations							*
+	*********************************************/
+
+	/* Adds a vertex below parent p, cost tiles from the destination, and returns it. */
+	private int addVertex(int x, int y, int p, double c){
+		int v;
+		if (freeCount > 0){
+			v = free[--freeCount];
+		} else {
+			if (used == xs.length){
+				int size = 2 * used;
+				xs = Arrays.copyOf(xs, size);
+				ys = Arrays.copyOf(ys, size);
+				parent = Arrays.copyOf(parent, size);
+				cost = Arrays.copyOf(cost, size);
+				firstChild = Arrays.copyOf(firstChild, size);
+				nextSibling = Arrays.copyOf(nextSibling, size);
+				nextInCell = Arrays.copyOf(nextInCell, size);
+				alive = Arrays.copyOf(alive, size);
+				free = Arrays.copyOf(free, size);
+			}
+			v = used++;
+		}
+		xs[v] = x;
+		ys[v] = y;
+		cost[v] = c;
+		firstChild[v] = -1;
+		nextSibling[v] = -1;
+		alive[v] = true;
+		vertices++;
+		vertexAt[x*sizeY + y] = v;
+		int cell = cellOf(x, y);
+		nextInCell[v] = cellHead[cell];
+		cellHead[cell] = v;
+		parent[v] = -1;
+		if (p >= 0) link(v, p);
+		return v;
+	}
+
+	/* Moves vertex v below p, which gives it a path c tiles long, and updates everything below it. */
+	private void setParent(int v, int p, double c){
+		unlink(v);
+		link(v, p);
+		double change = c - cost[v];
+		int top = 0;
+		stack[top++] = v;
+		while (top > 0){
+			int u = stack[--top];
+			cost[u] += change;
+			for (int ch = firstChild[u]; ch >= 0; ch = nextSibling[ch]){
+				stack = ensure(stack, top + 1);
+				stack[top++] = ch;
+			}
+		}
+	}
+
+	/* Removes vertex v and everything below it from the tree. */
+	private void removeSubtree(int v){
+		unlink(v);
+		int top = 0;
+		stack[top++] = v;
+		while (top > 0){
+			int u = stack[--top];
+			for (int ch = firstChild[u]; ch >= 0; ch = nextSibling[ch]){
+				stack = ensure(stack, top + 1);
+				stack[top++] = ch;
+			}
+
+			//Take it out of its cell
+			int cell = cellOf(xs[u], ys[u]);
+			if (cellHead[cell] == u){
+				cellHead[cell] = nextInCell[u];
+			} else {
+				int prev = cellHead[cell];
+				while (nextInCell[prev] != u){
+					prev = nextInCell[prev];
+				}
+				nextInCell[prev] = nextInCell[u];
+			}
+			vertexAt[xs[u]*sizeY + ys[u]] = -1;
+			alive[u] = false;
+			vertices--;
+			free[freeCount++] = u;
+		}
+	}
+
+	/* Makes v a child of p. */
+	private void link(int v, int p){
+		parent[v] = p;
+		nextSibling[v] = firstChild[p];
+		firstChild[p] = v;
+	}
+
+	/* Takes v out of its parent's children. */
+	private void unlink(int v){
+		int p = parent[v];
+		if (p < 0) return;
+		if (firstChild[p] == v){
+			firstChild[p] = nextSibling[v];
+		} else {
+			int prev = firstChild[p];
+			while (nextSibling[prev] != v){
+				prev = nextSibling[prev];
+			}
+			nextSibling[prev] = nextSibling[v];
+		}
+		parent[v] = -1;
+		nextSibling[v] = -1;
+	}
+
+	/********************************************
+	* Spatial hash								*
+	*********************************************/
+
+	/* The cell of the spatial hash a tile is in. */
+	private int cellOf(int x, int y){
+		return (x / cellSize) * cellsY + y / cellSize;
+	}
+
+	/* Finds the vertices within r tiles of (x,y), into found. */
+	private void near(double x, double y, double r){
+		foundCount = 0;
+		int minX = Math.max(0, (int)Math.floor((x - r) / cellSize));
+		int maxX = Math.min(cellsX - 1, (int)Math.floor((x + r) / cellSize));
+		int minY = Math.max(0, (int)Math.floor((y - r) / cellSize));
+		int maxY = Math.min(cellsY - 1, (int)Math.floor((y + r) / cellSize));
+		for (int cx = minX; cx <= maxX; cx++){
+			for (int cy = minY; cy <= maxY; cy++){
+				for (int m = cellHead[cx*cellsY + cy]; m >= 0; m = nextInCell[m]){
+					double dx = xs[m] - x;
+					double dy = ys[m] - y;
+					if (dx*dx + dy*dy <= r*r){
+						found = ensure(found, foundCount + 1);
+						found[foundCount++] = m;
+					}
+				}
+			}
+		}
+	}
+
+	/* The vertex nearest to (x,y). The cells are searched in rings outwards from the one (x,y) is in,
+	until no further ring could hold anything nearer. Of vertices the same distance away, the lowest
+	numbered is taken, so the result does not depend on the order of the cells' lists. */
+	private int nearest(double x, double y){
+		int cx = Math.max(0, Math.min(cellsX - 1, (int)Math.floor(x / cellSize)));
+		int cy = Math.max(0, Math.min(cellsY - 1, (int)Math.floor(y / cellSize)));
+		int best = -1;
+		double bestDist = INF;
+		int rings = Math.max(cellsX, cellsY);
+		for (int k=0; k<=rings; k++){
+			//Anything in this ring or beyond is at least (k-1) cells away
+			double reach = (k - 1) * (double)cellSize;
+			if (best >= 0 && k > 0 && reach*reach > bestDist) break;
+			for (int i = cx - k; i <= cx + k; i++){
+				if (i < 0 || i >= cellsX) continue;
+				boolean edge = (i == cx - k || i == cx + k);
+				for (int j = cy - k; j <= cy + k; j += edge ? 1 : 2*k){
+					if (j >= 0 && j < cellsY){
+						for (int m = cellHead[i*cellsY + j]; m >= 0; m = nextInCell[m]){
+							double dx = xs[m] - x;
+							double dy = ys[m] - y;
+							double d = dx*dx + dy*dy;
+							if (d < bestDist || (d == bestDist && m < best)){
+								best = m;
+								bestDist = d;
+							}
+						}
+					}
+					if (k == 0) break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/********************************************
+	* Helpers									*
+	*********************************************/
+
+	/* The straight line distance from (x,y) to vertex v, in tiles. */
+	private double distance(int x, int y, int v){
+		return Math.hypot(xs[v] - x, ys[v] - y);
+	}
+
+	/* Returns the array, or a larger copy if it cannot hold size values. */
+	private static int[] ensure(int[] array, int size){
+		return (size <= array.length) ? array : Arrays.copyOf(array, Math.max(size, 2*array.length));
+	}
+}
@@ -0,0 +1,365 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import simulator.interfaces.GridView;
+import simulator.interfaces.IncrementalNavigator;
+import simulator.interfaces.NavigatorNode;
+
+/* Jump Point Search, an A* for grids where every move onto a free tile costs the same. Instead of
+opening each neighbour, it scans in a straight line or diagonal until it reaches a tile where the
+best path could turn (a jump point), and only opens that. Open floor is crossed without opening the
+tiles in between, so far fewer nodes go through the open list than with A*.
+Like AStarC, diagonal moves may not cut the corner of an obstacle. Moving straight costs 10 and
+diagonally 14, and the heuristic is the octile distance, so the paths are the shortest possible. The
+path returned has every tile along it, not only the jump points.
+The obstacles are kept as bits, by row and by column, so a straight scan checks 64 tiles at a time.
+The bits are kept between calls and only the tiles the map says have changed are updated.
+http://users.cecs.anu.edu.au/~dharabor/data/papers/harabor-grastien-aaai11.pdf */
+public class JumpPointSearch implements IncrementalNavigator{
+	private static final int NO_PARENT = -1;
+	private static final int OFF_MAP = -1;			//The line beside the edge of the map, which is all obstacles
+
+	private int sizeX;					//The size of the grid the arrays were made for
+	private int sizeY;
+	private int destTileX;				//Where the search is going
+	private int destTileY;
+
+	//The obstacles, a bit per tile set if it holds an obstacle. Bits past the end of a line are set, so
+	// a scan stops at the edge of the map.
+	private long[] rows;				//By row, tile (x,y) is bit x of the wordsX words from y*wordsX
+	private long[] cols;				//By column, tile (x,y) is bit y of the wordsY words from x*wordsY
+	private int wordsX;					//The words in each row
+	private int wordsY;					//The words in each column
+	private long gridVersion;			//The version of the grid the bits hold, -1 before the first call
+	private int[] changedTiles;			//The tiles changed since gridVersion, null if unknown
+	private long changedVersion;		//The version the changed tiles lead to
+
+	private int[] distance;				//The distance of each tile from the start
+	private int[] parent;				//The jump point each tile was reached from, NO_PARENT for the start
+	private int[] visited;				//2*generation once a tile is reached, 2*generation+1 once closed
+	private int generation;				//Increases with each search
+	private IndexedHeap openList;		//Jump points that need checking, by estimate and then by order added
+
+	public JumpPointSearch(){
+		sizeX = 0;
+		sizeY = 0;
+		gridVersion = -1;
+		changedTiles = null;
+		changedVersion = -1;
+		generation = 0;
+		openList = new IndexedHeap(0);
+	}
+
+	@Override
+	public String getName(){
+		return "JumpPointSearch";
+	}
+
+
+	/*Given a 2D grid containing obstacle information:
+	0 = no obstacle
+	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+	this function returns the list of nodes (in order) to be traversed to reach the goal
+	destination from the start point.
+
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
+
+	If a path is unable to be found, this function should return null. */
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		updateObstacles(grid);
+		prepare();
+		this.destTileX = destTileX;
+		this.destTileY = destTileY;
+
+		//If the destination is obstructed we never find an answer, so clear it for this search
+		boolean destBlocked = isBlocked(destTileX, destTileY);
+		setBlocked(destTileX, destTileY, false);
+		try {
+			//Initialise first point
+			int start = startTileX*sizeY + startTileY;
+			int reached = 2*generation;			//Stamps for reached and closed tiles
+			int closed = reached + 1;
+			distance[start] = 0;
+			parent[start] = NO_PARENT;
+			visited[start] = reached;
+			int sequence = 0;					//Breaks ties in the order tiles were added
+			openList.add(start, GridSearch.key(heuristic(startTileX, startTileY), sequence++));
+
+			//Begin search
+			while (!openList.isEmpty()){
+				//Give up if the run has been ended
+				if (Thread.currentThread().isInterrupted()) return null;
+
+				//Take the most suitable jump point and close it
+				int chosen = openList.poll();
+				visited[chosen] = closed;
+				int x = chosen / sizeY;
+				int y = chosen % sizeY;
+
+				//Check if we've reached the destination
+				if (x == destTileX && y == destTileY){
+					//Progress back up through the jump points, filling in the tiles between them
+					for (int n = chosen; n != start; n = parent[n]){
+						int px = parent[n] / sizeY;
+						int py = parent[n] % sizeY;
+						int stepX = Integer.signum(px - n / sizeY);
+						int stepY = Integer.signum(py - n % sizeY);
+						for (int tx = n / sizeY, ty = n % sizeY; tx != px || ty != py; tx += stepX, ty += stepY){
+							returnList.addFirst(new GridSearch.PathNode(tx, ty));
+						}
+					}
+					return returnList;
+				}
+
+				//Jump in each direction the best path could carry on in, and open the jump points found
+				int dirX = 0;
+				int dirY = 0;
+				if (parent[chosen] != NO_PARENT){
+					dirX = Integer.signum(x - parent[chosen] / sizeY);
+					dirY = Integer.signum(y - parent[chosen] % sizeY);
+				}
+				for (int d=0; d<8; d++){
+					int dx = GridSearch.DX[d];
+					int dy = GridSearch.DY[d];
+					if (!isNeighbour(x, y, dirX, dirY, dx, dy)) continue;
+
+					int jumpPoint = jump(x, y, dx, dy);
+					if (jumpPoint == -1 || visited[jumpPoint] == closed) continue;
+					int jx = jumpPoint / sizeY;
+					int jy = jumpPoint % sizeY;
+					int dist = distance[chosen] + GridSearch.octile(Math.abs(jx - x), Math.abs(jy - y));
+					if (visited[jumpPoint] == reached && dist >= distance[jumpPoint]) continue;
+
+					distance[jumpPoint] = dist;
+					parent[jumpPoint] = chosen;
+					visited[jumpPoint] = reached;
+					openList.add(jumpPoint, GridSearch.key(dist + heuristic(jx, jy), sequence++));
+				}
+			}
+
+			//The open list is empty, so we cannot find a solution
+			return null;
+		} finally {
+			setBlocked(destTileX, destTileY, destBlocked);
+		}
+	}
+
+	/* Records the tiles that changed, to be applied on the next call. */
+	@Override
+	public void tilesChanged(GridView grid, int[] tiles){
+		changedTiles = tiles;
+		changedVersion = grid.getVersion();
+	}
+
+	@Override
+	public long getGridVersion(){
+		return gridVersion;
+	}
+
+	/* Whether the best path through (x,y), reached moving in (dirX,dirY) (0,0 for the start), could
+	carry on in direction (dx,dy). Directions that a path not through (x,y) could reach as cheaply are
+	pruned. Diagonals need both tiles beside them to be free. */
+	private boolean isNeighbour(int x, int y, int dirX, int dirY, int dx, int dy){
+		boolean diagonal = dx != 0 && dy != 0;
+		if (diagonal && (!isFree(x + dx, y) || !isFree(x, y + dy))) return false;
+		if (!isFree(x + dx, y + dy)) return false;
+
+		//The start can go anywhere
+		if (dirX == 0 && dirY == 0) return true;
+
+		//Moving diagonally, carry on diagonally or along either of its parts
+		if (dirX != 0 && dirY != 0){
+			return (dx == dirX && dy == dirY) || (dx == dirX && dy == 0) || (dx == 0 && dy == dirY);
+		}
+
+		//Moving straight, carry on, or turn to either side, or diagonally forward to either side
+		if (dirX != 0){
+			return dx != -dirX && !(dx == 0 && dy == 0);
+		}
+		return dy != -dirY && !(dx == 0 && dy == 0);
+	}
+
+	/* Moves from (x,y) in direction (dx,dy) until a jump point is found. Returns the jump point, or -1
+	if an obstacle or the edge of the map is reached first. */
+	private int jump(int x, int y, int dx, int dy){
+		if (dx == 0 || dy == 0){
+			return jumpStraight(x, y, dx, dy);
+		}
+		while (true){
+			if (!isFree(x + dx, y) || !isFree(x, y + dy)) return -1;
+			x += dx;
+			y += dy;
+			if (!isFree(x, y)) return -1;
+			if (x == destTileX && y == destTileY) return x*sizeY + y;
+
+			//A tile is a jump point if a straight line from it reaches one
+			if (jumpStraight(x, y, dx, 0) != -1 || jumpStraight(x, y, 0, dy) != -1) return x*sizeY + y;
+		}
+	}
+
+	/* Moves from (x,y) horizontally or vertically until a jump point is found. A tile is a jump point
+	if a tile beside it is free but the one behind that is not, as the best path to the free tile may
+	then turn here. */
+	private int jumpStraight(int x, int y, int dx, int dy){
+		if (dx != 0){
+			int goal = (y == destTileY) ? destTileX : -1;
+			int found = scan(rows, wordsX, y*wordsX, lineOffset(y - 1, sizeY, wordsX),
+							lineOffset(y + 1, sizeY, wordsX), x, dx, goal);
+			return (found == -1) ? -1 : found*sizeY + y;
+		}
+		int goal = (x == destTileX) ? destTileY : -1;
+		int found = scan(cols, wordsY, x*wordsY, lineOffset(x - 1, sizeX, wordsY),
+						lineOffset(x + 1, sizeX, wordsY), y, dy, goal);
+		return (found == -1) ? -1 : x*sizeY + found;
+	}
+
+	/* Scans along a line of bits from position p in direction step (1 or -1), a word at a time, for the
+	first position that is an obstacle, the goal (-1 for none), or free with an obstacle behind it in
+	either line beside this one. Returns that position, or -1 if it is an obstacle. The lines are given
+	as the offset of their first word, and a line beside may be OFF_MAP. */
+	private static int scan(long[] bits, int words, int line, int side1, int side2, int p, int step, int goal){
+		if (step > 0){
+			long mask = -1L << ((p + 1) & 63);		//Only look past p
+			for (int w = (p + 1) >> 6; w < words; w++){
+				long stop = bits[line + w] | forwardCorners(bits, side1, w) | forwardCorners(bits, side2, w);
+				if (goal >> 6 == w) stop |= 1L << goal;
+				stop &= mask;
+				mask = -1L;
+				if (stop != 0){
+					int found = (w << 6) + Long.numberOfTrailingZeros(stop);
+					return ((bits[line + w] >>> found) & 1) != 0 ? -1 : found;
+				}
+			}
+		} else {
+			long mask = -1L >>> (63 - ((p - 1) & 63));	//Only look before p
+			for (int w = (p - 1) >> 6; w >= 0; w--){
+				long stop = bits[line + w] | backwardCorners(bits, words, side1, w) | backwardCorners(bits, words, side2, w);
+				if (goal >= 0 && goal >> 6 == w) stop |= 1L << goal;
+				stop &= mask;
+				mask = -1L;
+				if (stop != 0){
+					int found = (w << 6) + 63 - Long.numberOfLeadingZeros(stop);
+					return ((bits[line + w] >>> found) & 1) != 0 ? -1 : found;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/* The positions in word w of a line that are free, where the position before is an obstacle. */
+	private static long forwardCorners(long[] bits, int line, int w){
+		if (line == OFF_MAP) return 0;
+		long word = bits[line + w];
+		long before = (w > 0) ? bits[line + w - 1] : -1L;
+		return ~word & ((word << 1) | (before >>> 63));
+	}
+
+	/* The positions in word w of a line that are free, where the position after is an obstacle. */
+	private static long backwardCorners(long[] bits, int words, int line, int w){
+		if (line == OFF_MAP) return 0;
+		long word = bits[line + w];
+		long after = (w + 1 < words) ? bits[line + w + 1] : -1L;
+		return ~word & ((word >>> 1) | (after << 63));
+	}
+
+	/* The offset of the first word of line i, or OFF_MAP if there is no such line. */
+	private static int lineOffset(int i, int lines, int words){
+		return (i < 0 || i >= lines) ? OFF_MAP : i*words;
+	}
+
+	/* Whether (x,y) is in the map and not obstructed. */
+	private boolean isFree(int x, int y){
+		return x >= 0 && x < sizeX && y >= 0 && y < sizeY && !isBlocked(x, y);
+	}
+	private boolean isBlocked(int x, int y){
+		return (rows[y*wordsX + (x >> 6)] & (1L << x)) != 0;
+	}
+	private void setBlocked(int x, int y, boolean b){
+		if (b){
+			rows[y*wordsX + (x >> 6)] |= 1L << x;
+			cols[x*wordsY + (y >> 6)] |= 1L << y;
+		} else {
+			rows[y*wordsX + (x >> 6)] &= ~(1L << x);
+			cols[x*wordsY + (y >> 6)] &= ~(1L << y);
+		}
+	}
+
+	/* Brings the obstacle bits up to date with the grid, applying only the changed tiles if they are
+	known, otherwise reading the whole grid. */
+	private void updateObstacles(GridView grid){
+		if (grid.getVersion() == gridVersion && grid.getSizeX() == sizeX && grid.getSizeY() == sizeY) return;
+
+		if (changedTiles != null && changedVersion == grid.getVersion() && gridVersion >= 0 &&
+				grid.getSizeX() == sizeX && grid.getSizeY() == sizeY){
+			for (int t : changedTiles){
+				int x = t / sizeY;
+				int y = t % sizeY;
+				setBlocked(x, y, grid.get(x, y) > 0);
+			}
+		} else {
+			sizeX = grid.getSizeX();
+			sizeY = grid.getSizeY();
+			wordsX = (sizeX >> 6) + 1;		//Always room for at least one bit past the end
+			wordsY = (sizeY >> 6) + 1;
+			if (rows == null || rows.length != sizeY*wordsX || cols.length != sizeX*wordsY){
+				rows = new long[sizeY*wordsX];
+				cols = new long[sizeX*wordsY];
+			}
+			Arrays.fill(rows, 0);
+			Arrays.fill(cols, 0);
+			for (int y=0; y<sizeY; y++){
+				rows[y*wordsX + wordsX - 1] = -1L << (sizeX & 63);
+			}
+			for (int x=0; x<sizeX; x++){
+				cols[x*wordsY + wordsY - 1] = -1L << (sizeY & 63);
+				for (int y=0; y<sizeY; y++){
+					if (grid.get(x, y) > 0) setBlocked(x, y, true);
+				}
+			}
+		}
+		gridVersion = grid.getVersion();
+		changedTiles = null;
+	}
+
+	/* The estimated distance to the destination (octile). */
+	private int heuristic(int x, int y){
+		return GridSearch.octile(Math.abs(x - destTileX), Math.abs(y - destTileY));
+	}
+
+	/* Makes the search arrays fit the grid, and starts a new generation. */
+	private void prepare(){
+		int tiles = sizeX * sizeY;
+		if (distance == null || distance.length < tiles){
+			distance = null;				//let the old arrays go before making the new ones
+			parent = null;
+			visited = null;
+			distance = new int[tiles];
+			parent = new int[tiles];
+			visited = new int[tiles];
+			generation = 0;
+		}
+		if (generation == Integer.MAX_VALUE/2){
+			Arrays.fill(visited, 0);
+			generation = 0;
+		}
+		generation++;
+		openList.ensureCapacity(tiles);
+		openList.clear();
+	}
+}
@@ -0,0 +1,267 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import simulator.interfaces.GridView;
+import simulator.interfaces.Navigator;
+import simulator.interfaces.NavigatorNode;
+
+/* Lazy Theta*, an any-angle A*. A tile may take as its parent any tile it can see, not just a
+neighbour, so the path is made of straight lines at any angle and needs no smoothing afterwards. When a
+tile is opened it is given its neighbour's parent, on the assumption the parent can see it, and the
+line of sight is only checked once the tile is chosen. If the parent cannot see it, the tile falls back
+to the best closed neighbour, as in A*. This does one line of sight check per tile chosen rather than
+one per tile opened.
+Moves between neighbours are 8-connected and may not cut the corner of an obstacle, like AStarC.
+Distances are straight line, in tiles, and the heuristic is the straight line to the destination,
+weighted slightly so the search heads for the destination rather than checking every equal path.
+The returned path is the corners of the path only, as with the smoothing navigators.
+http://aigamedev.com/open/tutorial/lazy-theta-star/ */
+public class LazyThetaStar implements Navigator{
+	private static final double DIAGONAL = Math.sqrt(2);
+	private static final double KEY_SCALE = 1024.0;		//The precision of distances in the open list
+	private static final double HEURISTIC_WEIGHTING = 1.1;	//1 = same as dist, >1 means a tile that's closer to the end will
+															// be prioritised over a tile that's not far from the start
+
+	private double width;				//The width of the line that must be clear between a tile and its
+										// parent, in tiles, 0 for a thin line (see the W variants)
+	private GridView grid;				//The grid being searched
+	private int sizeX;					//The size of the grid the arrays were made for
+	private int sizeY;
+	private int destTileX;				//Where the search is going
+	private int destTileY;
+	private double[] distance;			//The length of the path to each tile from the start
+	private int[] parent;				//The tile each tile is reached from in a straight line
+	private int[] visited;				//2*generation once a tile is reached, 2*generation+1 once closed
+	private int generation;				//Increases with each search
+	private IndexedHeap openList;		//Tiles that need checking, by estimate and then by order added
+
+	public LazyThetaStar(){
+		this(0);
+	}
+
+	/* A search that needs a line width tiles wide to be clear between a tile and its parent. */
+	protected LazyThetaStar(double width){
+		this.width = width;
+		sizeX = 0;
+		sizeY = 0;
+		generation = 0;
+		openList = new IndexedHeap(0);
+	}
+
+	@Override
+	public String getName(){
+		return "LazyThetaStar";
+	}
+
+
+	/*Given a 2D grid containing obstacle information:
+	0 = no obstacle
+	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+	this function returns the list of nodes (in order) to be traversed to reach the goal
+	destination from the start point.
+
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
+
+	If a path is unable to be found, this function should return null. */
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+
+		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		this.grid = grid.withTile(destTileX, destTileY, 0);		//If the destination is obstructed we never find an answer
+		this.destTileX = destTileX;
+		this.destTileY = destTileY;
+		prepare(grid.getSizeX(), grid.getSizeY());
+
+		//Initialise first point, which is its own parent
+		int start = startTileX*sizeY + startTileY;
+		int reached = 2*generation;			//Stamps for reached and closed tiles
+		int closed = reached + 1;
+		distance[start] = 0;
+		parent[start] = start;
+		visited[start] = reached;
+		int sequence = 0;					//Breaks ties in the order tiles were added
+		openList.add(start, key(heuristic(startTileX, startTileY), sequence++));
+
+		//Begin search
+		while (!openList.isEmpty()){
+			//Give up if the run has been ended
+			if (Thread.currentThread().isInterrupted()) return null;
+
+			//Take the most suitable tile and close it
+			int chosen = openList.poll();
+			visited[chosen] = closed;
+			int x = chosen / sizeY;
+			int y = chosen % sizeY;
+
+			//Check the guess that its parent can see it, otherwise use the best closed neighbour
+			int p = parent[chosen];
+			if (!lineOfSight(p / sizeY, p % sizeY, x, y)){
+				distance[chosen] = Double.MAX_VALUE;
+				for (int d=0; d<8; d++){
+					int nx = x + GridSearch.DX[d];
+					int ny = y + GridSearch.DY[d];
+					if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) continue;
+					int n = nx*sizeY + ny;
+					if (visited[n] != closed) continue;
+					if (nx != x && ny != y && (!isFree(nx, y) || !isFree(x, ny))) continue;
+					double dist = distance[n] + ((nx != x && ny != y) ? DIAGONAL : 1);
+					if (dist < distance[chosen]){
+						distance[chosen] = dist;
+						parent[chosen] = n;
+					}
+				}
+			}
+
+			//Check if we've reached the destination
+			if (x == destTileX && y == destTileY){
+				//Progress back up through the parents
+				for (int n = chosen; n != start; n = parent[n]){
+					returnList.addFirst(new GridSearch.PathNode(n / sizeY, n % sizeY));
+				}
+				return returnList;
+			}
+
+			//Open the neighbours, guessing they can be reached straight from this tile's parent
+			p = parent[chosen];
+			int px = p / sizeY;
+			int py = p % sizeY;
+			for (int d=0; d<8; d++){
+				int nx = x + GridSearch.DX[d];
+				int ny = y + GridSearch.DY[d];
+				if (!canMove(x, y, nx, ny)) continue;
+				int n = nx*sizeY + ny;
+				if (visited[n] == closed) continue;
+
+				double dist = distance[p] + Math.hypot(nx - px, ny - py);
+				if (visited[n] == reached && dist >= distance[n]) continue;
+
+				distance[n] = dist;
+				parent[n] = p;
+				visited[n] = reached;
+				openList.add(n, key(dist + heuristic(nx, ny), sequence++));
+			}
+		}
+
+		//The open list is empty, so we cannot find a solution
+		return null;
+	}
+
+	/* Whether the vehicle can move from a tile to a free neighbour, without cutting the corner of an
+	obstacle. */
+	private boolean canMove(int fromX, int fromY, int toX, int toY){
+		if (!isFree(toX, toY)) return false;
+		if (fromX != toX && fromY != toY){
+			return isFree(toX, fromY) && isFree(fromX, toY);
+		}
+		return true;
+	}
+
+	/* Whether a straight line between the centres of two tiles crosses no obstacles. With a width, lines
+	either side are checked as well, as the W variants do. */
+	private boolean lineOfSight(int x0, int y0, int x1, int y1){
+		if (!GridSearch.lineClear(grid, x0, y0, x1, y1)) return false;
+		if (width <= 0 || (x0 == x1 && y0 == y1)) return true;
+
+		//Lines to the soft and hard left and right of the centre line
+		double len = Math.hypot(x1 - x0, y1 - y0);
+		double perpX = -(y1 - y0) / len;
+		double perpY = (x1 - x0) / len;
+		double[] offsets = {width/4.0, -width/4.0, width/2.0, -width/2.0};
+		for (double offset : offsets){
+			if (!sideLineClear(x0 + perpX*offset, y0 + perpY*offset, x1 + perpX*offset, y1 + perpY*offset)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* Walks every tile a line between two points passes through (tile (x,y) covers x-0.5 to x+0.5), and
+	returns whether none of the ones in the map hold an obstacle. */
+	private boolean sideLineClear(double x0, double y0, double x1, double y1){
+		//Move to coordinates where a tile is the floor of the position
+		x0 += 0.5;
+		y0 += 0.5;
+		x1 += 0.5;
+		y1 += 0.5;
+		int x = (int)Math.floor(x0);
+		int y = (int)Math.floor(y0);
+		int steps = Math.abs((int)Math.floor(x1) - x) + Math.abs((int)Math.floor(y1) - y);
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		int stepX = (dx > 0) ? 1 : -1;
+		int stepY = (dy > 0) ? 1 : -1;
+		double deltaX = (dx != 0) ? Math.abs(1 / dx) : Double.MAX_VALUE;	//How far along the line to cross a tile
+		double deltaY = (dy != 0) ? Math.abs(1 / dy) : Double.MAX_VALUE;
+		double nextX = (dx > 0) ? (x + 1 - x0) * deltaX : (dx < 0) ? (x0 - x) * deltaX : Double.MAX_VALUE;
+		double nextY = (dy > 0) ? (y + 1 - y0) * deltaY : (dy < 0) ? (y0 - y) * deltaY : Double.MAX_VALUE;
+
+		if (isObstacle(x, y)) return false;
+		for (int i=0; i<steps; i++){
+			if (nextX < nextY){
+				x += stepX;
+				nextX += deltaX;
+			} else {
+				y += stepY;
+				nextY += deltaY;
+			}
+			if (isObstacle(x, y)) return false;
+		}
+		return true;
+	}
+
+	/* Whether (x,y) is in the map and not obstructed. */
+	private boolean isFree(int x, int y){
+		return x >= 0 && x < sizeX && y >= 0 && y < sizeY && grid.get(x, y) <= 0;
+	}
+
+	/* Whether (x,y) is in the map and obstructed. */
+	private boolean isObstacle(int x, int y){
+		return x >= 0 && x < sizeX && y >= 0 && y < sizeY && grid.get(x, y) > 0;
+	}
+
+	/* The estimated distance to the destination (straight line, weighted). */
+	private double heuristic(int x, int y){
+		return HEURISTIC_WEIGHTING*Math.hypot(x - destTileX, y - destTileY);
+	}
+
+	/* The open list key, ordered by estimate and then by the order tiles were added. */
+	private static long key(double f, int sequence){
+		return ((long)(f * KEY_SCALE) << 32) | (sequence & 0xffffffffL);
+	}
+
+	/* Makes the arrays fit the grid, and starts a new generation. */
+	private void prepare(int sizeX, int sizeY){
+		int tiles = sizeX * sizeY;
+		if (distance == null || distance.length < tiles){
+			distance = null;				//let the old arrays go before making the new ones
+			parent = null;
+			visited = null;
+			distance = new double[tiles];
+			parent = new int[tiles];
+			visited = new int[tiles];
+			generation = 0;
+		}
+		if (generation == Integer.MAX_VALUE/2){
+			Arrays.fill(visited, 0);
+			generation = 0;
+		}
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		generation++;
+		openList.ensureCapacity(tiles);
+		openList.clear();
+	}
+}
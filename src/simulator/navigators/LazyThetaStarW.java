@@ -0,0 +1,20 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+/* Lazy Theta* with width inclusion: a tile only takes a parent if a line as wide as the vehicle is
+clear between them, as the W variants check when smoothing. See the README for details.*/
+public class LazyThetaStarW extends LazyThetaStar{
+	private static final double VEHICLE_WIDTH = 2.0;	//In tiles, the same as the W variants use
+
+	public LazyThetaStarW(){
+		super(VEHICLE_WIDTH);
+	}
+
+	@Override
+	public String getName(){
+		return "LazyThetaStarW";
+	}
+}
@@ -0,0 +1,284 @@
+/**This class is part of the Autonomous Navigation Simulator 2015,
+Written by Nick Sullivan, Adelaide Uni.
+*/
+
+package simulator.navigators;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import simulator.interfaces.AnytimeNavigator;
+import simulator.interfaces.GridView;
+import simulator.interfaces.IncrementalNavigator;
+import simulator.interfaces.Navigator;
+import simulator.interfaces.NavigatorNode;
+import simulator.interfaces.Seedable;
+
+/* Races several navigators on the same snapshot, each on its own thread, and returns one of their
+paths. Which navigator is best depends on the map: VectorField is instant in open space, DStarLite
+repairs its last path quickly when little has changed, and the A* variants cope with clutter.
+In FIRST mode the first valid path is returned and the others are cancelled. In BEST mode the shortest
+valid path is returned, once every navigator has finished or the time budget (see AnytimeNavigator) has
+run out, whichever is first. If no path has been found when the budget runs out it waits for the first
+one, as returning nothing would stop the vehicle. BEST without a budget does not depend on which thread
+finishes first, so runs are repeatable; FIRST is not.
+A path is valid if it is not empty, and the straight lines between its nodes cross no obstacles and cut no
+corners, apart from at the destination.
+Cancelled navigators are interrupted, which the searches check for. A navigator that is still finishing
+a cancelled search is waited for before it is used again, so each is only ever used by one thread.
+A navigator that throws is treated as having found no path.
+How many times each navigator's path was returned is counted, see getWins().
+The default members are DStarLite, JumpPointSearch and VectorField. */
+public class NavigatorPortfolio implements AnytimeNavigator, IncrementalNavigator, Seedable{
+
+	/* How a path is chosen from those found. */
+	public static enum Mode {
+		FIRST, BEST
+	}
+
+	//Shared by every portfolio, the threads are made as needed and end after a minute unused
+	private static final ExecutorService POOL = Executors.newCachedThreadPool(new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread t = new Thread(r, "Portfolio");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private Navigator[] members;		//The navigators raced, each locked while it is searching
+	private long[] memberVersions;		//The grid version each incremental member last planned on, or -1
+	private int[] wins;					//How many times each member's path was returned
+	private Mode mode;					//How a path is chosen
+	private int[] changedTiles;			//The tiles changed before the next call, see tilesChanged()
+	private long changedVersion;		//The grid version changedTiles lead up to
+
+	public NavigatorPortfolio(){
+		this(Mode.BEST, new DStarLite(), new JumpPointSearch(), new VectorField());
+	}
+
+	/* A portfolio of the given navigators, which should not be used by anything else. */
+	public NavigatorPortfolio(Mode mode, Navigator... members){
+		this.mode = mode;
+		this.members = members.clone();
+		memberVersions = new long[members.length];
+		for (int i=0; i<members.length; i++){
+			memberVersions[i] = -1;
+		}
+		wins = new int[members.length];
+		changedTiles = null;
+		changedVersion = -1;
+	}
+
+	@Override
+	public String getName(){
+		return "NavigatorPortfolio";
+	}
+
+
+	/*Given a 2D grid containing obstacle information:
+	0 = no obstacle
+	1+ = obstacle (the higher the value the more likely this object is to contain an obstacle),
+	this function returns the list of nodes (in order) to be traversed to reach the goal
+	destination from the start point.
+
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
+
+	If a path is unable to be found, this function should return null. */
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY,
+											int destTileX, int destTileY, double startAngle){
+		return calculatePath(grid, startTileX, startTileY, destTileX, destTileY, startAngle, 0);
+	}
+
+	@Override
+	public List<NavigatorNode> calculatePath(final GridView grid, final int startTileX, final int startTileY,
+											final int destTileX, final int destTileY, final double startAngle,
+											final long budget){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+
+		long deadline = (budget > 0) ? System.nanoTime() + budget : Long.MAX_VALUE;
+		final int[] tiles = (changedVersion == grid.getVersion()) ? changedTiles : null;
+		changedTiles = null;
+
+		//Start every member
+		CompletionService<Integer> service = new ExecutorCompletionService<Integer>(POOL);
+		Future<?>[] futures = new Future<?>[members.length];
+		final List<List<NavigatorNode>> paths = new ArrayList<List<NavigatorNode>>();		//each set by its own member
+		for (int i=0; i<members.length; i++){
+			paths.add(null);
+		}
+		for (int i=0; i<members.length; i++){
+			final int index = i;
+			futures[i] = service.submit(new Callable<Integer>(){
+				public Integer call(){
+					paths.set(index, plan(index, grid, tiles, startTileX, startTileY, destTileX, destTileY, startAngle, budget));
+					return index;
+				}
+			});
+		}
+
+		//Take paths as they are found, until one is chosen
+		int best = -1;
+		double bestCost = Double.MAX_VALUE;
+		try {
+			for (int done=0; done<members.length; done++){
+				Future<Integer> f;
+				if (best >= 0){
+					long wait = deadline - System.nanoTime();
+					f = (wait > 0) ? service.poll(wait, TimeUnit.NANOSECONDS) : null;
+					if (f == null) break;		//Out of time, and there is a path to return
+				} else {
+					f = service.take();
+				}
+				int i;
+				try {
+					i = f.get();
+				} catch (ExecutionException e){
+					System.out.println("Exception "+e.getCause());		//that member failed, the others may not
+					continue;
+				}
+				if (!isValid(grid, paths.get(i), startTileX, startTileY, destTileX, destTileY)) continue;
+				double cost = length(paths.get(i), startTileX, startTileY);
+				if (cost < bestCost || (cost == bestCost && i < best)){		//ties go to the earlier member
+					best = i;
+					bestCost = cost;
+				}
+				if (mode == Mode.FIRST) break;
+			}
+		} catch (InterruptedException e){
+			//The run has been ended
+			Thread.currentThread().interrupt();
+			best = -1;
+		} catch (Exception e){
+			System.out.println("Exception "+e);
+		} finally {
+			for (Future<?> f : futures){
+				f.cancel(true);
+			}
+		}
+
+		if (best < 0) return null;
+		synchronized (this){
+			wins[best]++;
+		}
+		return paths.get(best);
+	}
+
+	/* Plans with one member, on a portfolio thread. The member is first told of the tiles that changed
+	since it last planned, or the tiles since the portfolio was last told, which may be more. */
+	private List<NavigatorNode> plan(int index, GridView grid, int[] tiles, int startTileX, int startTileY,
+									int destTileX, int destTileY, double startAngle, long budget){
+		Navigator nav = members[index];
+		synchronized (nav){
+			if (Thread.currentThread().isInterrupted()) return null;		//Cancelled before it began
+			if (nav instanceof IncrementalNavigator){
+				IncrementalNavigator inc = (IncrementalNavigator)nav;
+				long last = inc.getGridVersion();
+				if (last >= 0 && last < grid.getVersion()){
+					inc.tilesChanged(grid, tiles);
+				}
+			}
+			List<NavigatorNode> p;
+			if (nav instanceof AnytimeNavigator && budget > 0){
+				p = ((AnytimeNavigator)nav).calculatePath(grid, startTileX, startTileY, destTileX, destTileY, startAngle, budget);
+			} else {
+				p = nav.calculatePath(grid, startTileX, startTileY, destTileX, destTileY, startAngle);
+			}
+			if (nav instanceof IncrementalNavigator){
+				synchronized (this){
+					memberVersions[index] = ((IncrementalNavigator)nav).getGridVersion();
+				}
+			}
+			return p;
+		}
+	}
+
+	/* Whether a path can be followed, see the class comment. */
+	private static boolean isValid(GridView grid, List<NavigatorNode> path, int startTileX, int startTileY,
+									int destTileX, int destTileY){
+		if (path == null || path.isEmpty()) return false;
+		GridView g = grid.withTile(destTileX, destTileY, 0);
+		int x = startTileX;
+		int y = startTileY;
+		for (NavigatorNode n : path){
+			if (!GridSearch.lineClear(g, x, y, n.getX(), n.getY())) return false;
+			x = n.getX();
+			y = n.getY();
+		}
+		return true;
+	}
+
+	/* The length of a path in tiles, in straight lines between its nodes. */
+	private static double length(List<NavigatorNode> path, int startTileX, int startTileY){
+		double length = 0;
+		int x = startTileX;
+		int y = startTileY;
+		for (NavigatorNode n : path){
+			length += Math.hypot(n.getX() - x, n.getY() - y);
+			x = n.getX();
+			y = n.getY();
+		}
+		return length;
+	}
+
+	/* Records the tiles that changed, to be passed on to the incremental members on the next call. */
+	@Override
+	public void tilesChanged(GridView grid, int[] tiles){
+		changedTiles = tiles;
+		changedVersion = grid.getVersion();
+	}
+
+	/* The oldest grid version an incremental member has planned on, so the changes given to
+	tilesChanged() cover every member. -1 if none has planned yet. */
+	@Override
+	public synchronized long getGridVersion(){
+		long oldest = -1;
+		for (long v : memberVersions){
+			if (v >= 0 && (oldest < 0 || v < oldest)) oldest = v;
+		}
+		return oldest;
+	}
+
+	/* Gives each member that makes random choices its own stream. */
+	@Override
+	public void setRandom(SplittableRandom random){
+		for (Navigator nav : members){
+			if (nav instanceof Seedable){
+				((Seedable)nav).setRandom(random.split());
+			}
+		}
+	}
+
+	/********************************************
+	* Getters and Setters						*
+	*********************************************/
+
+	/* How many times each member's path has been returned, by name, in the order of the members. */
+	public synchronized Map<String, Integer> getWins(){
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		for (int i=0; i<members.length; i++){
+			Integer count = map.get(members[i].getName());
+			map.put(members[i].getName(), (count == null) ? wins[i] : count + wins[i]);
+		}
+		return map;
+	}
+	public Mode getMode(){
+		return mode;
+	}
+	public void setMode(Mode mode){
+		this.mode = mode;
+	}
+}
@@ -5,21 +5,54 @@ Written by Nick Sullivan, Adelaide Uni.
 package simulator.navigators;
 
 import java.lang.Math;
+import java.util.Arrays;
 import java.util.List;
 import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.SplittableRandom;
 
-import java.util.Scanner; //DELETE ME
-
-import simulator.interfaces.Navigator;
+import simulator.interfaces.AnytimeNavigator;
+import simulator.interfaces.GridView;
 import simulator.interfaces.NavigatorNode;
+import simulator.interfaces.Seedable;
 
-/* This is a standard RapidExploringRandomTree implementation */
-public class RapidExploringRandomTree implements Navigator{
+/* This is a standard RapidExploringRandomTree implementation.
+The tree is kept in a 2-D kd-tree, which is added to as it grows, so the nearest vertex to each sample is
+found without checking every vertex. A fraction of the samples are the destination itself, which pulls
+the tree towards it, and once a new vertex can see the destination it is joined straight to it.
+The search gives up and returns null after MAX_SAMPLES samples, or when the time budget runs out (see
+AnytimeNavigator), so an unreachable destination does not hold up the simulation. */
+public class RapidExploringRandomTree implements AnytimeNavigator, Seedable{
+	private static final double STEP = 4.0;				//The furthest a new vertex is from its parent, in tiles
+	private static final double GOAL_BIAS = 0.1;		//Fraction of samples that are the destination
+	private static final int MAX_SAMPLES = 200000;		//How many samples before giving up
+	private static final int CHECK_INTERVAL = 256;		//How many samples between checks of the time
+	
+	private SplittableRandom random;		//Chooses the sample points, replaced by the run's own stream
 	
+	//The tree, reused between calls. Vertex i is at (xs[i],ys[i]) and was reached from parent[i]. left
+	// and right are its children in the kd-tree, which splits on x at even depths and y at odd ones
+	private int[] xs;
+	private int[] ys;
+	private int[] parent;
+	private int[] left;
+	private int[] right;
+	private int count;						//How many vertices the tree has
+	private int best;						//The nearest vertex found so far by nearest()
+	private long bestDist;					//Its distance squared
 	
 	public RapidExploringRandomTree(){
-		
+		random = new SplittableRandom();
+		xs = new int[0];
+		ys = new int[0];
+		parent = new int[0];
+		left = new int[0];
+		right = new int[0];
+		count = 0;
+	}
+	
+	@Override
+	public void setRandom(SplittableRandom random){
+		this.random = random;
 	}
 	
 	@Override
@@ -33,112 +66,186 @@ public class RapidExploringRandomTree implements Navigator{
 	this function returns the list of nodes (in order) to be traversed to reach the goal
 	destination from the start point. 
 	
-	The grid is accessed by grid[col number][row number], so the start position is at
-	grid[startTileX][startTileY].
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
 	
 	If a path is unable to be found, this function should return null. */
 	@Override
-	public List<NavigatorNode> calculatePath(int[][] grid, int startTileX, int startTileY, 
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY, 
 											int destTileX, int destTileY, double startAngle){
+		return calculatePath(grid, startTileX, startTileY, destTileX, destTileY, startAngle, 0);
+	}
+	
+	@Override
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY, 
+											int destTileX, int destTileY, double startAngle, long budget){
+		System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
+		
 		//Initialise
-		LinkedList<Node> vertices = new LinkedList<Node>();
+		long deadline = (budget > 0) ? System.nanoTime() + budget : Long.MAX_VALUE;
 		LinkedList<NavigatorNode> returnList = new LinkedList<NavigatorNode>();
-		Node startNode = new Node(startTileX, startTileY, null);
-		vertices.add(startNode);
+		if (startTileX == destTileX && startTileY == destTileY){
+			return returnList;
+		}
+		grid = grid.withTile(destTileX, destTileY, 0);		//If the destination is obstructed we never find an answer
+		count = 0;
+		addVertex(startTileX, startTileY, -1);
 		
-		boolean finished = false;
-		while (!finished){
+		int goal = -1;			//The vertex at the destination, once found
+		for (int samples=1; samples<=MAX_SAMPLES && goal < 0; samples++){
+			//Give up if the run has been ended, or time has run out
+			if (samples % CHECK_INTERVAL == 0){
+				if (Thread.currentThread().isInterrupted()) return null;
+				if (System.nanoTime() > deadline) return null;
+			}
 			
-			//Scanner scan = new Scanner(System.in);
-			//String s = scan.next();
-		
-			//Determine a 'random' point in space
-			int randX = (int)( Math.random() * grid.length );
-			int randY = (int)( Math.random() * grid[0].length );
+			//Determine a 'random' point in space, sometimes the destination
+			int randX;
+			int randY;
+			if (random.nextDouble() < GOAL_BIAS){
+				randX = destTileX;
+				randY = destTileY;
+			} else {
+				randX = random.nextInt(grid.getSizeX());
+				randY = random.nextInt(grid.getSizeY());
+			}
 
 			//Find the point's nearest neighbour
-			int min = -1;
-			Node nearNode = null;
-			ListIterator<Node> iter = vertices.listIterator();
-			while (iter.hasNext()){
-				Node next = iter.next();
-				int dx = randX - next.getX();
-				int dy = randY - next.getY();
-				int dist = dx*dx + dy*dy;		//actually dist^2 but that's okay
-				if (min == -1 || dist < min){
-					min = dist;
-					nearNode = next;
-				}
-			}
+			int near = nearest(randX, randY);
+			int nearX = xs[near];
+			int nearY = ys[near];
 			
 			//Check that we're not duplicating a node
-			if (min == 0){
+			if (nearX == randX && nearY == randY){
 				continue;
 			}
 			
 			//Determine a new point between the random point and nearest neighbour that meets 
 			//  distance-to-neighbour and distance-from-obstacles criteria
-			int dx = randX - nearNode.getX();		//Calc distance and angle between nodes
-			int dy = randY - nearNode.getY();
-			double ang = Math.atan2(dy, dx);
-			double dist2 = dx*dx + dy*dy;
-			double dist = Math.sqrt( (double)dist2 );
+			int dx = randX - nearX;		//Calc distance and angle between nodes
+			int dy = randY - nearY;
+			double dist = Math.sqrt( (double)(dx*dx + dy*dy) );
 			
-			Node newNode = null;
-			if (dist > 4.0){
-				double normX = (double)dx / dist;		//Normalise the distances
-				double normY = (double)dy / dist;
-				double scaleX = normX * 4.0;			//Scale the distances
-				double scaleY = normY * 4.0;
-				int newX = (int) scaleX + nearNode.getX();		//Create a new point	
-				int newY = (int) scaleY + nearNode.getY();
-
-				newNode = new Node(newX, newY, nearNode);	//Create new node with parent
-			} else {
-				newNode = new Node(randX, randY, nearNode); //Create new node with parent
+			int newX = randX;
+			int newY = randY;
+			if (dist > STEP){
+				newX = (int)((double)dx / dist * STEP) + nearX;		//Normalise and scale the distances
+				newY = (int)((double)dy / dist * STEP) + nearY;
 			}
 			
-			//Add the new point to the list if it avoids obstacles
-			if (isWalkable(nearNode, newNode, grid, 4.0) ){
-				vertices.add(newNode);
-			} else {
+			//Add the new point to the tree if it avoids obstacles
+			if (!isWalkable(nearX, nearY, newX, newY, grid, STEP)){
 				continue;
 			}
+			int added = addVertex(newX, newY, near);
 			
-			//Check completion
-			if (newNode.getX() == destTileX && newNode.getY() == destTileY){
-				finished = true;
+			//Check completion, joining straight to the destination if it is close and can be seen
+			if (newX == destTileX && newY == destTileY){
+				goal = added;
+			} else {
+				int gx = destTileX - newX;
+				int gy = destTileY - newY;
+				if (gx*gx + gy*gy <= STEP*STEP && isWalkable(newX, newY, destTileX, destTileY, grid, STEP)){
+					goal = addVertex(destTileX, destTileY, added);
+				}
 			}
 		}
+		if (goal < 0){
+			System.out.println("No path found after " + MAX_SAMPLES + " samples.");
+			return null;
+		}
 		
 		//Progress back up through parents until we're back at the start
-		Node traceNode = vertices.getLast();			//The destination node was most recently added
-		while ( !(traceNode.getX() == startTileX && traceNode.getY() == startTileY) ){
-			returnList.addFirst(traceNode);
-			traceNode = traceNode.getParent();
+		for (int v = goal; parent[v] >= 0; v = parent[v]){
+			returnList.addFirst(new GridSearch.PathNode(xs[v], ys[v]));
 		}
-		
 		return returnList;
 	}
 	
+	/* Adds a vertex to the tree, and to the kd-tree, and returns its index. */
+	private int addVertex(int x, int y, int from){
+		if (count == xs.length){
+			int size = Math.max(256, 2*count);
+			xs = Arrays.copyOf(xs, size);
+			ys = Arrays.copyOf(ys, size);
+			parent = Arrays.copyOf(parent, size);
+			left = Arrays.copyOf(left, size);
+			right = Arrays.copyOf(right, size);
+		}
+		int v = count++;
+		xs[v] = x;
+		ys[v] = y;
+		parent[v] = from;
+		left[v] = -1;
+		right[v] = -1;
+		
+		//Walk down from the root to the empty place the vertex belongs in
+		if (v == 0) return v;
+		int n = 0;
+		boolean splitX = true;
+		while (true){
+			boolean lower = splitX ? x < xs[n] : y < ys[n];
+			int child = lower ? left[n] : right[n];
+			if (child < 0){
+				if (lower){
+					left[n] = v;
+				} else {
+					right[n] = v;
+				}
+				return v;
+			}
+			n = child;
+			splitX = !splitX;
+		}
+	}
+	
+	/* The vertex nearest to (x,y). Of vertices the same distance away, the one added first, so the tree
+	grows the same way as if every vertex were checked in turn. */
+	private int nearest(int x, int y){
+		best = 0;
+		bestDist = Long.MAX_VALUE;
+		nearest(0, x, y, true);
+		return best;
+	}
+	/* Searches the kd-tree below vertex n for a vertex nearer to (x,y) than the best so far. The side of
+	the split (x,y) is on is searched first, and the other side only if it could hold something nearer. */
+	private void nearest(int n, int x, int y, boolean splitX){
+		while (n >= 0){
+			long dx = x - xs[n];
+			long dy = y - ys[n];
+			long dist = dx*dx + dy*dy;
+			if (dist < bestDist || (dist == bestDist && n < best)){
+				best = n;
+				bestDist = dist;
+			}
+			long split = splitX ? dx : dy;		//How far (x,y) is from the split, negative on the lower side
+			int near = (split < 0) ? left[n] : right[n];
+			int far = (split < 0) ? right[n] : left[n];
+			nearest(near, x, y, !splitX);
+			if (split*split > bestDist) return;
+			n = far;
+			splitX = !splitX;
+		}
+	}
+	
 	/* Given a start node, end node, grid with obstacle information, and the width of the vehicle (in 
 	tiles (max 4.0, any larger and it might jump over an obstacle), this function calculates whether a 
 	straight line between start and end crosses any obstacles. */
-	private boolean isWalkable(NavigatorNode start, NavigatorNode end, int[][] grid, double width){
+	private boolean isWalkable(int startX, int startY, int endX, int endY, GridView grid, double width){
 		double posX;		//Position of point moving from start to end
 		double posY;
 		int tileX;			//Integer of position of point
 		int tileY;
-		int	gridSizeX = grid.length;
-		int gridSizeY = grid[0].length;
+		int	gridSizeX = grid.getSizeX();
+		int gridSizeY = grid.getSizeY();
 		
 		//Set point at start
-		posX = (double)start.getX();
-		posY = (double)start.getY();
+		posX = (double)startX;
+		posY = (double)startY;
 
 		//Calculate geometry
-		double dx = end.getX() - start.getX();
-		double dy = end.getY() - start.getY();
+		double dx = endX - startX;
+		double dy = endY - startY;
 		double dist = Math.sqrt(dx*dx + dy*dy);
 		double ang = Math.atan2(dy, dx);
 		
@@ -154,7 +261,7 @@ public class RapidExploringRandomTree implements Navigator{
 			posY+=incY;
 			tileX = (int)(posX+0.5); //round instead of floor
 			tileY = (int)(posY+0.5);
-			if (grid[tileX][tileY] > 0){
+			if (grid.get(tileX, tileY) > 0){
 				return false;
 			}
 			
@@ -164,7 +271,7 @@ public class RapidExploringRandomTree implements Navigator{
 			tileX = (int)(leftPosX+0.5); //round instead of floor
 			tileY = (int)(leftPosY+0.5);
 			if (tileX >= 0 && tileX < gridSizeX && tileY >= 0 && tileY < gridSizeY){
-				if (grid[tileX][tileY] > 0){
+				if (grid.get(tileX, tileY) > 0){
 					return false;
 				}
 			}
@@ -175,7 +282,7 @@ public class RapidExploringRandomTree implements Navigator{
 			tileX = (int)(leftPosX+0.5); //round instead of floor
 			tileY = (int)(leftPosY+0.5);
 			if (tileX >= 0 && tileX < gridSizeX && tileY >= 0 && tileY < gridSizeY){
-				if (grid[tileX][tileY] > 0){
+				if (grid.get(tileX, tileY) > 0){
 					return false;
 				}
 			}
@@ -186,7 +293,7 @@ public class RapidExploringRandomTree implements Navigator{
 			tileX = (int)(rightPosX+0.5); //round instead of floor
 			tileY = (int)(rightPosY+0.5);
 			if (tileX >= 0 && tileX < gridSizeX && tileY >= 0 && tileY < gridSizeY){
-				if (grid[tileX][tileY] > 0){
+				if (grid.get(tileX, tileY) > 0){
 					return false;
 				}
 			}
@@ -197,7 +304,7 @@ public class RapidExploringRandomTree implements Navigator{
 			tileX = (int)(rightPosX+0.5); //round instead of floor
 			tileY = (int)(rightPosY+0.5);
 			if (tileX >= 0 && tileX < gridSizeX && tileY >= 0 && tileY < gridSizeY){
-				if (grid[tileX][tileY] > 0){
+				if (grid.get(tileX, tileY) > 0){
 					return false;
 				}
 			}
@@ -205,34 +312,4 @@ public class RapidExploringRandomTree implements Navigator{
 		}
 		return true;
 	}
-	
-	/********************************************
-	* Node Implementation						*
-	*********************************************/
-	private static class Node implements NavigatorNode{
-		private int posX;			//This Node's column number in the grid
-		private int posY;			//This Node's row number in the grid
-		private Node parent;		//The previous Node in the path (null for obstacles and the start point)
-		
-		public Node(int x, int y, Node p){
-			posX = x;
-			posY = y;
-			parent = p;
-		}
-		
-		@Override
-		public int getX(){
-			return posX;
-		}
-		@Override
-		public int getY(){
-			return posY;
-		}
-		
-		public Node getParent(){
-			return parent;
-		}
-	}
-	
-	
 }
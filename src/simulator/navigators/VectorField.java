@@ -7,8 +7,8 @@ package simulator.navigators;
 import java.lang.Math;
 import java.util.List;
 import java.util.LinkedList;
-import java.util.ListIterator;
 
+import simulator.interfaces.GridView;
 import simulator.interfaces.Navigator;
 import simulator.interfaces.NavigatorNode;
 
@@ -33,20 +33,20 @@ public class VectorField implements Navigator{
 	this function returns the list of nodes (in order) to be traversed to reach the goal
 	destination from the start point. 
 	
-	The grid is accessed by grid[col number][row number], so the start position is at
-	grid[startTileX][startTileY].
+	The grid is accessed by grid.get(col number, row number), so the start position is at
+	grid.get(startTileX, startTileY).
 	
 	If a path is unable to be found, this function should return null. */
 	@Override
-	public List<NavigatorNode> calculatePath(int[][] grid, int startTileX, int startTileY, 
+	public List<NavigatorNode> calculatePath(GridView grid, int startTileX, int startTileY, 
 											int destTileX, int destTileY, double startAngle){
 		//System.out.println("Calculating path from ("+startTileX+","+startTileY+") to ("+destTileX+","+destTileY+")");
 		
 		double GOAL_FORCE = 0.5;			//The global attractive force
 		int NUM_STEPS = 5;					//How many steps to plan ahead to
+		int REPULSION_RANGE = 5;			//How many tiles away an obstacle can repulse from
 		
 		//Declare variables
-		LinkedList<Node> obstacles;			//List of all obstructions
 		LinkedList<NavigatorNode> returnList;//The list of Nodes in order to be traversed
 		boolean isReached;					//Whether we have reached the destination
 		int currentPosX;					//X position of current location
@@ -55,30 +55,19 @@ public class VectorField implements Navigator{
 		int gridSizeY;						//How many rows there are
 		
 		//Prepare for the search
-		obstacles = new LinkedList<Node>();
 		returnList = new LinkedList<NavigatorNode>();
 		isReached = false;
 		currentPosX = startTileX;			
 		currentPosY = startTileY;
-		gridSizeX = grid.length;
-		gridSizeY = grid[0].length;
-		grid[destTileX][destTileY] = 0;		//If the destination is obstructed we never find an answer
+		gridSizeX = grid.getSizeX();
+		gridSizeY = grid.getSizeY();
+		grid = grid.withTile(destTileX, destTileY, 0);		//If the destination is obstructed we never find an answer
 		
 		//If we're already at the destination, return an empty list
 		if (currentPosX == destTileX && currentPosY == destTileY){
 			return returnList;
 		}
 		
-		//Create the obstacle list
-		for (int col=0; col<gridSizeX; col++){
-			for (int row=0; row<gridSizeY; row++){
-				if (grid[col][row] > 0){
-					Node obs = new Node(col, row);		//posX, posY, parent
-					obstacles.add(obs);
-				}
-			}
-		}
-		
 		//Initialise first point
 		Node startNode = new Node(currentPosX, currentPosY);
 		
@@ -87,32 +76,38 @@ public class VectorField implements Navigator{
 		for (int i=0; i<NUM_STEPS; i++){
 			int currX = nextNode.getX();
 			int currY = nextNode.getY();
-			//Calculate overall repulsion direction from obstacles
+			//Calculate overall repulsion direction from obstacles. Only obstacles within 
+			// REPULSION_RANGE tiles have any effect, so only those tiles are looked at
 			double repulseX = 0;
 			double repulseY = 0;
-			ListIterator<Node> iter = obstacles.listIterator();
-			while (iter.hasNext()){
-				Node next = iter.next();
-				int obsX = next.getX();
-				int obsY = next.getY();
-				
-				// Calculate distance
-				double dx = (double)(obsX-currX);
-				double dy = (double)(obsY-currY);
-				double dist2 = dx*dx+dy*dy;
-				if (dist2 == 0 || dist2 > 32){
-					continue;
+			int minCol = Math.max(currX - REPULSION_RANGE, 0);
+			int maxCol = Math.min(currX + REPULSION_RANGE, gridSizeX - 1);
+			int minRow = Math.max(currY - REPULSION_RANGE, 0);
+			int maxRow = Math.min(currY + REPULSION_RANGE, gridSizeY - 1);
+			for (int obsX=minCol; obsX<=maxCol; obsX++){
+				for (int obsY=minRow; obsY<=maxRow; obsY++){
+					if (grid.get(obsX, obsY) <= 0){
+						continue;
+					}
+					
+					// Calculate distance
+					double dx = (double)(obsX-currX);
+					double dy = (double)(obsY-currY);
+					double dist2 = dx*dx+dy*dy;
+					if (dist2 == 0 || dist2 > 32){
+						continue;
+					}
+					
+					// Calculate angle
+					double ang = Math.atan2(dy, dx);
+					
+					// Calculate force
+					double force = 1/dist2;
+					double forceX = force*Math.cos(ang);
+					double forceY = force*Math.sin(ang);
+					repulseX-= forceX;
+					repulseY-= forceY;
 				}
-				
-				// Calculate angle
-				double ang = Math.atan2(dy, dx);
-				
-				// Calculate force
-				double force = 1/dist2;
-				double forceX = force*Math.cos(ang);
-				double forceY = force*Math.sin(ang);
-				repulseX-= forceX;
-				repulseY-= forceY;
 			}
 			
 			//Calculate attraction direction from goal